@@ -0,0 +1,125 @@
+package com.byclosure.webcat.benchmarks;
+
+import com.byclosure.webcat.reporter.ReportCodec;
+import com.byclosure.webcat.reporter.ReportCodecs;
+import com.byclosure.webcat.reporter.WebcatReporter;
+import cucumber.runtime.StepDefinition;
+import gherkin.deps.com.google.gson.Gson;
+import gherkin.deps.com.google.gson.JsonElement;
+import gherkin.deps.com.google.gson.JsonParser;
+import gherkin.deps.com.google.gson.stream.JsonWriter;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Encodes and decodes the report of a {@link SyntheticRun} with each {@link ReportCodec}.
+ * <p>
+ * {@link #main(String[])} prints the size of the report in each encoding, as is and gzip compressed, before
+ * running the benchmarks.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CodecBenchmark {
+    @Param({"pretty", "json", "binary"})
+    public String codec;
+
+    @Param("2")
+    public int features;
+
+    @Param("20")
+    public int scenarios;
+
+    @Param("5")
+    public int outlineRows;
+
+    @Param("100")
+    public int steps;
+
+    private final Gson gson = new Gson();
+    private ReportCodec reportCodec;
+    private JsonElement report;
+    private byte[] encoded;
+
+    public static void main(String[] args) throws Exception {
+        final CodecBenchmark benchmark = new CodecBenchmark();
+        benchmark.features = 2;
+        benchmark.scenarios = 20;
+        benchmark.outlineRows = 5;
+        benchmark.steps = 100;
+        for (String codec : new String[]{"pretty", "json", "binary"}) {
+            benchmark.codec = codec;
+            benchmark.setUp();
+            final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            final GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+            gzip.write(benchmark.encoded);
+            gzip.close();
+            System.out.printf("%-8s %,12d bytes %,10d bytes gzip%n", codec, benchmark.encoded.length, compressed.size());
+        }
+
+        new Runner(new OptionsBuilder()
+                .include(CodecBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        final StringBuilder out = new StringBuilder();
+        final WebcatReporter reporter = new WebcatReporter(out, ReporterBenchmark.debugConfig(), new ArrayList<StepDefinition>());
+        new SyntheticRun(features, scenarios, outlineRows, steps, 0, 3).replay(reporter);
+        reporter.done();
+
+        report = new JsonParser().parse(out.toString());
+        reportCodec = ReportCodecs.forName(codec);
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        encode(bytes);
+        encoded = bytes.toByteArray();
+    }
+
+    @Benchmark
+    public long encode() throws IOException {
+        final CountingOutputStream out = new CountingOutputStream();
+        encode(out);
+        return out.count;
+    }
+
+    @Benchmark
+    public JsonElement decode() throws IOException {
+        return reportCodec.read(new ByteArrayInputStream(encoded));
+    }
+
+    private void encode(OutputStream out) throws IOException {
+        final JsonWriter writer = reportCodec.newWriter(out);
+        gson.toJson(report, writer);
+        writer.close();
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) {
+            count += length;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.byclosure.webcat.benchmarks;
+
+import com.byclosure.webcat.EnvironmentConfig;
+import com.byclosure.webcat.reporter.WebcatReporter;
+import cucumber.runtime.StepDefinition;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays a {@link SyntheticRun} through the {@link WebcatReporter}, writing the report to a sink that discards
+ * it. {@link #run()} measures the whole run, {@link #done(Reported)} only the end of the run, where the report
+ * is finished.
+ * <p>
+ * Run with {@code java -jar target/benchmarks.jar -prof gc} to also get the allocation rate, or with
+ * {@link #main(String[])}, which adds the gc profiler.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ReporterBenchmark {
+    @Param("2")
+    public int features;
+
+    @Param("2")
+    public int scenarios;
+
+    @Param("2")
+    public int outlineRows;
+
+    @Param({"10", "1000"})
+    public int steps;
+
+    @Param("1")
+    public int embeddings;
+
+    @Param("3")
+    public int outputLines;
+
+    private SyntheticRun run;
+    private EnvironmentConfig config;
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ReporterBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        run = new SyntheticRun(features, scenarios, outlineRows, steps, embeddings, outputLines);
+
+        config = debugConfig();
+    }
+
+    /**
+     * @return a configuration that writes the report to the debug output, but never publishes it
+     */
+    static EnvironmentConfig debugConfig() throws Exception {
+        final EnvironmentConfig config = new EnvironmentConfig();
+        config.getRaw().put(EnvironmentConfig.Config.DEBUG, "true");
+        for (EnvironmentConfig.Config ci : new EnvironmentConfig.Config[]{EnvironmentConfig.Config.CI_BAMBOO,
+                EnvironmentConfig.Config.CI_CIRCLE, EnvironmentConfig.Config.CI_CODESHIP, EnvironmentConfig.Config.CI_JENKINS}) {
+            config.getRaw().remove(ci);
+        }
+        return config;
+    }
+
+    WebcatReporter newReporter() {
+        return new WebcatReporter(new DiscardingWriter(), config, new ArrayList<StepDefinition>());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public WebcatReporter run() {
+        final WebcatReporter reporter = newReporter();
+        run.replay(reporter);
+        reporter.done();
+        return reporter;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public WebcatReporter done(Reported reported) {
+        reported.reporter.done();
+        return reported.reporter;
+    }
+
+    /**
+     * A reporter that has seen the whole run but {@code done()}.
+     */
+    @State(Scope.Thread)
+    public static class Reported {
+        WebcatReporter reporter;
+
+        @Setup(Level.Invocation)
+        public void replay(ReporterBenchmark benchmark) {
+            reporter = benchmark.newReporter();
+            benchmark.run.replay(reporter);
+        }
+    }
+
+    private static class DiscardingWriter extends Writer {
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+        }
+
+        @Override
+        public void write(String string, int offset, int length) {
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
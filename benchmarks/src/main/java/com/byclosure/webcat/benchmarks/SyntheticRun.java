@@ -0,0 +1,194 @@
+package com.byclosure.webcat.benchmarks;
+
+import gherkin.formatter.Argument;
+import gherkin.formatter.Formatter;
+import gherkin.formatter.Reporter;
+import gherkin.formatter.model.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The Formatter and Reporter events of a made up run, in the order Cucumber sends them. Every feature has a
+ * background, scenarios and a scenario outline, every step has embeddings and output lines.
+ * <p>
+ * The gherkin model is built once, so replaying the run only measures the formatter and reporter.
+ * </p>
+ */
+class SyntheticRun {
+    private static final List<Comment> NO_COMMENTS = Collections.emptyList();
+    private static final List<Tag> TAGS = Arrays.asList(new Tag("@smoke", 1), new Tag("@web", 1));
+    private static final int EMBEDDING_SIZE = 16 * 1024;
+    private static final int DISTINCT_EMBEDDINGS = 4;
+    private static final int STEP_DEFINITIONS = 10;
+
+    private final List<FeatureEvents> features = new ArrayList<FeatureEvents>();
+    private final List<byte[]> embeddings = new ArrayList<byte[]>();
+    private final List<Match> matches = new ArrayList<Match>();
+    private final List<String> outputLines = new ArrayList<String>();
+    private final int embeddingsPerStep;
+    private final Match hook = new Match(Collections.<Argument>emptyList(), "Hooks.screenshot(Scenario)");
+    private final Result passed = new Result(Result.PASSED, 1000000L, null);
+
+    SyntheticRun(int features, int scenarios, int outlineRows, int steps, int embeddingsPerStep, int outputLinesPerStep) {
+        this.embeddingsPerStep = embeddingsPerStep;
+
+        for (int i = 0; i < DISTINCT_EMBEDDINGS; i++) {
+            final byte[] embedding = new byte[EMBEDDING_SIZE];
+            Arrays.fill(embedding, (byte) i);
+            embeddings.add(embedding);
+        }
+        for (int i = 0; i < STEP_DEFINITIONS; i++) {
+            matches.add(new Match(Collections.<Argument>emptyList(), "StepDefinitions.step" + i + "(String)"));
+        }
+        for (int i = 0; i < outputLinesPerStep; i++) {
+            outputLines.add("output line " + i);
+        }
+
+        for (int i = 0; i < features; i++) {
+            this.features.add(new FeatureEvents(i, scenarios, outlineRows, steps));
+        }
+    }
+
+    int getStepCount() {
+        int count = 0;
+        for (FeatureEvents feature : features) {
+            count += feature.stepCount();
+        }
+        return count;
+    }
+
+    /**
+     * Sends the events of the whole run, except {@code done()}.
+     */
+    <T extends Formatter & Reporter> void replay(T plugin) {
+        for (FeatureEvents feature : features) {
+            feature.replay(plugin);
+        }
+    }
+
+    private class FeatureEvents {
+        final String uri;
+        final Feature feature;
+        final Background background;
+        final List<Step> backgroundSteps;
+        final List<ScenarioEvents> scenarios = new ArrayList<ScenarioEvents>();
+        final ScenarioOutline outline;
+        final List<Step> outlineSteps;
+        final Examples examples;
+        final List<ScenarioEvents> rows = new ArrayList<ScenarioEvents>();
+
+        FeatureEvents(int index, int scenarioCount, int rowCount, int stepCount) {
+            uri = "features/feature_" + index + ".feature";
+            feature = new Feature(NO_COMMENTS, TAGS, "Feature", "Feature " + index, "", 1, "feature-" + index);
+            background = new Background(NO_COMMENTS, "Background", "", "", 3);
+            backgroundSteps = steps(4, 1, "the application is open");
+
+            int line = 6;
+            for (int i = 0; i < scenarioCount; i++) {
+                final String name = "Scenario " + i;
+                scenarios.add(new ScenarioEvents(
+                        new Scenario(NO_COMMENTS, TAGS, "Scenario", name, "", line, feature.getId() + ";" + name),
+                        steps(line + 1, stepCount, "step of " + name)));
+                line += stepCount + 2;
+            }
+
+            outline = new ScenarioOutline(NO_COMMENTS, TAGS, "Scenario Outline", "Outline", "", line, feature.getId() + ";outline");
+            outlineSteps = steps(line + 1, stepCount, "step with <value>");
+            line += stepCount + 2;
+
+            final List<ExamplesTableRow> tableRows = new ArrayList<ExamplesTableRow>();
+            tableRows.add(new ExamplesTableRow(NO_COMMENTS, Collections.singletonList("value"), line + 1, outline.getId() + ";examples;1"));
+            for (int i = 0; i < rowCount; i++) {
+                final int rowLine = line + 2 + i;
+                tableRows.add(new ExamplesTableRow(NO_COMMENTS, Collections.singletonList("value " + i), rowLine, outline.getId() + ";examples;" + (i + 2)));
+                rows.add(new ScenarioEvents(
+                        new Scenario(NO_COMMENTS, TAGS, "Scenario Outline", "Outline", "", rowLine, outline.getId() + ";examples;" + (i + 2)),
+                        steps(line - stepCount - 1, stepCount, "step with value " + i)));
+            }
+            examples = new Examples(NO_COMMENTS, Collections.<Tag>emptyList(), "Examples", "", "", line, outline.getId() + ";examples", tableRows);
+        }
+
+        int stepCount() {
+            int count = 0;
+            for (ScenarioEvents scenario : scenarios) {
+                count += backgroundSteps.size() + scenario.steps.size();
+            }
+            for (ScenarioEvents row : rows) {
+                count += backgroundSteps.size() + row.steps.size();
+            }
+            return count;
+        }
+
+        <T extends Formatter & Reporter> void replay(T plugin) {
+            plugin.uri(uri);
+            plugin.feature(feature);
+
+            for (ScenarioEvents scenario : scenarios) {
+                scenario.replay(plugin, this);
+            }
+
+            plugin.scenarioOutline(outline);
+            for (Step step : outlineSteps) {
+                plugin.step(step);
+            }
+            plugin.examples(examples);
+            for (ScenarioEvents row : rows) {
+                row.replay(plugin, this);
+            }
+
+            plugin.eof();
+        }
+    }
+
+    private class ScenarioEvents {
+        final Scenario scenario;
+        final List<Step> steps;
+
+        ScenarioEvents(Scenario scenario, List<Step> steps) {
+            this.scenario = scenario;
+            this.steps = steps;
+        }
+
+        <T extends Formatter & Reporter> void replay(T plugin, FeatureEvents feature) {
+            plugin.startOfScenarioLifeCycle(scenario);
+            plugin.before(hook, passed);
+
+            plugin.background(feature.background);
+            runSteps(plugin, feature.backgroundSteps);
+
+            plugin.scenario(scenario);
+            runSteps(plugin, steps);
+
+            plugin.after(hook, passed);
+            plugin.endOfScenarioLifeCycle(scenario);
+        }
+
+        private <T extends Formatter & Reporter> void runSteps(T plugin, List<Step> steps) {
+            for (Step step : steps) {
+                plugin.step(step);
+            }
+
+            for (int i = 0; i < steps.size(); i++) {
+                plugin.match(matches.get(i % matches.size()));
+                for (int e = 0; e < embeddingsPerStep; e++) {
+                    plugin.embedding("image/png", embeddings.get((i + e) % embeddings.size()));
+                }
+                for (String line : outputLines) {
+                    plugin.write(line);
+                }
+                plugin.result(passed);
+            }
+        }
+    }
+
+    private static List<Step> steps(int line, int count, String name) {
+        final List<Step> steps = new ArrayList<Step>(count);
+        for (int i = 0; i < count; i++) {
+            steps.add(new Step(NO_COMMENTS, i == 0 ? "Given " : "And ", name + " " + i, line + i, null, null));
+        }
+        return steps;
+    }
+}
@@ -0,0 +1,471 @@
+package com.byclosure.webcat;
+
+import com.byclosure.webcat.helpers.LoggerHelper;
+import cucumber.api.java.After;
+import cucumber.api.java.Before;
+import cucumber.runtime.Runtime;
+import cucumber.runtime.RuntimeOptions;
+import cucumber.runtime.Utils;
+import cucumber.runtime.io.*;
+import cucumber.runtime.java.StepDefAnnotation;
+import org.junit.runners.model.InitializationError;
+
+import java.io.*;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * The glue classes and feature files found on the classpath by previous runs, so the runner does not scan the
+ * classpath and load every class of the glue packages each time it starts.
+ * <p>
+ * The index is kept in a properties file along with a fingerprint of the classpath: the names and CRCs of the
+ * entries of every jar and the names, sizes and modification times of the files of every directory. When the
+ * fingerprint no longer matches the index is dropped and the classpath is scanned as usual, the index is built
+ * again from what the scan finds. It can also be built ahead of the run with {@link #main(String[])}.
+ * </p>
+ */
+public class ClasspathIndex {
+    private final static Logger logger = LoggerHelper.getLogger(ClasspathIndex.class.getName());
+
+    private static final String FINGERPRINT = "fingerprint";
+    private static final String RESOURCES = "resources ";
+    private static final String SEPARATOR = "\n";
+    private static final String CLASS_SUFFIX = ".class";
+    private static final String FEATURE_SUFFIX = ".feature";
+    private static final String JAR_SEPARATOR = "!/";
+
+    private final File file;
+    private final ClassLoader classLoader;
+    private final String fingerprint;
+    private final Map<String, String> entries = new ConcurrentHashMap<String, String>();
+    private volatile boolean changed = false;
+
+    public ClasspathIndex(File file, ClassLoader classLoader) {
+        this.file = file;
+        this.classLoader = classLoader;
+        // the index may be on the classpath itself, e.g. in the working directory
+        this.fingerprint = fingerprint(classpath(classLoader), file == null ? null : file.getAbsolutePath());
+        load();
+    }
+
+    /**
+     * Builds the index of the runner class given as argument, e.g. at the end of the build, so the first run does
+     * not scan the classpath nor parse the features either.
+     */
+    public static void main(String[] args) throws ClassNotFoundException, InitializationError, IOException {
+        final Class<?> runner = Class.forName(args[0]);
+        final ClassLoader classLoader = runner.getClassLoader();
+        final ClasspathIndex index = new ClasspathIndex(new EnvironmentConfig().getIndexFile(runner.getName()), classLoader);
+
+        final RuntimeOptions runtimeOptions = new WebcatRuntimeOptionsFactory(runner).create();
+        final ResourceLoader resourceLoader = index.resourceLoader(new MultiLoader(classLoader), runtimeOptions.getGlue());
+        // loading the glue and the features is what fills the index, and the feature cache along with it
+        new Runtime(resourceLoader, new ResourceLoaderClassFinder(resourceLoader, classLoader), classLoader, runtimeOptions);
+        new FeatureCache(new EnvironmentConfig().getFeatureCacheDirectory())
+                .load(resourceLoader, runtimeOptions.getFeaturePaths(), runtimeOptions.getFilters(), System.out);
+        index.save();
+    }
+
+    private void load() {
+        if (file == null || !file.isFile()) {
+            return;
+        }
+
+        final Properties properties = new Properties();
+        try {
+            final InputStream input = new FileInputStream(file);
+            try {
+                properties.load(input);
+            } finally {
+                input.close();
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not read the classpath index " + file + ": " + e.getMessage());
+            return;
+        }
+
+        if (!fingerprint.equals(properties.getProperty(FINGERPRINT))) {
+            logger.log(Level.FINE, "The classpath changed since " + file + " was written, scanning it again");
+            changed = true;
+            return;
+        }
+        for (String key : properties.stringPropertyNames()) {
+            if (!FINGERPRINT.equals(key)) {
+                entries.put(key, properties.getProperty(key));
+            }
+        }
+    }
+
+    /**
+     * Writes the index to its file if the run found anything that was not in it.
+     */
+    public synchronized void save() {
+        if (file == null || !changed) {
+            return;
+        }
+
+        final Properties properties = new Properties();
+        properties.putAll(entries);
+        properties.setProperty(FINGERPRINT, fingerprint);
+
+        try {
+            final File directory = file.getAbsoluteFile().getParentFile();
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Could not create " + directory);
+            }
+            // runners of the same build may save at the same time, each one replaces the file whole
+            final File temporary = File.createTempFile(file.getName() + ".new", ".tmp", directory);
+            final OutputStream output = new FileOutputStream(temporary);
+            try {
+                properties.store(output, "Webcat glue classes and features of the classpath");
+            } finally {
+                output.close();
+            }
+            if (!temporary.renameTo(file) && !(file.delete() && temporary.renameTo(file))) {
+                temporary.delete();
+                throw new IOException("Could not replace " + file);
+            }
+            changed = false;
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not save the classpath index " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * @param gluePaths the glue of the run, where only the classes with step definitions or hooks are indexed
+     * @return a resource loader listing the classes and features of the classpath from the index, and what is not
+     * in the index with {@code scanner}
+     */
+    public ResourceLoader resourceLoader(ResourceLoader scanner, List<String> gluePaths) {
+        final Set<String> glue = new HashSet<String>();
+        for (String gluePath : gluePaths) {
+            // as the class finder of the Java backend asks for it
+            glue.add(MultiLoader.CLASSPATH_SCHEME + MultiLoader.packageName(gluePath).replace('.', '/'));
+        }
+        return new IndexedResourceLoader(scanner, glue);
+    }
+
+    private void put(String key, List<String> values) {
+        final StringBuilder joined = new StringBuilder();
+        for (String value : values) {
+            if (joined.length() > 0) {
+                joined.append(SEPARATOR);
+            }
+            joined.append(value);
+        }
+        if (!joined.toString().equals(entries.put(key, joined.toString()))) {
+            changed = true;
+        }
+    }
+
+    private List<String> get(String key) {
+        final String joined = entries.get(key);
+        if (joined == null) {
+            return null;
+        }
+        return joined.isEmpty() ? Collections.<String>emptyList() : Arrays.asList(joined.split(SEPARATOR));
+    }
+
+    /**
+     * Whether Cucumber would find step definitions or hooks in the class, which is all it looks for in the classes
+     * of the glue packages. Like Cucumber, classes that can not be instantiated are looked at through their
+     * superclass.
+     */
+    static boolean isGlue(Class<?> glueCodeClass) {
+        Class<?> instantiable = glueCodeClass;
+        while (instantiable != null && instantiable != Object.class && !Utils.isInstantiable(instantiable)) {
+            instantiable = instantiable.getSuperclass();
+        }
+        if (instantiable == null) {
+            return false;
+        }
+
+        try {
+            for (Method method : instantiable.getMethods()) {
+                for (Annotation annotation : method.getAnnotations()) {
+                    final Class<? extends Annotation> type = annotation.annotationType();
+                    if (type == Before.class || type == After.class || type.getAnnotation(StepDefAnnotation.class) != null) {
+                        return true;
+                    }
+                }
+            }
+        } catch (LinkageError e) {
+            // let Cucumber report the class it can not load
+            return true;
+        }
+        return false;
+    }
+
+    private class IndexedResourceLoader implements ResourceLoader {
+        private final ResourceLoader scanner;
+        private final Set<String> glue;
+
+        IndexedResourceLoader(ResourceLoader scanner, Set<String> glue) {
+            this.scanner = scanner;
+            this.glue = glue;
+        }
+
+        @Override
+        public Iterable<Resource> resources(String path, String suffix) {
+            if (!path.startsWith(MultiLoader.CLASSPATH_SCHEME) || !(CLASS_SUFFIX.equals(suffix) || FEATURE_SUFFIX.equals(suffix))) {
+                return scanner.resources(path, suffix);
+            }
+
+            final String key = RESOURCES + path + " " + suffix;
+            final List<String> indexed = get(key);
+            if (indexed != null && indexed.size() % 3 == 0) {
+                final List<Resource> resources = new ArrayList<Resource>();
+                for (int i = 0; i < indexed.size(); i += 3) {
+                    resources.add(new IndexedResource(indexed.get(i), indexed.get(i + 1), indexed.get(i + 2)));
+                }
+                return resources;
+            }
+
+            // the Java backend loads every class of the glue to look for step definitions, the index only lists
+            // the classes where it finds them
+            final boolean gluePath = CLASS_SUFFIX.equals(suffix) && glue.contains(path);
+            final List<Resource> resources = new ArrayList<Resource>();
+            final List<String> found = new ArrayList<String>();
+            boolean indexable = true;
+            for (Resource resource : scanner.resources(path, suffix)) {
+                resources.add(resource);
+                final URL url = url(resource);
+                if (url == null) {
+                    indexable = false;
+                } else if (!gluePath || isGlue(resource.getClassName(CLASS_SUFFIX))) {
+                    found.add(resource.getPath());
+                    found.add(resource.getAbsolutePath());
+                    found.add(url.toExternalForm());
+                }
+            }
+            if (indexable) {
+                put(key, found);
+            }
+            return resources;
+        }
+
+        private URL url(Resource resource) {
+            try {
+                if (resource instanceof FileResource) {
+                    return ((FileResource) resource).getFile().toURI().toURL();
+                }
+                if (resource instanceof ZipResource) {
+                    final String absolutePath = resource.getAbsolutePath();
+                    final int separator = absolutePath.indexOf(JAR_SEPARATOR);
+                    return new URL("jar:" + new File(absolutePath.substring(0, separator)).toURI() +
+                            absolutePath.substring(separator));
+                }
+            } catch (IOException e) {
+                logger.log(Level.FINE, "Not indexing " + resource.getPath() + ": " + e.getMessage());
+            }
+            return null;
+        }
+
+        private boolean isGlue(String className) {
+            try {
+                return ClasspathIndex.isGlue(classLoader.loadClass(className));
+            } catch (ClassNotFoundException e) {
+                return true;
+            } catch (LinkageError e) {
+                // let Cucumber report the class it can not load
+                return true;
+            }
+        }
+    }
+
+    /**
+     * A class or feature found by a previous run, read from the same place.
+     */
+    private static class IndexedResource implements Resource {
+        private final String path;
+        private final String absolutePath;
+        private final String url;
+
+        IndexedResource(String path, String absolutePath, String url) {
+            this.path = path;
+            this.absolutePath = absolutePath;
+            this.url = url;
+        }
+
+        @Override
+        public String getPath() {
+            return path;
+        }
+
+        @Override
+        public String getAbsolutePath() {
+            return absolutePath;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return new URL(url).openStream();
+        }
+
+        @Override
+        public String getClassName(String extension) {
+            final String name = path.substring(0, path.length() - extension.length());
+            return name.replace('/', '.').replace('\\', '.');
+        }
+    }
+
+    /**
+     * @return the directories and jars of the classpath, including those of the Class-Path of their manifests
+     */
+    static List<File> classpath(ClassLoader classLoader) {
+        final Set<File> entries = new LinkedHashSet<File>();
+        for (String entry : System.getProperty("java.class.path", "").split(File.pathSeparator)) {
+            if (!entry.isEmpty()) {
+                entries.add(new File(entry).getAbsoluteFile());
+            }
+        }
+        for (ClassLoader loader = classLoader; loader != null; loader = loader.getParent()) {
+            if (loader instanceof URLClassLoader) {
+                for (URL url : ((URLClassLoader) loader).getURLs()) {
+                    final File entry = toFile(url);
+                    if (entry != null) {
+                        entries.add(entry);
+                    }
+                }
+            }
+        }
+
+        // e.g. the surefire booter, whose manifest lists the test classpath
+        final List<File> classpath = new ArrayList<File>(entries);
+        for (int i = 0; i < classpath.size(); i++) {
+            for (File entry : manifestClasspath(classpath.get(i))) {
+                if (entries.add(entry)) {
+                    classpath.add(entry);
+                }
+            }
+        }
+        return classpath;
+    }
+
+    private static List<File> manifestClasspath(File jar) {
+        if (!jar.isFile()) {
+            return Collections.emptyList();
+        }
+
+        final List<File> entries = new ArrayList<File>();
+        try {
+            final JarFile jarFile = new JarFile(jar);
+            try {
+                final Manifest manifest = jarFile.getManifest();
+                final String classPath = manifest == null ? null : manifest.getMainAttributes().getValue(Attributes.Name.CLASS_PATH);
+                if (classPath != null) {
+                    for (String entry : classPath.trim().split("\\s+")) {
+                        final File file = toFile(new URL(jar.toURI().toURL(), entry));
+                        if (file != null) {
+                            entries.add(file);
+                        }
+                    }
+                }
+            } finally {
+                jarFile.close();
+            }
+        } catch (IOException e) {
+            logger.log(Level.FINE, "Could not read the manifest of " + jar + ": " + e.getMessage());
+        }
+        return entries;
+    }
+
+    private static File toFile(URL url) {
+        if (!"file".equals(url.getProtocol())) {
+            return null;
+        }
+        try {
+            return new File(url.toURI()).getAbsoluteFile();
+        } catch (URISyntaxException e) {
+            return new File(url.getPath()).getAbsoluteFile();
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param excluded files starting with this path are left out, the index and its temporary files
+     * @return a digest of the content of the classpath. Jars are fingerprinted by the names and CRCs in their
+     * central directory, which is all that is read of them, so the fingerprint does not depend on where they are.
+     */
+    static String fingerprint(List<File> classpath, String excluded) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        for (File entry : classpath) {
+            if (entry.isDirectory()) {
+                update(digest, "dir " + entry.getPath());
+                fingerprintDirectory(digest, entry, "", excluded);
+            } else if (entry.isFile()) {
+                update(digest, "jar");
+                fingerprintJar(digest, entry);
+            }
+        }
+
+        final StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(String.format("%02x", b & 0xFF));
+        }
+        return hex.toString();
+    }
+
+    private static void fingerprintDirectory(MessageDigest digest, File directory, String prefix, String excluded) {
+        final File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files);
+        for (File child : files) {
+            if (excluded != null && child.getAbsolutePath().startsWith(excluded)) {
+                continue;
+            }
+            if (child.isDirectory()) {
+                fingerprintDirectory(digest, child, prefix + child.getName() + "/", excluded);
+            } else {
+                update(digest, prefix + child.getName() + " " + child.length() + " " + child.lastModified());
+            }
+        }
+    }
+
+    private static void fingerprintJar(MessageDigest digest, File jar) {
+        try {
+            final ZipFile zipFile = new ZipFile(jar);
+            try {
+                final Enumeration<? extends ZipEntry> zipEntries = zipFile.entries();
+                while (zipEntries.hasMoreElements()) {
+                    final ZipEntry zipEntry = zipEntries.nextElement();
+                    update(digest, zipEntry.getName() + " " + zipEntry.getCrc());
+                }
+            } finally {
+                zipFile.close();
+            }
+        } catch (IOException e) {
+            // not a jar, or unreadable, changes to it still show in its size and date
+            update(digest, jar.getName() + " " + jar.length() + " " + jar.lastModified());
+        }
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) '\n');
+    }
+}
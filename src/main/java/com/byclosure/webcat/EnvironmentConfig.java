@@ -1,7 +1,7 @@
 package com.byclosure.webcat;
 
 import com.byclosure.webcat.helpers.LoggerHelper;
-import gherkin.deps.com.google.gson.GsonBuilder;
+import com.byclosure.webcat.parallel.Shard;
 import org.junit.runners.model.InitializationError;
 
 import java.io.*;
@@ -17,6 +17,8 @@ public class EnvironmentConfig {
 
     private static final String RUNNER_SETTINGS_FILE = "runner_config.properties";
     private static final String WEBCAT_ENDPOINT = "WEBCAT_ENDPOINT";
+    private static final String WEBCAT_BATCH_ENDPOINT = "WEBCAT_BATCH_ENDPOINT";
+    private static final String WEBCAT_ATTACHMENT_ENDPOINT = "WEBCAT_ATTACHMENT_ENDPOINT";
 
     public static final String DEFAULT_INTENT = "{\"type\": \"features\", \"value\": []}";
 
@@ -68,6 +70,12 @@ public class EnvironmentConfig {
                         configMap.containsKey(Config.COMMIT_ID))) {
             throw new InitializationError("GIT_COMMIT, WEBCAT_PROJECT and WEBCAT_PROJECT_TOKEN must be set.");
         }
+
+        final Shard shard = getShard();
+        if(shard.isSharded() && (shard.getIndex() < 0 || shard.getIndex() >= shard.getCount())) {
+            throw new InitializationError(Config.SHARD_INDEX + " must be between 0 and " + (shard.getCount() - 1) +
+                    ", was " + shard.getIndex() + ".");
+        }
     }
 
     private Properties getProjectProperties() {
@@ -121,6 +129,13 @@ public class EnvironmentConfig {
         return "true".equalsIgnoreCase(configMap.get(Config.DEBUG));
     }
 
+    /**
+     * Reports are uploaded gzip compressed unless {@code WEBCAT_COMPRESS} is set to false.
+     */
+    public boolean isCompressed() {
+        return !"false".equalsIgnoreCase(configMap.get(Config.COMPRESS));
+    }
+
     public Map<Config,String> getRaw() {
         return configMap;
     }
@@ -129,17 +144,242 @@ public class EnvironmentConfig {
         return configMap.get(Config.HOST) + getRunnerProperties().getProperty(WEBCAT_ENDPOINT);
     }
 
-    public List<String> getIntent() {
-        final String intentJson = configMap.get(Config.INTENT);
+    /**
+     * @return the features, scenarios, tags or scenario names to run, see {@link Intent}
+     */
+    public Intent getIntent() {
+        return Intent.parse(configMap.get(Config.INTENT));
+    }
+
+    /**
+     * Number of worker threads used to run features. Values below 2 mean a sequential run.
+     *
+     * @param defaultThreads value to use when {@code WEBCAT_THREADS} is not set or invalid
+     */
+    public int getThreads(int defaultThreads) {
+        return getInt(Config.THREADS, defaultThreads);
+    }
+
+    /**
+     * Number of times a failing scenario is run before it is reported as failed, 1 runs every scenario once.
+     *
+     * @param defaultAttempts value to use when {@code WEBCAT_ATTEMPTS} is not set or invalid
+     */
+    public int getAttempts(int defaultAttempts) {
+        return Math.max(1, getInt(Config.ATTEMPTS, defaultAttempts));
+    }
+
+    /**
+     * @return true to run only the scenarios that failed in the previous run, {@code WEBCAT_RERUN=true}
+     */
+    public boolean isRerunningFailed() {
+        return "true".equalsIgnoreCase(configMap.get(Config.RERUN));
+    }
+
+    /**
+     * @param suite name of the suite, the runner class
+     * @return file where the failed scenarios of the run are written, see {@link FailedScenarios},
+     * {@code WEBCAT_RERUN_FILE} or {@code ~/.webcat/rerun/<suite>.txt} by default
+     */
+    public File getRerunFile(String suite) {
+        final String rerun = configMap.get(Config.RERUN_FILE);
+
+        if(rerun != null) {
+            return new File(rerun);
+        }
+
+        return new File(System.getProperty("user.home") + File.separator + WEBCAT_SETTINGS_DIRECTORY + File.separator +
+                "rerun" + File.separator + suite + ".txt");
+    }
+
+    /**
+     * @return false to neither register the metrics of the run as an MBean nor print their summary,
+     * {@code WEBCAT_METRICS=false}
+     */
+    public boolean isReportingMetrics() {
+        return !"false".equalsIgnoreCase(configMap.get(Config.METRICS));
+    }
+
+    /**
+     * Number of features sent in each batch while the run is going on. 0, the default, sends a single
+     * report at the end of the run.
+     */
+    public int getBatchSize() {
+        return getInt(Config.BATCH_SIZE, 0);
+    }
+
+    /**
+     * @return milliseconds to wait for a connection to the Webcat server, 10 seconds by default
+     */
+    public int getConnectTimeout() {
+        return getInt(Config.CONNECT_TIMEOUT, 10000);
+    }
+
+    /**
+     * @return milliseconds to wait for data from the Webcat server, 60 seconds by default
+     */
+    public int getSocketTimeout() {
+        return getInt(Config.SOCKET_TIMEOUT, 60000);
+    }
+
+    /**
+     * @return how many times a failed upload is retried, 3 by default
+     */
+    public int getRetries() {
+        return getInt(Config.RETRIES, 3);
+    }
+
+    /**
+     * @return directory where reports that could not be sent are kept, {@code ~/.webcat/outbox} by default
+     */
+    public File getOutboxDirectory() {
+        final String outbox = configMap.get(Config.OUTBOX);
 
-        if(intentJson.isEmpty()) {
-            return new ArrayList<String>();
+        if(outbox != null) {
+            return new File(outbox);
         }
 
-        final Map parsedIntent = new GsonBuilder().create().fromJson(intentJson, Map.class);
-        final List<String> features = (List<String>)parsedIntent.get("value");
+        return new File(System.getProperty("user.home") + File.separator + WEBCAT_SETTINGS_DIRECTORY + File.separator + "outbox");
+    }
+
+    /**
+     * @param suite name of the suite, the runner class
+     * @return file where the durations of the features and scenarios of the suite are kept,
+     * {@code WEBCAT_HISTORY} or {@code ~/.webcat/history/<suite>.properties} by default
+     */
+    public File getHistoryFile(String suite) {
+        final String history = configMap.get(Config.HISTORY);
+
+        if(history != null) {
+            return new File(history);
+        }
+
+        return new File(System.getProperty("user.home") + File.separator + WEBCAT_SETTINGS_DIRECTORY + File.separator +
+                "history" + File.separator + suite + ".properties");
+    }
+
+    /**
+     * @return the history every shard is split by, the file set with {@code WEBCAT_HISTORY}, null if none is set and
+     * the shards are split by the number of steps of the features
+     */
+    public File getShardHistoryFile() {
+        final String history = configMap.get(Config.HISTORY);
+
+        return history != null ? new File(history) : null;
+    }
+
+    /**
+     * @param suite name of the suite, the runner class
+     * @return file where the glue classes and features found on the classpath are indexed, see
+     * {@link ClasspathIndex}, {@code WEBCAT_INDEX} or {@code ~/.webcat/index/<suite>.properties} by default
+     */
+    public File getIndexFile(String suite) {
+        final String index = configMap.get(Config.INDEX);
+
+        if(index != null) {
+            return new File(index);
+        }
+
+        return new File(System.getProperty("user.home") + File.separator + WEBCAT_SETTINGS_DIRECTORY + File.separator +
+                "index" + File.separator + suite + ".properties");
+    }
+
+    /**
+     * @return directory where the parsed features are cached, see {@link FeatureCache},
+     * {@code WEBCAT_FEATURE_CACHE} or {@code ~/.webcat/features} by default, null when it is set to {@code false}
+     */
+    public File getFeatureCacheDirectory() {
+        final String featureCache = configMap.get(Config.FEATURE_CACHE);
+
+        if("false".equalsIgnoreCase(featureCache)) {
+            return null;
+        }
+        if(featureCache != null) {
+            return new File(featureCache);
+        }
+
+        return new File(System.getProperty("user.home") + File.separator + WEBCAT_SETTINGS_DIRECTORY + File.separator + "features");
+    }
+
+    /**
+     * Screenshots and embeddings are Base64 encoded inside the report unless {@code WEBCAT_ATTACHMENTS} is set
+     * to {@code upload}, in which case the report refers to them by id and they are uploaded on their own.
+     */
+    public boolean isUploadingAttachments() {
+        return "upload".equalsIgnoreCase(configMap.get(Config.ATTACHMENTS));
+    }
+
+    /**
+     * @return bytes of heap the reporter may use for the feature being reported before it writes its finished
+     * scenarios to disk, {@code WEBCAT_HEAP_BUDGET} megabytes, 64 by default
+     */
+    public long getHeapBudget() {
+        return getInt(Config.HEAP_BUDGET, 64) * 1024L * 1024L;
+    }
+
+    /**
+     * @return how the report is encoded, {@code pretty} JSON by default, {@code json} on a single line or
+     * {@code binary}
+     */
+    public String getCodec() {
+        return configMap.get(Config.CODEC);
+    }
+
+    /**
+     * @return the shard of the run this node runs, {@code WEBCAT_SHARD_INDEX}, from 0, of {@code WEBCAT_SHARD_COUNT}.
+     * A single shard, the whole run, by default
+     */
+    public Shard getShard() {
+        return new Shard(getInt(Config.SHARD_INDEX, 0), Math.max(1, getInt(Config.SHARD_COUNT, 1)));
+    }
+
+    /**
+     * Whether the run is split across shards by scenario ({@code WEBCAT_SHARD_BY=scenarios}) or by whole
+     * feature, the default.
+     */
+    public boolean isShardingScenarios() {
+        final String shardBy = configMap.get(Config.SHARD_BY);
+
+        return shardBy != null && "scenarios".equalsIgnoreCase(shardBy.trim());
+    }
+
+    public String getAttachmentHost() {
+        return configMap.get(Config.HOST) + getRunnerProperties().getProperty(WEBCAT_ATTACHMENT_ENDPOINT);
+    }
+
+    public String getBatchHost() {
+        return configMap.get(Config.HOST) + getRunnerProperties().getProperty(WEBCAT_BATCH_ENDPOINT);
+    }
+
+    private int getInt(Config config, int defaultValue) {
+        final String value = configMap.get(config);
+
+        if(value == null) {
+            return defaultValue;
+        }
+
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            logger.log(Level.WARNING, "Invalid " + config + " value: " + value);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Whether the worker threads run single scenarios ({@code WEBCAT_PARALLEL=scenarios}) or whole
+     * features ({@code WEBCAT_PARALLEL=features}).
+     *
+     * @param defaultValue value to use when {@code WEBCAT_PARALLEL} is not set
+     */
+    public boolean isParallelScenarios(boolean defaultValue) {
+        final String parallel = configMap.get(Config.PARALLEL);
+
+        if(parallel == null) {
+            return defaultValue;
+        }
 
-        return features;
+        return "scenarios".equalsIgnoreCase(parallel.trim());
     }
 
     public enum Config {
@@ -154,7 +394,28 @@ public class EnvironmentConfig {
         CI_BAMBOO("bamboo.buildNumber"),
         CI_CODESHIP("CI_BUILD_NUMBER"),
         DEBUG("WEBCAT_DEBUG"),
-        COMMIT_ID("GIT_COMMIT")
+        COMMIT_ID("GIT_COMMIT"),
+        THREADS("WEBCAT_THREADS"),
+        PARALLEL("WEBCAT_PARALLEL"),
+        BATCH_SIZE("WEBCAT_BATCH_SIZE"),
+        COMPRESS("WEBCAT_COMPRESS"),
+        CONNECT_TIMEOUT("WEBCAT_CONNECT_TIMEOUT"),
+        SOCKET_TIMEOUT("WEBCAT_SOCKET_TIMEOUT"),
+        RETRIES("WEBCAT_RETRIES"),
+        OUTBOX("WEBCAT_OUTBOX"),
+        ATTACHMENTS("WEBCAT_ATTACHMENTS"),
+        HEAP_BUDGET("WEBCAT_HEAP_BUDGET"),
+        CODEC("WEBCAT_CODEC"),
+        HISTORY("WEBCAT_HISTORY"),
+        SHARD_INDEX("WEBCAT_SHARD_INDEX"),
+        SHARD_COUNT("WEBCAT_SHARD_COUNT"),
+        SHARD_BY("WEBCAT_SHARD_BY"),
+        INDEX("WEBCAT_INDEX"),
+        FEATURE_CACHE("WEBCAT_FEATURE_CACHE"),
+        ATTEMPTS("WEBCAT_ATTEMPTS"),
+        RERUN("WEBCAT_RERUN"),
+        RERUN_FILE("WEBCAT_RERUN_FILE"),
+        METRICS("WEBCAT_METRICS")
         ;
 
         private final String var;
@@ -0,0 +1,181 @@
+package com.byclosure.webcat;
+
+import com.byclosure.webcat.helpers.LoggerHelper;
+import gherkin.formatter.Formatter;
+import gherkin.formatter.Reporter;
+import gherkin.formatter.model.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The scenarios that failed in the run, written when the run is done to a file in the format of Cucumber's rerun
+ * files, {@code uri:line:line} for each feature, so the next run can run only those with {@code WEBCAT_RERUN=true}.
+ * <p>
+ * A scenario that is run again by a retry is only written if its last attempt failed.
+ * </p>
+ */
+public class FailedScenarios implements Formatter, Reporter {
+    private final static Logger logger = LoggerHelper.getLogger(FailedScenarios.class.getName());
+
+    private final File file;
+    private final Map<String, SortedSet<Integer>> failed = new LinkedHashMap<String, SortedSet<Integer>>();
+    private String uri;
+    private Integer line;
+
+    public FailedScenarios(File file) {
+        this.file = file;
+    }
+
+    /**
+     * @return the feature paths of the failed scenarios, {@code uri:line:line}
+     */
+    public synchronized List<String> getFeaturePaths() {
+        final List<String> featurePaths = new ArrayList<String>();
+        for (Map.Entry<String, SortedSet<Integer>> feature : failed.entrySet()) {
+            final StringBuilder featurePath = new StringBuilder(feature.getKey());
+            for (Integer failedLine : feature.getValue()) {
+                featurePath.append(':').append(failedLine);
+            }
+            featurePaths.add(featurePath.toString());
+        }
+        return featurePaths;
+    }
+
+    @Override
+    public void uri(String uri) {
+        this.uri = uri;
+    }
+
+    @Override
+    public synchronized void startOfScenarioLifeCycle(Scenario scenario) {
+        line = scenario.getLine();
+        // a new attempt of the scenario replaces the previous one
+        final SortedSet<Integer> lines = failed.get(uri);
+        if (lines != null) {
+            lines.remove(line);
+            if (lines.isEmpty()) {
+                failed.remove(uri);
+            }
+        }
+    }
+
+    @Override
+    public void endOfScenarioLifeCycle(Scenario scenario) {
+        line = null;
+    }
+
+    @Override
+    public void result(Result result) {
+        check(result);
+    }
+
+    @Override
+    public void before(Match match, Result result) {
+        check(result);
+    }
+
+    @Override
+    public void after(Match match, Result result) {
+        check(result);
+    }
+
+    private synchronized void check(Result result) {
+        if (uri == null || line == null || !Result.FAILED.equals(result.getStatus())) {
+            return;
+        }
+        SortedSet<Integer> lines = failed.get(uri);
+        if (lines == null) {
+            lines = new TreeSet<Integer>();
+            failed.put(uri, lines);
+        }
+        lines.add(line);
+    }
+
+    @Override
+    public void done() {
+        if (file == null) {
+            return;
+        }
+
+        final StringBuilder rerun = new StringBuilder();
+        for (String featurePath : getFeaturePaths()) {
+            if (rerun.length() > 0) {
+                rerun.append(' ');
+            }
+            rerun.append(featurePath);
+        }
+
+        try {
+            final File directory = file.getAbsoluteFile().getParentFile();
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Could not create " + directory);
+            }
+            // written next to the rerun file and renamed, so a run that is killed never leaves half a file behind
+            final File temporary = File.createTempFile(file.getName() + ".new", ".tmp", directory);
+            final OutputStream output = new FileOutputStream(temporary);
+            try {
+                output.write(rerun.toString().getBytes(StandardCharsets.UTF_8));
+            } finally {
+                output.close();
+            }
+            if (!temporary.renameTo(file) && !(file.delete() && temporary.renameTo(file))) {
+                temporary.delete();
+                throw new IOException("Could not replace " + file);
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not write the failed scenarios to " + file + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void syntaxError(String state, String event, List<String> legalEvents, String uri, Integer line) {
+    }
+
+    @Override
+    public void feature(Feature feature) {
+    }
+
+    @Override
+    public void scenarioOutline(ScenarioOutline scenarioOutline) {
+    }
+
+    @Override
+    public void examples(Examples examples) {
+    }
+
+    @Override
+    public void background(Background background) {
+    }
+
+    @Override
+    public void scenario(Scenario scenario) {
+    }
+
+    @Override
+    public void step(Step step) {
+    }
+
+    @Override
+    public void eof() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public void match(Match match) {
+    }
+
+    @Override
+    public void embedding(String mimeType, byte[] data) {
+    }
+
+    @Override
+    public void write(String text) {
+    }
+}
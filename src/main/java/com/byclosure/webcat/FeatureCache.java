@@ -0,0 +1,672 @@
+package com.byclosure.webcat;
+
+import com.byclosure.webcat.helpers.LoggerHelper;
+import cucumber.runtime.CucumberException;
+import cucumber.runtime.FeatureBuilder;
+import cucumber.runtime.io.Resource;
+import cucumber.runtime.io.ResourceLoader;
+import cucumber.runtime.model.CucumberFeature;
+import cucumber.runtime.model.PathWithLines;
+import gherkin.I18n;
+import gherkin.formatter.FilterFormatter;
+import gherkin.formatter.Formatter;
+import gherkin.formatter.model.*;
+import gherkin.parser.Parser;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The parsed features of previous runs, so the runner does not parse every feature file each time it starts.
+ * <p>
+ * Each feature is kept in a file of its own, named after the absolute path of the feature and holding the checksum
+ * of its text along with the events of the Gherkin parser in a compact binary form. A feature is read from the
+ * cache only when it is loaded and its checksum still matches, the events are then replayed into Cucumber instead
+ * of parsing the text again. Features that changed, or were never seen, are parsed and cached. Filters are applied
+ * as the events are replayed, so the same cache serves every tag and line selection. The uri of the feature is not
+ * cached, it depends on the feature path the file was found through and is taken from the resource being loaded.
+ * </p>
+ */
+public class FeatureCache {
+    private final static Logger logger = LoggerHelper.getLogger(FeatureCache.class.getName());
+
+    private static final int MAGIC = 0x57434643; // WCFC
+    // version 1 cached the uri of the feature
+    private static final int VERSION = 2;
+
+    private static final byte FEATURE = 2;
+    private static final byte BACKGROUND = 3;
+    private static final byte SCENARIO = 4;
+    private static final byte SCENARIO_OUTLINE = 5;
+    private static final byte EXAMPLES = 6;
+    private static final byte STEP = 7;
+    private static final byte EOF = 8;
+    private static final byte END = 0;
+
+    private final File directory;
+
+    /**
+     * @param directory where the features are cached, null not to cache them
+     */
+    public FeatureCache(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Loads the features like {@link CucumberFeature#load(ResourceLoader, List, List, PrintStream)}, reading those
+     * that did not change from the cache.
+     */
+    public List<CucumberFeature> load(ResourceLoader resourceLoader, List<String> featurePaths, List<Object> filters, PrintStream out) {
+        final List<CucumberFeature> cucumberFeatures = new ArrayList<CucumberFeature>();
+        final CachingFeatureBuilder builder = new CachingFeatureBuilder(cucumberFeatures);
+        for (String featurePath : featurePaths) {
+            if (featurePath.startsWith("@")) {
+                loadFromRerunFile(builder, resourceLoader, featurePath.substring(1), filters);
+            } else {
+                loadFromFeaturePath(builder, resourceLoader, featurePath, filters, false);
+            }
+        }
+        Collections.sort(cucumberFeatures, new Comparator<CucumberFeature>() {
+            @Override
+            public int compare(CucumberFeature a, CucumberFeature b) {
+                return a.getPath().compareTo(b.getPath());
+            }
+        });
+
+        if (cucumberFeatures.isEmpty()) {
+            if (featurePaths.isEmpty()) {
+                out.println("Got no path to feature directory or feature file");
+            } else if (filters.isEmpty()) {
+                out.println(String.format("No features found at %s", featurePaths));
+            } else {
+                out.println(String.format("None of the features at %s matched the filters: %s", featurePaths, filters));
+            }
+        }
+        logger.log(Level.FINE, "Read " + builder.hits + " features from the cache, parsed " + builder.misses);
+        return cucumberFeatures;
+    }
+
+    private static void loadFromRerunFile(FeatureBuilder builder, ResourceLoader resourceLoader, String rerunPath, List<Object> filters) {
+        for (Resource resource : resourceLoader.resources(rerunPath, null)) {
+            for (String featurePath : builder.read(resource).split(" ")) {
+                if (!featurePath.isEmpty()) {
+                    loadFromFileSystemOrClasspath(builder, resourceLoader, featurePath, filters);
+                }
+            }
+        }
+    }
+
+    private static void loadFromFileSystemOrClasspath(FeatureBuilder builder, ResourceLoader resourceLoader, String featurePath, List<Object> filters) {
+        try {
+            loadFromFeaturePath(builder, resourceLoader, featurePath, filters, false);
+        } catch (IllegalArgumentException originalException) {
+            if (featurePath.startsWith("classpath:") || !originalException.getMessage().contains("Not a file or directory")) {
+                throw originalException;
+            }
+            try {
+                loadFromFeaturePath(builder, resourceLoader, "classpath:" + featurePath, filters, true);
+            } catch (IllegalArgumentException secondException) {
+                if (secondException.getMessage().contains("No resource found for")) {
+                    throw new IllegalArgumentException("Neither found on file system or on classpath: " +
+                            originalException.getMessage() + ", " + secondException.getMessage());
+                }
+                throw secondException;
+            }
+        }
+    }
+
+    private static void loadFromFeaturePath(FeatureBuilder builder, ResourceLoader resourceLoader, String featurePath,
+                                            List<Object> filters, boolean failOnNoResource) {
+        final PathWithLines pathWithLines = new PathWithLines(featurePath);
+        final List<Object> pathFilters = new ArrayList<Object>(filters);
+        pathFilters.addAll(pathWithLines.lines);
+        final Iterable<Resource> resources = resourceLoader.resources(pathWithLines.path, ".feature");
+        if (failOnNoResource && !resources.iterator().hasNext()) {
+            throw new IllegalArgumentException("No resource found for: " + pathWithLines.path);
+        }
+        for (Resource resource : resources) {
+            builder.parse(resource, pathFilters);
+        }
+    }
+
+    private File cacheFile(Resource resource) {
+        return new File(directory, hex(digest("SHA-1", resource.getAbsolutePath())) + ".bin");
+    }
+
+    private static MessageDigest digest(String algorithm, String text) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance(algorithm);
+            digest.update(text.getBytes(StandardCharsets.UTF_8));
+            return digest;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(MessageDigest digest) {
+        final StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(String.format("%02x", b & 0xFF));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * @return the cached events of the feature, null if it is not cached or changed since
+     */
+    private byte[] read(File cacheFile, String checksum) {
+        if (!cacheFile.isFile()) {
+            return null;
+        }
+        try {
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)));
+            try {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION || !checksum.equals(in.readUTF())) {
+                    return null;
+                }
+                final byte[] events = new byte[in.readInt()];
+                in.readFully(events);
+                return events;
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            logger.log(Level.FINE, "Could not read the cached feature " + cacheFile + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void write(File cacheFile, String checksum, byte[] events) {
+        try {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Could not create " + directory);
+            }
+            // written next to the cached feature and renamed, so runs reading it never see half a file
+            final File temporary = File.createTempFile(cacheFile.getName() + ".new", ".tmp", directory);
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(checksum);
+                out.writeInt(events.length);
+                out.write(events);
+            } finally {
+                out.close();
+            }
+            if (!temporary.renameTo(cacheFile) && !(cacheFile.delete() && temporary.renameTo(cacheFile))) {
+                temporary.delete();
+                throw new IOException("Could not replace " + cacheFile);
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not cache the feature in " + cacheFile + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Builds the features like Cucumber does, from the cache when it can.
+     */
+    private class CachingFeatureBuilder extends FeatureBuilder {
+        private final List<CucumberFeature> cucumberFeatures;
+        private final Set<String> checksums = new HashSet<String>();
+        int hits = 0;
+        int misses = 0;
+
+        CachingFeatureBuilder(List<CucumberFeature> cucumberFeatures) {
+            super(cucumberFeatures);
+            this.cucumberFeatures = cucumberFeatures;
+        }
+
+        @Override
+        public void parse(Resource resource, List<Object> filters) {
+            final String gherkin = read(resource);
+            final String checksum = hex(digest("MD5", gherkin));
+            // like Cucumber, the same feature found twice is only loaded once
+            if (!checksums.add(checksum)) {
+                return;
+            }
+
+            final Formatter formatter = filters.isEmpty() ? this : new FilterFormatter(this, filters);
+            final String path = resource.getPath().replace(File.separatorChar, '/');
+            final File cacheFile = directory == null ? null : cacheFile(resource);
+            final byte[] cached = cacheFile == null ? null : FeatureCache.this.read(cacheFile, checksum);
+            final String language;
+            try {
+                if (cached != null) {
+                    language = replay(cached, path, formatter);
+                    hits++;
+                } else {
+                    final EventRecorder recorder = new EventRecorder();
+                    final Parser parser = new Parser(new Tee(recorder, formatter));
+                    parser.parse(gherkin, path, 0);
+                    language = parser.getI18nLanguage().getIsoCode();
+                    misses++;
+                    if (cacheFile != null) {
+                        write(cacheFile, checksum, recorder.toByteArray(language));
+                    }
+                }
+            } catch (IOException e) {
+                throw new CucumberException(String.format("Error reading the cached feature %s", path), e);
+            } catch (Exception e) {
+                throw new CucumberException(String.format("Error parsing feature file %s", path), e);
+            }
+
+            if (!cucumberFeatures.isEmpty()) {
+                cucumberFeatures.get(cucumberFeatures.size() - 1).setI18n(new I18n(language));
+            }
+        }
+    }
+
+    /**
+     * Passes the events of the parser to the cache and to Cucumber.
+     */
+    private static class Tee implements Formatter {
+        private final Formatter first;
+        private final Formatter second;
+
+        Tee(Formatter first, Formatter second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        public void syntaxError(String state, String event, List<String> legalEvents, String uri, Integer line) {
+            first.syntaxError(state, event, legalEvents, uri, line);
+            second.syntaxError(state, event, legalEvents, uri, line);
+        }
+
+        @Override
+        public void uri(String uri) {
+            first.uri(uri);
+            second.uri(uri);
+        }
+
+        @Override
+        public void feature(Feature feature) {
+            first.feature(feature);
+            second.feature(feature);
+        }
+
+        @Override
+        public void scenarioOutline(ScenarioOutline scenarioOutline) {
+            first.scenarioOutline(scenarioOutline);
+            second.scenarioOutline(scenarioOutline);
+        }
+
+        @Override
+        public void examples(Examples examples) {
+            first.examples(examples);
+            second.examples(examples);
+        }
+
+        @Override
+        public void startOfScenarioLifeCycle(Scenario scenario) {
+            first.startOfScenarioLifeCycle(scenario);
+            second.startOfScenarioLifeCycle(scenario);
+        }
+
+        @Override
+        public void background(Background background) {
+            first.background(background);
+            second.background(background);
+        }
+
+        @Override
+        public void scenario(Scenario scenario) {
+            first.scenario(scenario);
+            second.scenario(scenario);
+        }
+
+        @Override
+        public void step(Step step) {
+            first.step(step);
+            second.step(step);
+        }
+
+        @Override
+        public void endOfScenarioLifeCycle(Scenario scenario) {
+            first.endOfScenarioLifeCycle(scenario);
+            second.endOfScenarioLifeCycle(scenario);
+        }
+
+        @Override
+        public void done() {
+            first.done();
+            second.done();
+        }
+
+        @Override
+        public void close() {
+            first.close();
+            second.close();
+        }
+
+        @Override
+        public void eof() {
+            first.eof();
+            second.eof();
+        }
+    }
+
+    /**
+     * Writes the events of the parser in the format of the cache: the language of the feature, then a tag and the
+     * fields of each event.
+     */
+    private static class EventRecorder implements Formatter {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+
+        byte[] toByteArray(String language) throws IOException {
+            final ByteArrayOutputStream events = new ByteArrayOutputStream(bytes.size() + 16);
+            final DataOutputStream header = new DataOutputStream(events);
+            writeString(header, language);
+            header.flush();
+            out.writeByte(END);
+            out.flush();
+            bytes.writeTo(events);
+            return events.toByteArray();
+        }
+
+        @Override
+        public void uri(String uri) {
+            // replayed from the resource the feature is loaded from
+        }
+
+        @Override
+        public void feature(Feature feature) {
+            try {
+                out.writeByte(FEATURE);
+                writeTagStatement(feature.getComments(), feature.getTags(), feature.getKeyword(), feature.getName(),
+                        feature.getDescription(), feature.getLine(), feature.getId());
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public void background(Background background) {
+            try {
+                out.writeByte(BACKGROUND);
+                writeComments(background.getComments());
+                writeString(out, background.getKeyword());
+                writeString(out, background.getName());
+                writeString(out, background.getDescription());
+                writeInteger(background.getLine());
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public void scenario(Scenario scenario) {
+            try {
+                out.writeByte(SCENARIO);
+                writeTagStatement(scenario.getComments(), scenario.getTags(), scenario.getKeyword(), scenario.getName(),
+                        scenario.getDescription(), scenario.getLine(), scenario.getId());
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public void scenarioOutline(ScenarioOutline scenarioOutline) {
+            try {
+                out.writeByte(SCENARIO_OUTLINE);
+                writeTagStatement(scenarioOutline.getComments(), scenarioOutline.getTags(), scenarioOutline.getKeyword(),
+                        scenarioOutline.getName(), scenarioOutline.getDescription(), scenarioOutline.getLine(),
+                        scenarioOutline.getId());
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public void examples(Examples examples) {
+            try {
+                out.writeByte(EXAMPLES);
+                writeTagStatement(examples.getComments(), examples.getTags(), examples.getKeyword(), examples.getName(),
+                        examples.getDescription(), examples.getLine(), examples.getId());
+                final List<ExamplesTableRow> rows = examples.getRows();
+                out.writeInt(rows == null ? -1 : rows.size());
+                if (rows != null) {
+                    for (ExamplesTableRow row : rows) {
+                        writeRow(row);
+                        writeString(out, row.getId());
+                    }
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public void step(Step step) {
+            try {
+                out.writeByte(STEP);
+                writeComments(step.getComments());
+                writeString(out, step.getKeyword());
+                writeString(out, step.getName());
+                writeInteger(step.getLine());
+                final List<DataTableRow> rows = step.getRows();
+                out.writeInt(rows == null ? -1 : rows.size());
+                if (rows != null) {
+                    for (DataTableRow row : rows) {
+                        writeRow(row);
+                    }
+                }
+                final DocString docString = step.getDocString();
+                out.writeBoolean(docString != null);
+                if (docString != null) {
+                    writeString(out, docString.getContentType());
+                    writeString(out, docString.getValue());
+                    out.writeInt(docString.getLine());
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public void eof() {
+            try {
+                out.writeByte(EOF);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public void syntaxError(String state, String event, List<String> legalEvents, String uri, Integer line) {
+        }
+
+        @Override
+        public void done() {
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void startOfScenarioLifeCycle(Scenario scenario) {
+        }
+
+        @Override
+        public void endOfScenarioLifeCycle(Scenario scenario) {
+        }
+
+        private void writeTagStatement(List<Comment> comments, List<Tag> tags, String keyword, String name,
+                                       String description, Integer line, String id) throws IOException {
+            writeComments(comments);
+            out.writeInt(tags.size());
+            for (Tag tag : tags) {
+                writeString(out, tag.getName());
+                writeInteger(tag.getLine());
+            }
+            writeString(out, keyword);
+            writeString(out, name);
+            writeString(out, description);
+            writeInteger(line);
+            writeString(out, id);
+        }
+
+        private void writeRow(Row row) throws IOException {
+            writeComments(row.getComments());
+            out.writeInt(row.getCells().size());
+            for (String cell : row.getCells()) {
+                writeString(out, cell);
+            }
+            writeInteger(row.getLine());
+        }
+
+        private void writeComments(List<Comment> comments) throws IOException {
+            out.writeInt(comments.size());
+            for (Comment comment : comments) {
+                writeString(out, comment.getValue());
+                writeInteger(comment.getLine());
+            }
+        }
+
+        private void writeInteger(Integer value) throws IOException {
+            out.writeInt(value == null ? Integer.MIN_VALUE : value);
+        }
+    }
+
+    // writeUTF is limited to 64 KB, doc strings and descriptions may be longer
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Replays the cached events into {@code formatter}, as the parser does for the feature at {@code uri}.
+     *
+     * @return the language of the feature
+     */
+    private static String replay(byte[] events, String uri, Formatter formatter) throws IOException {
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(events));
+        final String language = readString(in);
+        formatter.uri(uri);
+        for (byte event = in.readByte(); event != END; event = in.readByte()) {
+            switch (event) {
+                case FEATURE:
+                    formatter.feature(new Feature(readComments(in), readTags(in), readString(in), readString(in),
+                            readString(in), readInteger(in), readString(in)));
+                    break;
+                case BACKGROUND:
+                    formatter.background(new Background(readComments(in), readString(in), readString(in),
+                            readString(in), readInteger(in)));
+                    break;
+                case SCENARIO:
+                    formatter.scenario(new Scenario(readComments(in), readTags(in), readString(in), readString(in),
+                            readString(in), readInteger(in), readString(in)));
+                    break;
+                case SCENARIO_OUTLINE:
+                    formatter.scenarioOutline(new ScenarioOutline(readComments(in), readTags(in), readString(in),
+                            readString(in), readString(in), readInteger(in), readString(in)));
+                    break;
+                case EXAMPLES: {
+                    final List<Comment> comments = readComments(in);
+                    final List<Tag> tags = readTags(in);
+                    final String keyword = readString(in);
+                    final String name = readString(in);
+                    final String description = readString(in);
+                    final Integer line = readInteger(in);
+                    final String id = readString(in);
+                    final int size = in.readInt();
+                    List<ExamplesTableRow> rows = null;
+                    if (size >= 0) {
+                        rows = new ArrayList<ExamplesTableRow>(size);
+                        for (int i = 0; i < size; i++) {
+                            final List<Comment> rowComments = readComments(in);
+                            final List<String> cells = readCells(in);
+                            final Integer rowLine = readInteger(in);
+                            rows.add(new ExamplesTableRow(rowComments, cells, rowLine, readString(in)));
+                        }
+                    }
+                    formatter.examples(new Examples(comments, tags, keyword, name, description, line, id, rows));
+                    break;
+                }
+                case STEP: {
+                    final List<Comment> comments = readComments(in);
+                    final String keyword = readString(in);
+                    final String name = readString(in);
+                    final Integer line = readInteger(in);
+                    final int size = in.readInt();
+                    List<DataTableRow> rows = null;
+                    if (size >= 0) {
+                        rows = new ArrayList<DataTableRow>(size);
+                        for (int i = 0; i < size; i++) {
+                            final List<Comment> rowComments = readComments(in);
+                            final List<String> cells = readCells(in);
+                            rows.add(new DataTableRow(rowComments, cells, readInteger(in)));
+                        }
+                    }
+                    DocString docString = null;
+                    if (in.readBoolean()) {
+                        docString = new DocString(readString(in), readString(in), in.readInt());
+                    }
+                    formatter.step(new Step(comments, keyword, name, line, rows, docString));
+                    break;
+                }
+                case EOF:
+                    formatter.eof();
+                    break;
+                default:
+                    throw new IOException("Unknown event " + event);
+            }
+        }
+        return language;
+    }
+
+    private static List<Comment> readComments(DataInputStream in) throws IOException {
+        final int size = in.readInt();
+        final List<Comment> comments = new ArrayList<Comment>(size);
+        for (int i = 0; i < size; i++) {
+            comments.add(new Comment(readString(in), readInteger(in)));
+        }
+        return comments;
+    }
+
+    private static List<Tag> readTags(DataInputStream in) throws IOException {
+        final int size = in.readInt();
+        final List<Tag> tags = new ArrayList<Tag>(size);
+        for (int i = 0; i < size; i++) {
+            tags.add(new Tag(readString(in), readInteger(in)));
+        }
+        return tags;
+    }
+
+    private static List<String> readCells(DataInputStream in) throws IOException {
+        final int size = in.readInt();
+        final List<String> cells = new ArrayList<String>(size);
+        for (int i = 0; i < size; i++) {
+            cells.add(readString(in));
+        }
+        return cells;
+    }
+
+    private static Integer readInteger(DataInputStream in) throws IOException {
+        final int value = in.readInt();
+        return value == Integer.MIN_VALUE ? null : value;
+    }
+}
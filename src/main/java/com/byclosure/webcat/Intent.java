@@ -0,0 +1,86 @@
+package com.byclosure.webcat;
+
+import com.byclosure.webcat.helpers.LoggerHelper;
+import gherkin.deps.com.google.gson.GsonBuilder;
+import gherkin.deps.com.google.gson.JsonParseException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * What the Webcat server asks the run to do, {@code WEBCAT_INTENT}: {@code {"type": <type>, "value": [...]}}.
+ * <ul>
+ *     <li>{@code features}: feature paths, as given to Cucumber</li>
+ *     <li>{@code scenarios}: scenarios by the {@code uri:line} of the report</li>
+ *     <li>{@code tags}: tag expressions that must all match, e.g. {@code ["@smoke,@web", "~@slow"]}</li>
+ *     <li>{@code names}: scenarios by their exact name</li>
+ * </ul>
+ * An intent without values runs what the runner is configured to run.
+ */
+public class Intent {
+    private final static Logger logger = LoggerHelper.getLogger(Intent.class.getName());
+
+    public enum Type {FEATURES, SCENARIOS, TAGS, NAMES}
+
+    private final Type type;
+    private final List<String> values;
+
+    public Intent(Type type, List<String> values) {
+        this.type = type;
+        this.values = values;
+    }
+
+    public static Intent features(List<String> features) {
+        return new Intent(Type.FEATURES, features);
+    }
+
+    /**
+     * @return the intent of {@code json}, or an empty one if it can not be read
+     */
+    public static Intent parse(String json) {
+        if (json == null || json.trim().isEmpty()) {
+            return features(Collections.<String>emptyList());
+        }
+
+        final Map parsedIntent;
+        try {
+            parsedIntent = new GsonBuilder().create().fromJson(json, Map.class);
+        } catch (JsonParseException e) {
+            logger.log(Level.WARNING, "Invalid " + EnvironmentConfig.Config.INTENT + " value: " + json);
+            return features(Collections.<String>emptyList());
+        }
+
+        final Object type = parsedIntent == null ? null : parsedIntent.get("type");
+        final Object value = parsedIntent == null ? null : parsedIntent.get("value");
+        final List<String> values = new ArrayList<String>();
+        if (value instanceof List) {
+            for (Object item : (List) value) {
+                values.add(String.valueOf(item));
+            }
+        }
+
+        try {
+            return new Intent(type == null ? Type.FEATURES : Type.valueOf(type.toString().toUpperCase(Locale.ENGLISH)), values);
+        } catch (IllegalArgumentException e) {
+            logger.log(Level.WARNING, "Unknown " + EnvironmentConfig.Config.INTENT + " type: " + type);
+            return features(Collections.<String>emptyList());
+        }
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public List<String> getValues() {
+        return values;
+    }
+
+    public boolean isEmpty() {
+        return values.isEmpty();
+    }
+}
@@ -0,0 +1,386 @@
+package com.byclosure.webcat;
+
+import com.byclosure.webcat.context.Context;
+import com.byclosure.webcat.helpers.LoggerHelper;
+import cucumber.runtime.Runtime;
+import cucumber.runtime.junit.ExecutionUnitRunner;
+import cucumber.runtime.junit.FeatureRunner;
+import cucumber.runtime.junit.JUnitReporter;
+import cucumber.runtime.model.CucumberExamples;
+import cucumber.runtime.model.CucumberFeature;
+import cucumber.runtime.model.CucumberScenario;
+import cucumber.runtime.model.CucumberScenarioOutline;
+import cucumber.runtime.model.CucumberTagStatement;
+import gherkin.formatter.model.Step;
+import org.junit.runner.Description;
+import org.junit.runner.Runner;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunNotifier;
+import org.junit.runners.ParentRunner;
+import org.junit.runners.Suite;
+import org.junit.runners.model.InitializationError;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs a feature like {@link FeatureRunner}, running each failing scenario and outline example again up to a
+ * number of attempts.
+ * <p>
+ * Every attempt is formatted and reported, so the report shows the failed attempts of a flaky scenario next to
+ * the one that passed. JUnit is only told about the last attempt.
+ * </p>
+ * <p>
+ * The runners of the scenarios and examples are built here rather than by {@link FeatureRunner}, whose example
+ * runners can not be reached, so an attempt is always reported on the {@link Description}s of
+ * {@link #getDescription()}, also when a scenario runs on a worker with a runtime and reporter of its own.
+ * </p>
+ */
+public class RetryingFeatureRunner extends FeatureRunner {
+    private final static Logger logger = LoggerHelper.getLogger(RetryingFeatureRunner.class.getName());
+
+    private final CucumberFeature cucumberFeature;
+    private final int attempts;
+    private final List<ParentRunner> children = new ArrayList<ParentRunner>();
+
+    public RetryingFeatureRunner(CucumberFeature cucumberFeature, Runtime runtime, JUnitReporter jUnitReporter,
+                                 int attempts) throws InitializationError {
+        super(cucumberFeature, runtime, jUnitReporter);
+        this.cucumberFeature = cucumberFeature;
+        this.attempts = attempts;
+
+        for (CucumberTagStatement featureElement : cucumberFeature.getFeatureElements()) {
+            if (featureElement instanceof CucumberScenarioOutline) {
+                children.add(new OutlineRunner(runtime, (CucumberScenarioOutline) featureElement, jUnitReporter, attempts));
+            } else {
+                children.add(new ScenarioRunner(runtime, (CucumberScenario) featureElement, jUnitReporter, attempts));
+            }
+        }
+    }
+
+    /**
+     * @return a {@link ScenarioRunner} for each scenario and an {@link OutlineRunner} for each outline, in the
+     * order of the feature
+     */
+    @Override
+    public List<ParentRunner> getChildren() {
+        return children;
+    }
+
+    /**
+     * @return the runners of the scenarios and outline examples, in the order of the feature
+     */
+    List<ScenarioRunner> getScenarioRunners() {
+        final List<ScenarioRunner> scenarioRunners = new ArrayList<ScenarioRunner>();
+        for (ParentRunner child : children) {
+            if (child instanceof OutlineRunner) {
+                for (ExamplesRunner examplesRunner : ((OutlineRunner) child).getExamplesRunners()) {
+                    scenarioRunners.addAll(examplesRunner.getScenarioRunners());
+                }
+            } else {
+                scenarioRunners.add((ScenarioRunner) child);
+            }
+        }
+        return scenarioRunners;
+    }
+
+    /**
+     * Runs the feature like {@link #run(RunNotifier)}, with another runtime and reporter.
+     */
+    public void run(Runtime runtime, JUnitReporter jUnitReporter, RunNotifier notifier) {
+        jUnitReporter.uri(cucumberFeature.getPath());
+        jUnitReporter.feature(cucumberFeature.getGherkinFeature());
+        for (ParentRunner child : children) {
+            if (child instanceof OutlineRunner) {
+                final OutlineRunner outlineRunner = (OutlineRunner) child;
+                outlineRunner.getCucumberScenarioOutline().formatOutlineScenario(jUnitReporter);
+                for (ExamplesRunner examplesRunner : outlineRunner.getExamplesRunners()) {
+                    jUnitReporter.examples(examplesRunner.getCucumberExamples().getExamples());
+                    for (ScenarioRunner scenarioRunner : examplesRunner.getScenarioRunners()) {
+                        run(scenarioRunner.attempt(runtime, jUnitReporter), notifier, attempts);
+                    }
+                }
+            } else {
+                run(((ScenarioRunner) child).attempt(runtime, jUnitReporter), notifier, attempts);
+            }
+        }
+        jUnitReporter.eof();
+    }
+
+    /**
+     * A single run of a scenario.
+     */
+    interface Attempt {
+        String getName();
+
+        void run(RunNotifier notifier);
+    }
+
+    /**
+     * Runs a scenario or outline example, running it again while it fails.
+     */
+    static class ScenarioRunner extends ExecutionUnitRunner {
+        private final Runtime runtime;
+        private final CucumberScenario cucumberScenario;
+        private final JUnitReporter jUnitReporter;
+        private final int attempts;
+
+        ScenarioRunner(Runtime runtime, CucumberScenario cucumberScenario, JUnitReporter jUnitReporter,
+                       int attempts) throws InitializationError {
+            super(runtime, cucumberScenario, jUnitReporter);
+            this.runtime = runtime;
+            this.cucumberScenario = cucumberScenario;
+            this.jUnitReporter = jUnitReporter;
+            this.attempts = attempts;
+        }
+
+        CucumberScenario getCucumberScenario() {
+            return cucumberScenario;
+        }
+
+        @Override
+        public void run(RunNotifier notifier) {
+            RetryingFeatureRunner.run(attempt(runtime, jUnitReporter), notifier, attempts);
+        }
+
+        /**
+         * @return an attempt running the scenario with the runtime and reporter, notifying JUnit on the
+         * descriptions of this runner, as {@link ExecutionUnitRunner#run(RunNotifier)} does
+         */
+        Attempt attempt(final Runtime runtime, final JUnitReporter jUnitReporter) {
+            return new Attempt() {
+                @Override
+                public String getName() {
+                    return cucumberScenario.getVisualName();
+                }
+
+                @Override
+                public void run(RunNotifier notifier) {
+                    // the runner steps are built with the description, and consumed by the reporter as it runs
+                    // them, they are put back for the next attempt
+                    getDescription();
+                    final List<Step> runnerSteps = getRunnerSteps();
+                    final List<Step> steps = new ArrayList<Step>(runnerSteps);
+                    try {
+                        jUnitReporter.startExecutionUnit(ScenarioRunner.this, notifier);
+                        cucumberScenario.run(jUnitReporter, jUnitReporter, runtime);
+                        jUnitReporter.finishExecutionUnit();
+                    } finally {
+                        runnerSteps.clear();
+                        runnerSteps.addAll(steps);
+                    }
+                }
+            };
+        }
+    }
+
+    /**
+     * Runs an outline like {@link cucumber.runtime.junit.ScenarioOutlineRunner}, with an {@link ExamplesRunner} for each of its examples.
+     */
+    static class OutlineRunner extends Suite {
+        private final CucumberScenarioOutline cucumberScenarioOutline;
+        private final JUnitReporter jUnitReporter;
+        private final List<ExamplesRunner> examplesRunners = new ArrayList<ExamplesRunner>();
+        private Description description;
+
+        OutlineRunner(Runtime runtime, CucumberScenarioOutline cucumberScenarioOutline, JUnitReporter jUnitReporter,
+                      int attempts) throws InitializationError {
+            super(null, new ArrayList<Runner>());
+            this.cucumberScenarioOutline = cucumberScenarioOutline;
+            this.jUnitReporter = jUnitReporter;
+            for (CucumberExamples cucumberExamples : cucumberScenarioOutline.getCucumberExamplesList()) {
+                examplesRunners.add(new ExamplesRunner(runtime, cucumberExamples, jUnitReporter, attempts));
+            }
+        }
+
+        CucumberScenarioOutline getCucumberScenarioOutline() {
+            return cucumberScenarioOutline;
+        }
+
+        List<ExamplesRunner> getExamplesRunners() {
+            return examplesRunners;
+        }
+
+        @Override
+        protected List<Runner> getChildren() {
+            return Collections.<Runner>unmodifiableList(examplesRunners);
+        }
+
+        @Override
+        protected String getName() {
+            return cucumberScenarioOutline.getVisualName();
+        }
+
+        @Override
+        public Description getDescription() {
+            if (description == null) {
+                description = Description.createSuiteDescription(getName(), cucumberScenarioOutline.getGherkinModel());
+                for (ExamplesRunner examplesRunner : examplesRunners) {
+                    description.addChild(examplesRunner.getDescription());
+                }
+            }
+            return description;
+        }
+
+        @Override
+        public void run(RunNotifier notifier) {
+            cucumberScenarioOutline.formatOutlineScenario(jUnitReporter);
+            super.run(notifier);
+        }
+    }
+
+    /**
+     * Runs the examples of an outline like {@link cucumber.runtime.junit.ExamplesRunner}, with a
+     * {@link ScenarioRunner} for each example.
+     */
+    static class ExamplesRunner extends Suite {
+        private final CucumberExamples cucumberExamples;
+        private final JUnitReporter jUnitReporter;
+        private final List<ScenarioRunner> scenarioRunners = new ArrayList<ScenarioRunner>();
+        private Description description;
+
+        ExamplesRunner(Runtime runtime, CucumberExamples cucumberExamples, JUnitReporter jUnitReporter,
+                       int attempts) throws InitializationError {
+            super(null, new ArrayList<Runner>());
+            this.cucumberExamples = cucumberExamples;
+            this.jUnitReporter = jUnitReporter;
+            for (CucumberScenario exampleScenario : cucumberExamples.createExampleScenarios()) {
+                scenarioRunners.add(new ScenarioRunner(runtime, exampleScenario, jUnitReporter, attempts));
+            }
+        }
+
+        CucumberExamples getCucumberExamples() {
+            return cucumberExamples;
+        }
+
+        List<ScenarioRunner> getScenarioRunners() {
+            return scenarioRunners;
+        }
+
+        @Override
+        protected List<Runner> getChildren() {
+            return Collections.<Runner>unmodifiableList(scenarioRunners);
+        }
+
+        @Override
+        protected String getName() {
+            return cucumberExamples.getExamples().getKeyword() + ": " + cucumberExamples.getExamples().getName();
+        }
+
+        @Override
+        public Description getDescription() {
+            if (description == null) {
+                description = Description.createSuiteDescription(getName(), cucumberExamples.getExamples());
+                for (ScenarioRunner scenarioRunner : scenarioRunners) {
+                    description.addChild(scenarioRunner.getDescription());
+                }
+            }
+            return description;
+        }
+
+        @Override
+        public void run(RunNotifier notifier) {
+            jUnitReporter.examples(cucumberExamples.getExamples());
+            super.run(notifier);
+        }
+    }
+
+    /**
+     * Runs the scenario until it does not fail or has run {@code attempts} times. The number of each attempt is
+     * set on the {@link Context} of the thread, for the reporter to report it with the scenario.
+     */
+    static void run(Attempt attempt, RunNotifier notifier, int attempts) {
+        if (attempts <= 1) {
+            attempt.run(notifier);
+            return;
+        }
+
+        for (int number = 1; ; number++) {
+            final AttemptNotifier attemptNotifier = new AttemptNotifier();
+            Context.getInstance().setAttempt(number);
+            try {
+                attempt.run(attemptNotifier);
+            } finally {
+                Context.getInstance().setAttempt(null);
+            }
+            if (!attemptNotifier.failed || number == attempts) {
+                attemptNotifier.replay(notifier);
+                return;
+            }
+            logger.log(Level.WARNING, attempt.getName() + " failed on attempt " + number + " of " + attempts +
+                    ", running it again");
+        }
+    }
+
+    /**
+     * Keeps the notifications of an attempt, which only reach JUnit if it is the last one.
+     */
+    private static class AttemptNotifier extends RunNotifier {
+        private final List<Notification> notifications = new ArrayList<Notification>();
+        private boolean failed = false;
+
+        private interface Notification {
+            void replay(RunNotifier notifier);
+        }
+
+        void replay(RunNotifier notifier) {
+            for (Notification notification : notifications) {
+                notification.replay(notifier);
+            }
+        }
+
+        @Override
+        public void fireTestStarted(final Description description) {
+            notifications.add(new Notification() {
+                @Override
+                public void replay(RunNotifier notifier) {
+                    notifier.fireTestStarted(description);
+                }
+            });
+        }
+
+        @Override
+        public void fireTestFailure(final Failure failure) {
+            failed = true;
+            notifications.add(new Notification() {
+                @Override
+                public void replay(RunNotifier notifier) {
+                    notifier.fireTestFailure(failure);
+                }
+            });
+        }
+
+        @Override
+        public void fireTestAssumptionFailed(final Failure failure) {
+            notifications.add(new Notification() {
+                @Override
+                public void replay(RunNotifier notifier) {
+                    notifier.fireTestAssumptionFailed(failure);
+                }
+            });
+        }
+
+        @Override
+        public void fireTestIgnored(final Description description) {
+            notifications.add(new Notification() {
+                @Override
+                public void replay(RunNotifier notifier) {
+                    notifier.fireTestIgnored(description);
+                }
+            });
+        }
+
+        @Override
+        public void fireTestFinished(final Description description) {
+            notifications.add(new Notification() {
+                @Override
+                public void replay(RunNotifier notifier) {
+                    notifier.fireTestFinished(description);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.byclosure.webcat;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Webcat specific options for classes annotated with {@code @RunWith(WebcatRunner.class)}.
+ * Values set through {@link EnvironmentConfig} take precedence over the annotation.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE})
+public @interface WebcatOptions {
+    /**
+     * @return the number of worker threads used to run features. Values below 2 run the features sequentially.
+     */
+    int threads() default 1;
+
+    /**
+     * @return true to run the scenarios and outline examples of a feature at the same time, instead of
+     * running each feature as a whole on a single thread.
+     */
+    boolean parallelScenarios() default false;
+
+    /**
+     * @return the number of times a failing scenario is run before it is reported as failed. Every attempt
+     * shows in the report.
+     */
+    int attempts() default 1;
+}
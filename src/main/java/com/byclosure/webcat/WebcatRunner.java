@@ -1,6 +1,8 @@
 package com.byclosure.webcat;
 
 import com.byclosure.webcat.helpers.LoggerHelper;
+import com.byclosure.webcat.metrics.WebcatMetrics;
+import com.byclosure.webcat.parallel.*;
 import com.byclosure.webcat.reporter.StepDefinitionCollector;
 import com.byclosure.webcat.reporter.WebcatReporter;
 import cucumber.api.CucumberOptions;
@@ -8,9 +10,9 @@ import cucumber.runtime.*;
 import cucumber.runtime.Runtime;
 import cucumber.runtime.io.*;
 import cucumber.runtime.junit.Assertions;
-import cucumber.runtime.junit.FeatureRunner;
 import cucumber.runtime.junit.JUnitReporter;
 import cucumber.runtime.model.CucumberFeature;
+import cucumber.runtime.model.CucumberScenario;
 import gherkin.formatter.Formatter;
 import gherkin.formatter.Reporter;
 import org.junit.runner.Description;
@@ -20,6 +22,9 @@ import org.junit.runners.model.InitializationError;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
 
 /**
  * <p>
@@ -34,10 +39,49 @@ import java.util.*;
  *
  * @see CucumberOptions
  */
-public class WebcatRunner extends ParentRunner<FeatureRunner> {
+public class WebcatRunner extends ParentRunner<RetryingFeatureRunner> {
+    // a feature path with lines, as Cucumber reads them
+    private static final Pattern LINES = Pattern.compile(".*?:\\d+(:\\d+)*");
+
     private final JUnitReporter jUnitReporter;
-    private final List<FeatureRunner> children = new ArrayList<FeatureRunner>();
+    private final List<RetryingFeatureRunner> children = new ArrayList<RetryingFeatureRunner>();
     private final Runtime runtime;
+    private final RuntimeOptions runtimeOptions;
+    private final ResourceLoader resourceLoader;
+    private final ClassLoader classLoader;
+    private final Map<RetryingFeatureRunner, CucumberFeature> features = new IdentityHashMap<RetryingFeatureRunner, CucumberFeature>();
+
+    private final ClasspathIndex classpathIndex;
+    private final DurationHistory history;
+    // the history the shards were split by is a snapshot shared by every node, which must not change under them
+    private final boolean savingHistory;
+    private final WorkEstimator estimator;
+    // a feature filtered down to some of its scenarios would pass for a short feature in the history
+    private final boolean wholeFeatures;
+    private final int attempts;
+    private final WebcatMetrics metrics = new WebcatMetrics();
+    private final boolean reportingMetrics;
+
+    private ParallelScheduler scheduler;
+    private OrderedReplay replay;
+    private SummaryStats summaryStats;
+    private boolean parallelScenarios;
+    private final List<Runtime> workerRuntimes = Collections.synchronizedList(new ArrayList<Runtime>());
+    private final ThreadLocal<Runtime> workerRuntime = new ThreadLocal<Runtime>() {
+        @Override
+        protected Runtime initialValue() {
+            // Runtime keeps per scenario state and backend worlds, each worker thread needs its own
+            try {
+                final Runtime runtime = createRuntime(resourceLoader, classLoader, runtimeOptions);
+                workerRuntimes.add(runtime);
+                return runtime;
+            } catch (InitializationError e) {
+                throw new CucumberException("Could not create the runtime of a worker", e);
+            } catch (IOException e) {
+                throw new CucumberException("Could not create the runtime of a worker", e);
+            }
+        }
+    };
 
     /**
      * Constructor called by JUnit.
@@ -55,11 +99,10 @@ public class WebcatRunner extends ParentRunner<FeatureRunner> {
             LoggerHelper.setDebugOn();
         }
 
-        ClassLoader classLoader = clazz.getClassLoader();
+        classLoader = clazz.getClassLoader();
         Assertions.assertNoCucumberAnnotatedMethods(clazz);
 
         WebcatRuntimeOptionsFactory runtimeOptionsFactory = new WebcatRuntimeOptionsFactory(clazz);
-        final RuntimeOptions runtimeOptions;
 
         if(envConfiguration.shouldPublishResults()) {
             runtimeOptions = runtimeOptionsFactory.create(envConfiguration.getIntent());
@@ -67,7 +110,8 @@ public class WebcatRunner extends ParentRunner<FeatureRunner> {
             runtimeOptions = runtimeOptionsFactory.create();
         }
 
-        ResourceLoader resourceLoader = new MultiLoader(classLoader);
+        classpathIndex = new ClasspathIndex(envConfiguration.getIndexFile(clazz.getName()), classLoader);
+        resourceLoader = classpathIndex.resourceLoader(new MultiLoader(classLoader), runtimeOptions.getGlue());
         runtime = createRuntime(resourceLoader, classLoader, runtimeOptions);
         Glue glue = runtime.getGlue();
 
@@ -86,13 +130,83 @@ public class WebcatRunner extends ParentRunner<FeatureRunner> {
         } else {
             outWebcatReporter = null;
         }
-        final WebcatReporter webcatReporter = new WebcatReporter(outWebcatReporter, envConfiguration, stepDefinitionCollector.getStepDefinitions());
+        reportingMetrics = envConfiguration.isReportingMetrics();
+        if(reportingMetrics) {
+            metrics.register(clazz.getName());
+        }
+        final WebcatReporter webcatReporter = new WebcatReporter(outWebcatReporter, envConfiguration, stepDefinitionCollector.getStepDefinitions(), metrics);
 
         runtimeOptions.addPlugin(webcatReporter);
 
-        final List<CucumberFeature> cucumberFeatures = runtimeOptions.cucumberFeatures(resourceLoader);
+        final File rerunFile = envConfiguration.getRerunFile(clazz.getName());
+        List<String> featurePaths = runtimeOptions.getFeaturePaths();
+        List<Object> filters = runtimeOptions.getFilters();
+        if(envConfiguration.isRerunningFailed() && rerunFile.isFile()) {
+            // the rerun file selects the scenarios by line, which Cucumber can not combine with other filters
+            featurePaths = Collections.singletonList("@" + rerunFile.getPath());
+            filters = Collections.emptyList();
+        }
+        runtimeOptions.addPlugin(new FailedScenarios(rerunFile));
+
+        history = new DurationHistory(envConfiguration.getHistoryFile(clazz.getName()));
+        savingHistory = !envConfiguration.getShard().isSharded() || envConfiguration.getShardHistoryFile() == null;
+        final List<CucumberFeature> cucumberFeatures = shard(new FeatureCache(envConfiguration.getFeatureCacheDirectory())
+                .load(resourceLoader, featurePaths, filters, System.out), envConfiguration);
+        classpathIndex.save();
+        estimator = new WorkEstimator(history, cucumberFeatures);
+        wholeFeatures = isRunningWholeFeatures(featurePaths, filters, envConfiguration);
         jUnitReporter = new JUnitReporter(reporter, formatter, runtimeOptions.isStrict());
+
+        final Class<?> runnerClass = clazz;
+        final WebcatOptions webcatOptions = runnerClass.getAnnotation(WebcatOptions.class);
+        attempts = envConfiguration.getAttempts(webcatOptions == null ? 1 : webcatOptions.attempts());
         addChildren(cucumberFeatures);
+
+        final int threads = envConfiguration.getThreads(webcatOptions == null ? 1 : webcatOptions.threads());
+
+        if(threads > 1) {
+            parallelScenarios = envConfiguration.isParallelScenarios(webcatOptions != null && webcatOptions.parallelScenarios());
+            scheduler = new ParallelScheduler(threads);
+            replay = new OrderedReplay(formatter, reporter);
+            // every worker has its own runtime and statistics, the summary is counted from the replayed events
+            summaryStats = new SummaryStats(runtimeOptions.isMonochrome());
+            runtimeOptions.addPlugin(summaryStats);
+            setScheduler(scheduler);
+        }
+    }
+
+    /**
+     * @return whether every feature runs with all its scenarios, and not only those selected by lines, tags, names,
+     * the rerun file or the scenario shard of this node
+     */
+    private static boolean isRunningWholeFeatures(List<String> featurePaths, List<Object> filters, EnvironmentConfig envConfiguration) {
+        if(!filters.isEmpty() || (envConfiguration.getShard().isSharded() && envConfiguration.isShardingScenarios())) {
+            return false;
+        }
+        for(String featurePath : featurePaths) {
+            if(featurePath.startsWith("@") || LINES.matcher(featurePath).matches()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the features, or parts of features, of the shard this node runs
+     */
+    private List<CucumberFeature> shard(List<CucumberFeature> cucumberFeatures, EnvironmentConfig envConfiguration) {
+        final Shard shard = envConfiguration.getShard();
+        if(!shard.isSharded()) {
+            return cucumberFeatures;
+        }
+
+        // every node must make the same split, so the history of this node is only used when it is the shared one
+        final DurationHistory splitHistory = envConfiguration.getShardHistoryFile() != null ? history : new DurationHistory(null);
+        final Shards shards = new Shards(shard.getCount(), new WorkEstimator(splitHistory, cucumberFeatures));
+        if(envConfiguration.isShardingScenarios()) {
+            return shards.scenarios(cucumberFeatures, shard.getIndex());
+        }
+        return shards.features(cucumberFeatures, shard.getIndex());
     }
 
     /**
@@ -112,31 +226,214 @@ public class WebcatRunner extends ParentRunner<FeatureRunner> {
     }
 
     @Override
-    public List<FeatureRunner> getChildren() {
+    public List<RetryingFeatureRunner> getChildren() {
         return children;
     }
 
     @Override
-    protected Description describeChild(FeatureRunner child) {
+    protected Description describeChild(RetryingFeatureRunner child) {
         return child.getDescription();
     }
 
     @Override
-    protected void runChild(FeatureRunner child, RunNotifier notifier) {
-        child.run(notifier);
+    protected void runChild(RetryingFeatureRunner child, RunNotifier notifier) {
+        if(scheduler == null) {
+            final long start = System.nanoTime();
+            try {
+                child.run(notifier);
+            } finally {
+                final long duration = System.nanoTime() - start;
+                if(wholeFeatures) {
+                    history.record(WorkEstimator.key(features.get(child)), duration);
+                }
+                metrics.feature(duration);
+            }
+        } else if(parallelScenarios) {
+            submitScenarios(child, notifier);
+        } else {
+            submitFeature(child, notifier);
+        }
+    }
+
+    /**
+     * Runs every scenario and outline example of the feature as a separate unit of work. The formatting only
+     * events around them (feature, outline, examples and eof) are queued directly, so the replayed events
+     * are nested exactly as in a sequential run. The units are the runners of the feature runner, so JUnit is
+     * notified on the descriptions of {@link #getDescription()}.
+     */
+    private void submitScenarios(RetryingFeatureRunner featureRunner, RunNotifier notifier) {
+        final CucumberFeature cucumberFeature = features.get(featureRunner);
+        final FeatureSpan span = new FeatureSpan(featureRunner.getScenarioRunners().size());
+        final EventBuffer featureBuffer = new EventBuffer();
+        featureBuffer.uri(cucumberFeature.getPath());
+        featureBuffer.feature(cucumberFeature.getGherkinFeature());
+        replay.complete(replay.nextIndex(), featureBuffer);
+
+        for (ParentRunner child : featureRunner.getChildren()) {
+            if (child instanceof RetryingFeatureRunner.OutlineRunner) {
+                final RetryingFeatureRunner.OutlineRunner outlineRunner = (RetryingFeatureRunner.OutlineRunner) child;
+                final EventBuffer outlineBuffer = new EventBuffer();
+                outlineRunner.getCucumberScenarioOutline().formatOutlineScenario(outlineBuffer);
+                replay.complete(replay.nextIndex(), outlineBuffer);
+
+                for (RetryingFeatureRunner.ExamplesRunner examplesRunner : outlineRunner.getExamplesRunners()) {
+                    final EventBuffer examplesBuffer = new EventBuffer();
+                    examplesBuffer.examples(examplesRunner.getCucumberExamples().getExamples());
+                    replay.complete(replay.nextIndex(), examplesBuffer);
+
+                    for (RetryingFeatureRunner.ScenarioRunner scenarioRunner : examplesRunner.getScenarioRunners()) {
+                        submitScenario(cucumberFeature, scenarioRunner, span, notifier);
+                    }
+                }
+            } else {
+                submitScenario(cucumberFeature, (RetryingFeatureRunner.ScenarioRunner) child, span, notifier);
+            }
+        }
+
+        final EventBuffer eofBuffer = new EventBuffer();
+        eofBuffer.eof();
+        replay.complete(replay.nextIndex(), eofBuffer);
+    }
+
+    private void submitScenario(final CucumberFeature cucumberFeature,
+                                final RetryingFeatureRunner.ScenarioRunner scenarioRunner, final FeatureSpan span,
+                                final RunNotifier notifier) {
+        final CucumberScenario cucumberScenario = scenarioRunner.getCucumberScenario();
+        final int index = replay.nextIndex();
+        final long submitted = System.nanoTime();
+
+        scheduler.submit(new Runnable() {
+            @Override
+            public void run() {
+                final EventBuffer buffer = new EventBuffer();
+                final long start = System.nanoTime();
+                queued(buffer, start - submitted);
+                span.started(start);
+                try {
+                    final JUnitReporter scenarioReporter = new JUnitReporter(buffer, buffer, runtimeOptions.isStrict());
+                    RetryingFeatureRunner.run(scenarioRunner.attempt(workerRuntime.get(), scenarioReporter), notifier,
+                            attempts);
+                } finally {
+                    final long end = System.nanoTime();
+                    final long duration = end - start;
+                    history.record(WorkEstimator.key(cucumberFeature, cucumberScenario), duration);
+                    if(wholeFeatures) {
+                        history.record(WorkEstimator.key(cucumberFeature), duration);
+                    }
+                    if(span.finished()) {
+                        metrics.feature(end - span.getStart());
+                    }
+                    replay.complete(index, buffer);
+                }
+            }
+        }, estimator.estimate(cucumberFeature, cucumberScenario));
+    }
+
+    /**
+     * Runs the feature on a worker thread, with its own runtime and JUnit reporter. The events of the
+     * feature are buffered and handed to the formatter and reporter in the order the features were submitted.
+     */
+    private void submitFeature(final RetryingFeatureRunner featureRunner, final RunNotifier notifier) {
+        final CucumberFeature cucumberFeature = features.get(featureRunner);
+        final int index = replay.nextIndex();
+        final long submitted = System.nanoTime();
+
+        scheduler.submit(new Runnable() {
+            @Override
+            public void run() {
+                final EventBuffer buffer = new EventBuffer();
+                final long start = System.nanoTime();
+                queued(buffer, start - submitted);
+                try {
+                    final JUnitReporter featureReporter = new JUnitReporter(buffer, buffer, runtimeOptions.isStrict());
+                    featureRunner.run(workerRuntime.get(), featureReporter, notifier);
+                } finally {
+                    final long duration = System.nanoTime() - start;
+                    if(wholeFeatures) {
+                        history.record(WorkEstimator.key(cucumberFeature), duration);
+                    }
+                    metrics.feature(duration);
+                    replay.complete(index, buffer);
+                }
+            }
+        }, estimator.estimate(cucumberFeature));
+    }
+
+    /**
+     * @param queueWait how long the unit waited for a worker, from its submission, reported with its events
+     */
+    private void queued(EventBuffer buffer, long queueWait) {
+        buffer.setQueueWait(queueWait);
+        metrics.queueWait(queueWait);
     }
 
     @Override
     public void run(RunNotifier notifier) {
         super.run(notifier);
+        if(savingHistory) {
+            history.save();
+        }
         jUnitReporter.done();
         jUnitReporter.close();
-        runtime.printSummary();
+
+        if(scheduler == null) {
+            runtime.printSummary();
+        } else {
+            final List<Throwable> errors = new ArrayList<Throwable>();
+            final Set<String> snippets = new LinkedHashSet<String>();
+            for (Runtime workerRuntime : workerRuntimes) {
+                errors.addAll(workerRuntime.getErrors());
+                snippets.addAll(workerRuntime.getSnippets());
+            }
+            summaryStats.print(System.out, errors, snippets);
+        }
+
+        if(reportingMetrics) {
+            System.out.print(metrics.getSummary());
+        }
+    }
+
+    private RetryingFeatureRunner createFeatureRunner(CucumberFeature cucumberFeature, Runtime runtime,
+                                                      JUnitReporter jUnitReporter) throws InitializationError {
+        return new RetryingFeatureRunner(cucumberFeature, runtime, jUnitReporter, attempts);
     }
 
     private void addChildren(List<CucumberFeature> cucumberFeatures) throws InitializationError {
         for (CucumberFeature cucumberFeature : cucumberFeatures) {
-            children.add(new FeatureRunner(cucumberFeature, runtime, jUnitReporter));
+            final RetryingFeatureRunner featureRunner = createFeatureRunner(cucumberFeature, runtime, jUnitReporter);
+            children.add(featureRunner);
+            features.put(featureRunner, cucumberFeature);
+        }
+    }
+
+    /**
+     * The time of a feature whose scenarios run in parallel, from the start of its first scenario to the end of
+     * its last.
+     */
+    private static class FeatureSpan {
+        private final AtomicInteger unfinished;
+        private final AtomicLong start = new AtomicLong(Long.MAX_VALUE);
+
+        FeatureSpan(int scenarios) {
+            unfinished = new AtomicInteger(scenarios);
+        }
+
+        void started(long nanos) {
+            long first = start.get();
+            while (nanos < first && !start.compareAndSet(first, nanos)) {
+                first = start.get();
+            }
+        }
+
+        /**
+         * @return true once the last scenario of the feature finished
+         */
+        boolean finished() {
+            return unfinished.decrementAndGet() == 0;
+        }
+
+        long getStart() {
+            return start.get();
         }
     }
 }
@@ -4,9 +4,9 @@ import cucumber.api.CucumberOptions;
 import cucumber.runtime.RuntimeOptions;
 import cucumber.runtime.io.MultiLoader;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.io.File;
+import java.util.*;
+import java.util.regex.Pattern;
 
 import static java.util.Arrays.asList;
 
@@ -26,12 +26,24 @@ public class WebcatRuntimeOptionsFactory {
     }
 
     public RuntimeOptions create(List<String> features) {
-        final List<String> args = buildArgsFromOptions(features);
+        return create(Intent.features(features));
+    }
+
+    /**
+     * Runs only what the intent asks for. Cucumber applies a single kind of filter, lines, tags or names, to a
+     * feature, so the filters of the {@link CucumberOptions} that would conflict with the intent, or widen it, are
+     * left out: the tags and names for scenarios, the names for tags and both for names.
+     */
+    public RuntimeOptions create(Intent intent) {
+        final List<String> args = buildArgsFromOptions(intent.isEmpty() ? null : intent);
         return new RuntimeOptions(args);
     }
 
-    private List<String> buildArgsFromOptions(List<String> features) {
-        final boolean shouldAddAnnotationFeatures = features == null;
+    private List<String> buildArgsFromOptions(Intent intent) {
+        final Intent.Type type = intent == null ? null : intent.getType();
+        final boolean shouldAddAnnotationFeatures = type == null || type == Intent.Type.TAGS || type == Intent.Type.NAMES;
+        final boolean shouldAddAnnotationTags = type == null || type == Intent.Type.FEATURES || type == Intent.Type.TAGS;
+        final boolean shouldAddAnnotationNames = type == null || type == Intent.Type.FEATURES;
 
         final List<String> args = new ArrayList<String>();
 
@@ -40,10 +52,14 @@ public class WebcatRuntimeOptionsFactory {
             if (options != null) {
                 addDryRun(options, args);
                 addMonochrome(options, args);
-                addTags(options, args);
+                if(shouldAddAnnotationTags) {
+                    addTags(options, args);
+                }
                 addPlugins(options, args);
                 addStrict(options, args);
-                addName(options, args);
+                if(shouldAddAnnotationNames) {
+                    addName(options, args);
+                }
                 addSnippets(options, args);
                 addGlue(options, args);
 
@@ -53,9 +69,8 @@ public class WebcatRuntimeOptionsFactory {
             }
         }
 
-        if(!shouldAddAnnotationFeatures && !features.isEmpty()) {
-            args.addAll(features);
-            featuresSpecified = true;
+        if(intent != null) {
+            addIntent(intent, args);
         }
 
         addDefaultFeaturePathIfNoFeaturePathIsSpecified(args, clazz);
@@ -64,6 +79,67 @@ public class WebcatRuntimeOptionsFactory {
         return args;
     }
 
+    private void addIntent(Intent intent, List<String> args) {
+        switch (intent.getType()) {
+            case FEATURES:
+                args.addAll(intent.getValues());
+                featuresSpecified = true;
+                break;
+            case SCENARIOS:
+                args.addAll(scenarioPaths(intent.getValues()));
+                featuresSpecified = true;
+                break;
+            case TAGS:
+                for (String tags : intent.getValues()) {
+                    args.add("--tags");
+                    args.add(tags);
+                }
+                break;
+            case NAMES:
+                for (String name : intent.getValues()) {
+                    args.add("--name");
+                    args.add("^" + Pattern.quote(name) + "$");
+                }
+                break;
+        }
+    }
+
+    /**
+     * Groups the {@code uri:line} of the scenarios by feature, {@code uri:line:line...}, so every feature is
+     * parsed once. A uri without a line runs the whole feature. Report uris are relative to the classpath unless
+     * they are files.
+     */
+    static List<String> scenarioPaths(List<String> scenarios) {
+        // the lines of each feature, null to run all of it
+        final Map<String, List<String>> lines = new LinkedHashMap<String, List<String>>();
+        for (String scenario : scenarios) {
+            final int separator = scenario.lastIndexOf(':');
+            final boolean hasLine = separator > 0 && scenario.substring(separator + 1).matches("\\d+");
+            final String uri = hasLine ? scenario.substring(0, separator) : scenario;
+            final String path = uri.contains(":") || new File(uri).exists() ? uri : MultiLoader.CLASSPATH_SCHEME + uri;
+
+            if (!hasLine) {
+                lines.put(path, null);
+            } else if (!lines.containsKey(path)) {
+                lines.put(path, new ArrayList<String>(Collections.singletonList(scenario.substring(separator + 1))));
+            } else if (lines.get(path) != null) {
+                lines.get(path).add(scenario.substring(separator + 1));
+            }
+        }
+
+        final List<String> paths = new ArrayList<String>();
+        for (Map.Entry<String, List<String>> feature : lines.entrySet()) {
+            final StringBuilder path = new StringBuilder(feature.getKey());
+            if (feature.getValue() != null) {
+                for (String line : feature.getValue()) {
+                    path.append(':').append(line);
+                }
+            }
+            paths.add(path.toString());
+        }
+        return paths;
+    }
+
     private void addName(CucumberOptions options, List<String> args) {
         for (String name : options.name()) {
             args.add("--name");
@@ -1,36 +1,129 @@
 package com.byclosure.webcat.context;
 
-import gherkin.deps.net.iharder.Base64;
-
 import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * Holds the screenshots taken during the scenario that runs on the current thread.
+ * <p>
+ * Each thread has its own context, so scenarios running in parallel never see each other's screenshots, and the
+ * reporter takes them over with {@link #drainScreenshots()} when the step or after hook finishes. The context is cleared when
+ * a scenario starts, so screenshots taken after the last step of a scenario do not end up on the next one.
+ * </p>
+ * <p>
+ * When the events of a worker are replayed, the context also tells the reporter when each event happened on the
+ * worker, see {@link #nanoTime()}, how long the work waited for a worker and which attempt of a scenario run again
+ * after failing it is.
+ * </p>
+ */
 public class Context implements IContext {
     private List<String> screenshots = new ArrayList<String>();
+    // only used by the thread that replays the events of a worker
+    private boolean replaying = false;
+    private long eventNanos;
+    private Long queueWait;
+    private Integer attempt;
 
-    private static Context instance;
+    private static final ThreadLocal<Context> instance = new ThreadLocal<Context>() {
+        @Override
+        protected Context initialValue() {
+            return new Context();
+        }
+    };
 
     public static Context getInstance() {
-        if(instance == null) {
-            instance = new Context();
-        }
+        return instance.get();
+    }
 
-        return instance;
+    /**
+     * Makes {@code context} the context of the current thread, e.g. to report, on another thread, the
+     * screenshots of a step that ran on a worker.
+     *
+     * @return the context the current thread had before
+     */
+    public static Context bind(Context context) {
+        final Context previous = instance.get();
+        instance.set(context);
+        return previous;
     }
 
+    // the lock is only taken by the thread running the scenario, unless it hands the context to a helper thread,
+    // so it is never contended on the normal path
+
     @Override
-    public void clearScreenshots() {
-        screenshots.clear();
+    public synchronized void clearScreenshots() {
+        screenshots = new ArrayList<String>();
     }
 
     @Override
-    public List<String> getScreenshots() {
+    public synchronized List<String> getScreenshots() {
         return screenshots;
     }
 
+    /**
+     * Takes the screenshots taken since the last step out of the context.
+     *
+     * @return the ids, in the {@link ScreenshotStore}, of the screenshots taken since the last step
+     */
+    public synchronized List<String> drainScreenshots() {
+        final List<String> drained = screenshots;
+        screenshots = new ArrayList<String>();
+        return drained;
+    }
+
     @Override
     public void addScreenshot(byte[] data) {
-        screenshots.add(Base64.encodeBytes(data));
+        final String id = ScreenshotStore.getInstance().put(data);
+        synchronized (this) {
+            screenshots.add(id);
+        }
+    }
+
+    /**
+     * @return the {@link System#nanoTime()} at which the event being reported happened, which is earlier than now
+     * when the event is replayed from a worker
+     */
+    public long nanoTime() {
+        return replaying ? eventNanos : System.nanoTime();
+    }
+
+    /**
+     * Sets the time of the next events reported on this thread, see {@link #nanoTime()}.
+     */
+    public void replayedAt(long nanos) {
+        replaying = true;
+        eventNanos = nanos;
+    }
+
+    public void setQueueWait(long nanos) {
+        queueWait = nanos;
+    }
+
+    /**
+     * @return how long, in nanoseconds, the work whose events are reported waited for a worker, only once, null if
+     * it did not run on a worker
+     */
+    public Long drainQueueWait() {
+        final Long drained = queueWait;
+        queueWait = null;
+        return drained;
+    }
+
+    /**
+     * @param attempt number, from 1, of the attempt of the scenario about to run, when failing scenarios run again
+     */
+    public void setAttempt(Integer attempt) {
+        this.attempt = attempt;
+    }
+
+    /**
+     * @return the number of the attempt of the scenario being reported, only once, null if failing scenarios do not
+     * run again
+     */
+    public Integer drainAttempt() {
+        final Integer drained = attempt;
+        attempt = null;
+        return drained;
     }
 
 //    @Override
@@ -5,6 +5,9 @@ import java.util.List;
 public interface IContext {
     void clearScreenshots();
 
+    /**
+     * @return the ids, in the {@link ScreenshotStore}, of the screenshots taken since the last step
+     */
     List<String> getScreenshots();
     void addScreenshot(byte[] data);
 }
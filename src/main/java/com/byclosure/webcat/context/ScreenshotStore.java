@@ -0,0 +1,89 @@
+package com.byclosure.webcat.context;
+
+import cucumber.runtime.CucumberException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Keeps screenshots on disk, named by the SHA-256 of their content, so that only their id is kept in memory
+ * and identical screenshots (e.g. the same error page) are stored once.
+ */
+public class ScreenshotStore {
+    private static final String DEFAULT_DIRECTORY = "target" + File.separator + "webcat-screenshots";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final ScreenshotStore instance = new ScreenshotStore(new File(DEFAULT_DIRECTORY));
+
+    private final File directory;
+
+    public ScreenshotStore(File directory) {
+        this.directory = directory;
+    }
+
+    public static ScreenshotStore getInstance() {
+        return instance;
+    }
+
+    /**
+     * @return the id of the screenshot
+     */
+    public String put(byte[] data) {
+        final String id = hash(data);
+        final Path target = file(id).toPath();
+
+        if (Files.exists(target)) {
+            return id;
+        }
+
+        try {
+            Files.createDirectories(directory.toPath());
+            // write aside and move, so a reader never sees a partially written screenshot
+            final Path temporary = Files.createTempFile(directory.toPath(), id, ".tmp");
+            Files.write(temporary, data);
+            try {
+                Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (FileAlreadyExistsException e) {
+                Files.delete(temporary);
+            }
+        } catch (IOException e) {
+            throw new CucumberException("Could not store screenshot " + id, e);
+        }
+
+        return id;
+    }
+
+    public byte[] get(String id) {
+        try {
+            return Files.readAllBytes(file(id).toPath());
+        } catch (IOException e) {
+            throw new CucumberException("Could not read screenshot " + id, e);
+        }
+    }
+
+    public File file(String id) {
+        return new File(directory, id);
+    }
+
+    private static String hash(byte[] data) {
+        final byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256").digest(data);
+        } catch (NoSuchAlgorithmException e) {
+            throw new CucumberException(e);
+        }
+
+        final char[] hex = new char[digest.length * 2];
+        for (int i = 0; i < digest.length; i++) {
+            hex[i * 2] = HEX[(digest[i] >> 4) & 0xf];
+            hex[i * 2 + 1] = HEX[digest[i] & 0xf];
+        }
+        return new String(hex);
+    }
+}
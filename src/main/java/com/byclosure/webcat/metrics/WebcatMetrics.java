@@ -0,0 +1,321 @@
+package com.byclosure.webcat.metrics;
+
+import com.byclosure.webcat.helpers.LoggerHelper;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Where the time of a run goes: the steps, by step definition, the hooks, the handling of the reporter events, the
+ * serialization and upload of the report, and how much is sent.
+ * <p>
+ * The runner registers the metrics of its suite as an MBean and prints their summary with the Cucumber summary at
+ * the end of the run. Recording is lock free, so the metrics can be fed from the worker threads.
+ * </p>
+ */
+public class WebcatMetrics implements WebcatMetricsMBean {
+    private final static Logger logger = LoggerHelper.getLogger(WebcatMetrics.class.getName());
+
+    private static final String DOMAIN = "com.byclosure.webcat";
+    private static final int SUMMARY_STEP_DEFINITIONS = 10;
+    private static final double NANOS_PER_MILLI = 1000000.0;
+
+    private final Histogram steps = new Histogram();
+    private final ConcurrentMap<String, Histogram> stepDefinitions = new ConcurrentHashMap<String, Histogram>();
+    private final Histogram hooks = new Histogram();
+    private final Histogram events = new Histogram();
+    private final Histogram serialization = new Histogram();
+    private final Histogram encoding = new Histogram();
+    private final Histogram uploads = new Histogram();
+    private final Histogram features = new Histogram();
+    private final Histogram queueWaits = new Histogram();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong screenshots = new AtomicLong();
+
+    private ObjectName name;
+
+    /**
+     * Registers the metrics with the platform MBean server, in place of those of a previous run of the suite.
+     */
+    public synchronized void register(String suite) {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            name = new ObjectName(DOMAIN + ":type=Metrics,suite=" + ObjectName.quote(suite));
+            try {
+                server.registerMBean(this, name);
+            } catch (InstanceAlreadyExistsException e) {
+                server.unregisterMBean(name);
+                server.registerMBean(this, name);
+            }
+        } catch (JMException e) {
+            logger.log(Level.WARNING, "Could not register the Webcat metrics of " + suite + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * @param pattern pattern of the step definition, null for steps without one
+     */
+    public void step(String pattern, long nanos) {
+        steps.record(nanos);
+        if (pattern != null) {
+            Histogram histogram = stepDefinitions.get(pattern);
+            if (histogram == null) {
+                final Histogram created = new Histogram();
+                histogram = stepDefinitions.putIfAbsent(pattern, created);
+                if (histogram == null) {
+                    histogram = created;
+                }
+            }
+            histogram.record(nanos);
+        }
+    }
+
+    public void hook(long nanos) {
+        hooks.record(nanos);
+    }
+
+    /**
+     * Records the handling of a reporter event that started at {@code startNanos}, a {@link System#nanoTime()}.
+     */
+    public void event(long startNanos) {
+        events.record(System.nanoTime() - startNanos);
+    }
+
+    public void serialization(long nanos) {
+        serialization.record(nanos);
+    }
+
+    /**
+     * @param nanos time spent Base64 encoding an attachment into the report
+     */
+    public void encoding(long nanos) {
+        encoding.record(nanos);
+    }
+
+    /**
+     * @param bytes size of the request body, -1 if unknown
+     */
+    public void upload(long nanos, long bytes) {
+        uploads.record(nanos);
+        if (bytes > 0) {
+            bytesSent.addAndGet(bytes);
+        }
+    }
+
+    public void feature(long nanos) {
+        features.record(nanos);
+    }
+
+    /**
+     * @param nanos time a feature or scenario waited for a worker in a parallel run
+     */
+    public void queueWait(long nanos) {
+        queueWaits.record(nanos);
+    }
+
+    public void screenshots(int count) {
+        screenshots.addAndGet(count);
+    }
+
+    public Histogram getStepHistogram() {
+        return steps;
+    }
+
+    /**
+     * @return the histogram of the steps of a step definition, null if none ran
+     */
+    public Histogram getStepHistogram(String pattern) {
+        return stepDefinitions.get(pattern);
+    }
+
+    public Histogram getHookHistogram() {
+        return hooks;
+    }
+
+    public Histogram getEventHistogram() {
+        return events;
+    }
+
+    public Histogram getSerializationHistogram() {
+        return serialization;
+    }
+
+    public Histogram getEncodingHistogram() {
+        return encoding;
+    }
+
+    public Histogram getUploadHistogram() {
+        return uploads;
+    }
+
+    public Histogram getFeatureHistogram() {
+        return features;
+    }
+
+    public Histogram getQueueWaitHistogram() {
+        return queueWaits;
+    }
+
+    @Override
+    public long getSteps() {
+        return steps.getCount();
+    }
+
+    @Override
+    public double getStepMeanMillis() {
+        return millis(steps.getMean());
+    }
+
+    @Override
+    public double getStepP99Millis() {
+        return millis(steps.getPercentile(99));
+    }
+
+    @Override
+    public String[] getStepDurations() {
+        final List<String> lines = new ArrayList<String>();
+        for (Map.Entry<String, Histogram> stepDefinition : byTotal()) {
+            lines.add(stepDefinitionLine(stepDefinition));
+        }
+        return lines.toArray(new String[lines.size()]);
+    }
+
+    @Override
+    public long getHooks() {
+        return hooks.getCount();
+    }
+
+    @Override
+    public double getHookMeanMillis() {
+        return millis(hooks.getMean());
+    }
+
+    @Override
+    public double getHookP99Millis() {
+        return millis(hooks.getPercentile(99));
+    }
+
+    @Override
+    public long getEvents() {
+        return events.getCount();
+    }
+
+    @Override
+    public double getEventMeanMillis() {
+        return millis(events.getMean());
+    }
+
+    @Override
+    public double getEventP99Millis() {
+        return millis(events.getPercentile(99));
+    }
+
+    @Override
+    public double getSerializationMillis() {
+        return millis(serialization.getTotal());
+    }
+
+    @Override
+    public double getEncodingMillis() {
+        return millis(encoding.getTotal());
+    }
+
+    @Override
+    public double getUploadMillis() {
+        return millis(uploads.getTotal());
+    }
+
+    @Override
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    @Override
+    public long getScreenshots() {
+        return screenshots.get();
+    }
+
+    @Override
+    public String getSummary() {
+        final StringBuilder summary = new StringBuilder();
+        summary.append(String.format("Webcat metrics%n"));
+        summary.append(String.format("%-24s %8s %11s %11s %11s %11s %12s%n", "", "count", "mean", "p50", "p99", "max", "total"));
+        summary.append(line("steps", steps)).append(String.format("%n"));
+        summary.append(line("hooks", hooks)).append(String.format("%n"));
+        summary.append(line("features", features)).append(String.format("%n"));
+        if (queueWaits.getCount() > 0) {
+            summary.append(line("queue wait", queueWaits)).append(String.format("%n"));
+        }
+        summary.append(line("reporter events", events)).append(String.format("%n"));
+        summary.append(line("serialization", serialization)).append(String.format("%n"));
+        summary.append(line("base64 encoding", encoding)).append(String.format("%n"));
+        summary.append(line("uploads", uploads)).append(String.format("%n"));
+        summary.append(String.format("%d screenshots, %d bytes sent%n", screenshots.get(), bytesSent.get()));
+
+        final List<Map.Entry<String, Histogram>> slowest = byTotal();
+        if (!slowest.isEmpty()) {
+            summary.append(String.format("%8s %11s %11s %11s %11s %12s  %s%n", "count", "mean", "p50", "p99", "max", "total", "step definition"));
+            for (Map.Entry<String, Histogram> stepDefinition : slowest.subList(0, Math.min(SUMMARY_STEP_DEFINITIONS, slowest.size()))) {
+                summary.append(stepDefinitionLine(stepDefinition)).append(String.format("%n"));
+            }
+        }
+        return summary.toString();
+    }
+
+    @Override
+    public void reset() {
+        for (Histogram histogram : Arrays.asList(steps, hooks, events, serialization, encoding, uploads, features, queueWaits)) {
+            histogram.reset();
+        }
+        stepDefinitions.clear();
+        bytesSent.set(0);
+        screenshots.set(0);
+    }
+
+    private List<Map.Entry<String, Histogram>> byTotal() {
+        final List<Map.Entry<String, Histogram>> sorted = new ArrayList<Map.Entry<String, Histogram>>(stepDefinitions.entrySet());
+        Collections.sort(sorted, new Comparator<Map.Entry<String, Histogram>>() {
+            @Override
+            public int compare(Map.Entry<String, Histogram> a, Map.Entry<String, Histogram> b) {
+                final long aTotal = a.getValue().getTotal();
+                final long bTotal = b.getValue().getTotal();
+                return aTotal != bTotal ? (aTotal < bTotal ? 1 : -1) : a.getKey().compareTo(b.getKey());
+            }
+        });
+        return sorted;
+    }
+
+    private static String line(String name, Histogram histogram) {
+        return String.format("%-24s %s", name, columns(histogram));
+    }
+
+    /**
+     * The pattern comes last, patterns are too long to line up.
+     */
+    private static String stepDefinitionLine(Map.Entry<String, Histogram> stepDefinition) {
+        return columns(stepDefinition.getValue()) + "  " + stepDefinition.getKey();
+    }
+
+    private static String columns(Histogram histogram) {
+        return String.format("%8d %11s %11s %11s %11s %12s", histogram.getCount(),
+                format(histogram.getMean()), format(histogram.getPercentile(50)), format(histogram.getPercentile(99)),
+                format(histogram.getMax()), format(histogram.getTotal()));
+    }
+
+    private static String format(long nanos) {
+        return String.format("%.3f ms", millis(nanos));
+    }
+
+    private static double millis(long nanos) {
+        return nanos / NANOS_PER_MILLI;
+    }
+}
@@ -0,0 +1,44 @@
+package com.byclosure.webcat.metrics;
+
+/**
+ * The metrics of a run as seen through JMX, as {@code com.byclosure.webcat:type=Metrics,suite=<runner class>}.
+ * Durations are in milliseconds.
+ */
+public interface WebcatMetricsMBean {
+    long getSteps();
+
+    double getStepMeanMillis();
+
+    double getStepP99Millis();
+
+    /**
+     * @return a line for each step definition pattern, the longest total first
+     */
+    String[] getStepDurations();
+
+    long getHooks();
+
+    double getHookMeanMillis();
+
+    double getHookP99Millis();
+
+    long getEvents();
+
+    double getEventMeanMillis();
+
+    double getEventP99Millis();
+
+    double getSerializationMillis();
+
+    double getEncodingMillis();
+
+    double getUploadMillis();
+
+    long getBytesSent();
+
+    long getScreenshots();
+
+    String getSummary();
+
+    void reset();
+}
@@ -0,0 +1,128 @@
+package com.byclosure.webcat.parallel;
+
+import com.byclosure.webcat.helpers.LoggerHelper;
+
+import java.io.*;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * How long features and scenarios took in previous runs, kept in a properties file keyed by feature uri and by
+ * scenario {@code uri:line}, in nanoseconds.
+ * <p>
+ * Durations measured during the run are added up per key and averaged with the recorded ones when the history is
+ * saved, so a single slow run does not reorder the suite on its own.
+ * </p>
+ */
+public class DurationHistory {
+    private final static Logger logger = LoggerHelper.getLogger(DurationHistory.class.getName());
+
+    private final File file;
+    private final Map<String, Long> recorded = new ConcurrentHashMap<String, Long>();
+    private final ConcurrentMap<String, AtomicLong> measured = new ConcurrentHashMap<String, AtomicLong>();
+
+    public DurationHistory(File file) {
+        this.file = file;
+        load();
+    }
+
+    private void load() {
+        if (file == null || !file.isFile()) {
+            return;
+        }
+
+        final Properties properties = new Properties();
+        try {
+            final InputStream input = new FileInputStream(file);
+            try {
+                properties.load(input);
+            } finally {
+                input.close();
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not read the duration history " + file + ": " + e.getMessage());
+            return;
+        }
+
+        for (String key : properties.stringPropertyNames()) {
+            try {
+                recorded.put(key, Long.parseLong(properties.getProperty(key).trim()));
+            } catch (NumberFormatException e) {
+                logger.log(Level.FINE, "Ignoring invalid duration of " + key + " in " + file);
+            }
+        }
+    }
+
+    /**
+     * @return the recorded duration of {@code key} in nanoseconds, null if it never ran
+     */
+    public Long get(String key) {
+        return recorded.get(key);
+    }
+
+    public boolean isEmpty() {
+        return recorded.isEmpty();
+    }
+
+    /**
+     * Adds {@code nanos} to the duration of {@code key} in this run. Safe to call from the worker threads.
+     */
+    public void record(String key, long nanos) {
+        AtomicLong duration = measured.get(key);
+        if (duration == null) {
+            final AtomicLong created = new AtomicLong();
+            duration = measured.putIfAbsent(key, created);
+            if (duration == null) {
+                duration = created;
+            }
+        }
+        duration.addAndGet(nanos);
+    }
+
+    /**
+     * Merges the durations of this run into the history and writes it to its file.
+     */
+    public synchronized void save() {
+        if (file == null || measured.isEmpty()) {
+            return;
+        }
+
+        for (Map.Entry<String, AtomicLong> duration : measured.entrySet()) {
+            final Long previous = recorded.get(duration.getKey());
+            final long current = duration.getValue().get();
+            recorded.put(duration.getKey(), previous == null ? current : (previous + current) / 2);
+        }
+        measured.clear();
+
+        final Properties properties = new Properties();
+        for (Map.Entry<String, Long> duration : recorded.entrySet()) {
+            properties.setProperty(duration.getKey(), duration.getValue().toString());
+        }
+
+        try {
+            final File directory = file.getAbsoluteFile().getParentFile();
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Could not create " + directory);
+            }
+            // written next to the history and renamed, so a run that is killed never leaves half a file behind
+            final File temporary = File.createTempFile(file.getName() + ".new", ".tmp", directory);
+            final OutputStream output = new FileOutputStream(temporary);
+            try {
+                properties.store(output, "Webcat feature and scenario durations, in nanoseconds");
+            } finally {
+                output.close();
+            }
+            if (!temporary.renameTo(file) && !(file.delete() && temporary.renameTo(file))) {
+                temporary.delete();
+                throw new IOException("Could not replace " + file);
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not save the duration history " + file + ": " + e.getMessage());
+        }
+    }
+}
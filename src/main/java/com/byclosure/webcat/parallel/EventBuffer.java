@@ -0,0 +1,256 @@
+package com.byclosure.webcat.parallel;
+
+import com.byclosure.webcat.context.Context;
+import gherkin.formatter.Formatter;
+import gherkin.formatter.Reporter;
+import gherkin.formatter.model.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Records the Formatter and Reporter events of a unit of work running on a worker thread so they can be
+ * replayed later, in document order, into the formatters and reporters of the run.
+ * <p>
+ * The time of every event is recorded with it, so the reporter times the unit as it ran rather than as it was
+ * replayed.
+ * </p>
+ */
+public class EventBuffer implements Formatter, Reporter {
+    private final List<Event> events = new ArrayList<Event>();
+    private long[] times = new long[16];
+    private Long queueWait;
+
+    private interface Event {
+        void replay(Formatter formatter, Reporter reporter);
+    }
+
+    private void add(Event event) {
+        if (events.size() == times.length) {
+            times = Arrays.copyOf(times, times.length * 2);
+        }
+        times[events.size()] = System.nanoTime();
+        events.add(event);
+    }
+
+    /**
+     * @param nanos how long the unit waited for a worker
+     */
+    public void setQueueWait(long nanos) {
+        queueWait = nanos;
+    }
+
+    public void replay(Formatter formatter, Reporter reporter) {
+        // the reporter reads the screenshots from the context of the replaying thread, which may be a worker in
+        // the middle of another unit, so the unit is replayed with a context of its own
+        final Context context = new Context();
+        if (queueWait != null) {
+            context.setQueueWait(queueWait);
+        }
+        final Context previous = Context.bind(context);
+        try {
+            for (int i = 0; i < events.size(); i++) {
+                context.replayedAt(times[i]);
+                events.get(i).replay(formatter, reporter);
+            }
+        } finally {
+            Context.bind(previous);
+            events.clear();
+        }
+    }
+
+    @Override
+    public void syntaxError(final String state, final String event, final List<String> legalEvents, final String uri, final Integer line) {
+        add(new Event() {
+            @Override
+            public void replay(Formatter formatter, Reporter reporter) {
+                formatter.syntaxError(state, event, legalEvents, uri, line);
+            }
+        });
+    }
+
+    @Override
+    public void uri(final String uri) {
+        add(new Event() {
+            @Override
+            public void replay(Formatter formatter, Reporter reporter) {
+                formatter.uri(uri);
+            }
+        });
+    }
+
+    @Override
+    public void feature(final Feature feature) {
+        add(new Event() {
+            @Override
+            public void replay(Formatter formatter, Reporter reporter) {
+                formatter.feature(feature);
+            }
+        });
+    }
+
+    @Override
+    public void scenarioOutline(final ScenarioOutline scenarioOutline) {
+        add(new Event() {
+            @Override
+            public void replay(Formatter formatter, Reporter reporter) {
+                formatter.scenarioOutline(scenarioOutline);
+            }
+        });
+    }
+
+    @Override
+    public void examples(final Examples examples) {
+        add(new Event() {
+            @Override
+            public void replay(Formatter formatter, Reporter reporter) {
+                formatter.examples(examples);
+            }
+        });
+    }
+
+    @Override
+    public void startOfScenarioLifeCycle(final Scenario scenario) {
+        // screenshots left by the previous scenario of this worker do not belong to this one
+        Context.getInstance().clearScreenshots();
+
+        add(new Event() {
+            @Override
+            public void replay(Formatter formatter, Reporter reporter) {
+                formatter.startOfScenarioLifeCycle(scenario);
+            }
+        });
+    }
+
+    @Override
+    public void background(final Background background) {
+        add(new Event() {
+            @Override
+            public void replay(Formatter formatter, Reporter reporter) {
+                formatter.background(background);
+            }
+        });
+    }
+
+    @Override
+    public void scenario(final Scenario scenario) {
+        // the attempt is set on the worker that runs the scenario, hand it over with the scenario
+        final Integer attempt = Context.getInstance().drainAttempt();
+
+        add(new Event() {
+            @Override
+            public void replay(Formatter formatter, Reporter reporter) {
+                Context.getInstance().setAttempt(attempt);
+                formatter.scenario(scenario);
+            }
+        });
+    }
+
+    @Override
+    public void step(final Step step) {
+        add(new Event() {
+            @Override
+            public void replay(Formatter formatter, Reporter reporter) {
+                formatter.step(step);
+            }
+        });
+    }
+
+    @Override
+    public void endOfScenarioLifeCycle(final Scenario scenario) {
+        add(new Event() {
+            @Override
+            public void replay(Formatter formatter, Reporter reporter) {
+                formatter.endOfScenarioLifeCycle(scenario);
+            }
+        });
+    }
+
+    @Override
+    public void done() {
+        // done is only sent once, by the runner, after every buffer has been replayed
+    }
+
+    @Override
+    public void close() {
+        // close is only sent once, by the runner, after every buffer has been replayed
+    }
+
+    @Override
+    public void eof() {
+        add(new Event() {
+            @Override
+            public void replay(Formatter formatter, Reporter reporter) {
+                formatter.eof();
+            }
+        });
+    }
+
+    @Override
+    public void before(final Match match, final Result result) {
+        add(new Event() {
+            @Override
+            public void replay(Formatter formatter, Reporter reporter) {
+                reporter.before(match, result);
+            }
+        });
+    }
+
+    @Override
+    public void result(final Result result) {
+        // screenshots belong to the worker thread that ran the step, hand them over with the result
+        final List<String> screenshots = Context.getInstance().drainScreenshots();
+
+        add(new Event() {
+            @Override
+            public void replay(Formatter formatter, Reporter reporter) {
+                Context.getInstance().getScreenshots().addAll(screenshots);
+                reporter.result(result);
+            }
+        });
+    }
+
+    @Override
+    public void after(final Match match, final Result result) {
+        final List<String> screenshots = Context.getInstance().drainScreenshots();
+
+        add(new Event() {
+            @Override
+            public void replay(Formatter formatter, Reporter reporter) {
+                Context.getInstance().getScreenshots().addAll(screenshots);
+                reporter.after(match, result);
+            }
+        });
+    }
+
+    @Override
+    public void match(final Match match) {
+        add(new Event() {
+            @Override
+            public void replay(Formatter formatter, Reporter reporter) {
+                reporter.match(match);
+            }
+        });
+    }
+
+    @Override
+    public void embedding(final String mimeType, final byte[] data) {
+        add(new Event() {
+            @Override
+            public void replay(Formatter formatter, Reporter reporter) {
+                reporter.embedding(mimeType, data);
+            }
+        });
+    }
+
+    @Override
+    public void write(final String text) {
+        add(new Event() {
+            @Override
+            public void replay(Formatter formatter, Reporter reporter) {
+                reporter.write(text);
+            }
+        });
+    }
+}
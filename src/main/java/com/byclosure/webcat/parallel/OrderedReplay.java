@@ -0,0 +1,45 @@
+package com.byclosure.webcat.parallel;
+
+import gherkin.formatter.Formatter;
+import gherkin.formatter.Reporter;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Replays the {@link EventBuffer}s of units of work that may finish in any order, in the order the units
+ * were created. The formatter and reporter therefore see the same event stream as in a sequential run.
+ */
+public class OrderedReplay {
+    private final Formatter formatter;
+    private final Reporter reporter;
+    private final Map<Integer, EventBuffer> pending = new HashMap<Integer, EventBuffer>();
+
+    private int next = 0;
+    private int created = 0;
+
+    public OrderedReplay(Formatter formatter, Reporter reporter) {
+        this.formatter = formatter;
+        this.reporter = reporter;
+    }
+
+    /**
+     * @return the position of a new unit of work. Must be called in document order.
+     */
+    public synchronized int nextIndex() {
+        return created++;
+    }
+
+    /**
+     * Marks the unit at {@code index} as finished and replays every buffer that is now next in line.
+     */
+    public synchronized void complete(int index, EventBuffer buffer) {
+        pending.put(index, buffer);
+
+        EventBuffer ready;
+        while ((ready = pending.remove(next)) != null) {
+            ready.replay(formatter, reporter);
+            next++;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.byclosure.webcat.parallel;
+
+import cucumber.runtime.CucumberException;
+import org.junit.runners.model.RunnerScheduler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the work of a runner on a bounded pool of worker threads.
+ * <p>
+ * Children are dispatched on the calling thread, in document order, so that each child can queue its work
+ * through {@link #submit(Runnable, long)} knowing its position in the run. The work starts in {@link #finished()},
+ * longest expected first, so that no long unit starts last and keeps a single worker busy after the others are
+ * done. {@link #finished()} blocks until all the submitted work is done.
+ * </p>
+ */
+public class ParallelScheduler implements RunnerScheduler {
+    private final ExecutorService executor;
+    private final List<Work> queued = new ArrayList<Work>();
+    private final List<Future<?>> futures = new ArrayList<Future<?>>();
+
+    public ParallelScheduler(int threads) {
+        this.executor = Executors.newFixedThreadPool(threads, new WorkerThreadFactory());
+    }
+
+    @Override
+    public void schedule(Runnable childStatement) {
+        childStatement.run();
+    }
+
+    /**
+     * @param expectedNanos how long the work is expected to take, longer work is started first
+     */
+    public void submit(Runnable work, long expectedNanos) {
+        synchronized (queued) {
+            queued.add(new Work(work, expectedNanos));
+        }
+    }
+
+    @Override
+    public void finished() {
+        try {
+            start();
+            for (Future<?> future : drainFutures()) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CucumberException("Interrupted while waiting for the workers to finish", e);
+        } catch (ExecutionException e) {
+            throw new CucumberException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void start() {
+        final List<Work> work;
+        synchronized (queued) {
+            work = new ArrayList<Work>(queued);
+            queued.clear();
+        }
+
+        // stable, units expected to take as long start in document order
+        Collections.sort(work, new Comparator<Work>() {
+            @Override
+            public int compare(Work first, Work second) {
+                return first.expectedNanos < second.expectedNanos ? 1 : first.expectedNanos > second.expectedNanos ? -1 : 0;
+            }
+        });
+        synchronized (futures) {
+            for (Work unit : work) {
+                futures.add(executor.submit(unit.runnable));
+            }
+        }
+    }
+
+    private List<Future<?>> drainFutures() {
+        synchronized (futures) {
+            final List<Future<?>> drained = new ArrayList<Future<?>>(futures);
+            futures.clear();
+            return drained;
+        }
+    }
+
+    private static class Work {
+        final Runnable runnable;
+        final long expectedNanos;
+
+        Work(Runnable runnable, long expectedNanos) {
+            this.runnable = runnable;
+            this.expectedNanos = expectedNanos;
+        }
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            final Thread thread = new Thread(runnable, "webcat-worker-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.byclosure.webcat.parallel;
+
+/**
+ * The part of a run spread over several nodes that this node runs, {@code WEBCAT_SHARD_INDEX} of
+ * {@code WEBCAT_SHARD_COUNT}. The reports of a shard carry it so the server can put the run back together.
+ */
+public class Shard {
+    private final int index;
+    private final int count;
+
+    public Shard(int index, int count) {
+        this.index = index;
+        this.count = count;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public boolean isSharded() {
+        return count > 1;
+    }
+
+    @Override
+    public String toString() {
+        return (index + 1) + "/" + count;
+    }
+}
@@ -0,0 +1,119 @@
+package com.byclosure.webcat.parallel;
+
+import cucumber.runtime.model.CucumberFeature;
+import cucumber.runtime.model.CucumberTagStatement;
+
+import java.util.*;
+
+/**
+ * Splits the features of a run, or their scenarios, across the shards of a run spread over several nodes.
+ * <p>
+ * The units are taken longest expected first and each one goes to the shard with the least work so far, so the
+ * shards take about as long as each other. Ties are broken by uri and by shard number, so every node given the
+ * same features and the same {@link DurationHistory} makes the same split.
+ * </p>
+ */
+public class Shards {
+    private final int count;
+    private final WorkEstimator estimator;
+
+    public Shards(int count, WorkEstimator estimator) {
+        this.count = count;
+        this.estimator = estimator;
+    }
+
+    /**
+     * @return the features of shard {@code index}, in their original order
+     */
+    public List<CucumberFeature> features(List<CucumberFeature> features, int index) {
+        final List<Unit> units = new ArrayList<Unit>();
+        for (CucumberFeature feature : features) {
+            units.add(new Unit(WorkEstimator.key(feature), estimator.estimate(feature)));
+        }
+        final int[] shards = assign(units);
+
+        final List<CucumberFeature> shard = new ArrayList<CucumberFeature>();
+        for (int i = 0; i < features.size(); i++) {
+            if (shards[i] == index) {
+                shard.add(features.get(i));
+            }
+        }
+        return shard;
+    }
+
+    /**
+     * Splits the scenarios and outlines. The features of shard {@code index} are left with its scenarios only,
+     * features without any are left out.
+     */
+    public List<CucumberFeature> scenarios(List<CucumberFeature> features, int index) {
+        final List<Unit> units = new ArrayList<Unit>();
+        for (CucumberFeature feature : features) {
+            for (CucumberTagStatement element : feature.getFeatureElements()) {
+                units.add(new Unit(WorkEstimator.key(feature, element), estimator.estimate(feature, element)));
+            }
+        }
+        final int[] shards = assign(units);
+
+        final List<CucumberFeature> shard = new ArrayList<CucumberFeature>();
+        int unit = 0;
+        for (CucumberFeature feature : features) {
+            final Iterator<CucumberTagStatement> elements = feature.getFeatureElements().iterator();
+            while (elements.hasNext()) {
+                elements.next();
+                if (shards[unit++] != index) {
+                    elements.remove();
+                }
+            }
+            if (!feature.getFeatureElements().isEmpty()) {
+                shard.add(feature);
+            }
+        }
+        return shard;
+    }
+
+    /**
+     * @return the shard of each unit
+     */
+    private int[] assign(final List<Unit> units) {
+        final Integer[] order = new Integer[units.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer first, Integer second) {
+                final Unit a = units.get(first);
+                final Unit b = units.get(second);
+                if (a.expectedNanos != b.expectedNanos) {
+                    return a.expectedNanos < b.expectedNanos ? 1 : -1;
+                }
+                final int byKey = a.key.compareTo(b.key);
+                return byKey != 0 ? byKey : first.compareTo(second);
+            }
+        });
+
+        final long[] loads = new long[count];
+        final int[] shards = new int[units.size()];
+        for (Integer unit : order) {
+            int lightest = 0;
+            for (int shard = 1; shard < count; shard++) {
+                if (loads[shard] < loads[lightest]) {
+                    lightest = shard;
+                }
+            }
+            shards[unit] = lightest;
+            loads[lightest] += units.get(unit).expectedNanos;
+        }
+        return shards;
+    }
+
+    private static class Unit {
+        final String key;
+        final long expectedNanos;
+
+        Unit(String key, long expectedNanos) {
+            this.key = key;
+            this.expectedNanos = expectedNanos;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.byclosure.webcat.parallel;
+
+import gherkin.formatter.AnsiFormats;
+import gherkin.formatter.Formats;
+import gherkin.formatter.Formatter;
+import gherkin.formatter.MonochromeFormats;
+import gherkin.formatter.Reporter;
+import gherkin.formatter.model.*;
+
+import java.io.PrintStream;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.*;
+
+/**
+ * Counts the scenarios and steps of a parallel run, and their duration, from the events replayed in document
+ * order, so the run prints a single summary like Cucumber's {@code Runtime.printSummary()} instead of one per worker
+ * runtime.
+ * <p>
+ * Scenarios and steps are counted and printed the way Cucumber's own statistics, which are not accessible, count
+ * and print them: a scenario has the most severe status of its steps and hooks, and the duration adds up the steps
+ * and hooks.
+ * </p>
+ */
+public class SummaryStats implements Formatter, Reporter {
+    private static final long ONE_SECOND = 1000000000L;
+    private static final long ONE_MINUTE = 60 * ONE_SECOND;
+    private static final List<String> SEVERITY = Arrays.asList(Result.PASSED, Result.SKIPPED.getStatus(), "pending",
+            Result.UNDEFINED.getStatus(), Result.FAILED);
+
+    private final Formats formats;
+    private final Map<String, Integer> scenarios = new HashMap<String, Integer>();
+    private final Map<String, Integer> steps = new HashMap<String, Integer>();
+    private int scenarioCount;
+    private int stepCount;
+    private long totalDuration;
+    private int scenarioSeverity;
+
+    public SummaryStats(boolean monochrome) {
+        this.formats = monochrome ? new MonochromeFormats() : new AnsiFormats();
+    }
+
+    /**
+     * Prints the summary as {@code cucumber.runtime.SummaryPrinter} does, with the errors and the snippets of the
+     * undefined steps of every worker.
+     */
+    public void print(PrintStream out, List<Throwable> errors, Collection<String> snippets) {
+        out.println();
+        printStats(out);
+        out.println();
+        for (Throwable error : errors) {
+            error.printStackTrace(out);
+            out.println();
+        }
+        if (!snippets.isEmpty()) {
+            out.append("\n");
+            out.println("You can implement missing steps with the snippets below:");
+            out.println();
+            for (String snippet : snippets) {
+                out.println(snippet);
+            }
+        }
+    }
+
+    void printStats(PrintStream out) {
+        if (stepCount == 0) {
+            out.println("0 Scenarios");
+            out.println("0 Steps");
+        } else {
+            out.print(scenarioCount);
+            out.print(" Scenarios (");
+            printSubCounts(out, scenarios);
+            out.println(")");
+            out.print(stepCount);
+            out.print(" Steps (");
+            printSubCounts(out, steps);
+            out.println(")");
+        }
+        out.print(String.format("%dm", totalDuration / ONE_MINUTE));
+        final DecimalFormat format = new DecimalFormat("0.000", new DecimalFormatSymbols(Locale.getDefault()));
+        out.println(format.format((double) (totalDuration % ONE_MINUTE) / ONE_SECOND) + "s");
+    }
+
+    private void printSubCounts(PrintStream out, Map<String, Integer> counts) {
+        boolean comma = false;
+        for (String status : Arrays.asList(Result.FAILED, Result.SKIPPED.getStatus(), "pending",
+                Result.UNDEFINED.getStatus(), Result.PASSED)) {
+            final Integer count = counts.get(status);
+            if (count != null) {
+                if (comma) {
+                    out.print(", ");
+                }
+                out.print(formats.get(status).text(count + " " + status));
+                comma = true;
+            }
+        }
+    }
+
+    private static void count(Map<String, Integer> counts, String status) {
+        final Integer count = counts.get(status);
+        counts.put(status, count == null ? 1 : count + 1);
+    }
+
+    private void add(Result result) {
+        scenarioSeverity = Math.max(scenarioSeverity, SEVERITY.indexOf(result.getStatus()));
+        if (result.getDuration() != null) {
+            totalDuration += result.getDuration();
+        }
+    }
+
+    @Override
+    public void startOfScenarioLifeCycle(Scenario scenario) {
+        scenarioSeverity = 0;
+    }
+
+    @Override
+    public void endOfScenarioLifeCycle(Scenario scenario) {
+        scenarioCount++;
+        count(scenarios, SEVERITY.get(scenarioSeverity));
+    }
+
+    @Override
+    public void result(Result result) {
+        stepCount++;
+        count(steps, result.getStatus());
+        add(result);
+    }
+
+    @Override
+    public void before(Match match, Result result) {
+        add(result);
+    }
+
+    @Override
+    public void after(Match match, Result result) {
+        add(result);
+    }
+
+    @Override
+    public void syntaxError(String state, String event, List<String> legalEvents, String uri, Integer line) {
+    }
+
+    @Override
+    public void uri(String uri) {
+    }
+
+    @Override
+    public void feature(Feature feature) {
+    }
+
+    @Override
+    public void scenarioOutline(ScenarioOutline scenarioOutline) {
+    }
+
+    @Override
+    public void examples(Examples examples) {
+    }
+
+    @Override
+    public void background(Background background) {
+    }
+
+    @Override
+    public void scenario(Scenario scenario) {
+    }
+
+    @Override
+    public void step(Step step) {
+    }
+
+    @Override
+    public void done() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public void eof() {
+    }
+
+    @Override
+    public void match(Match match) {
+    }
+
+    @Override
+    public void embedding(String mimeType, byte[] data) {
+    }
+
+    @Override
+    public void write(String text) {
+    }
+}
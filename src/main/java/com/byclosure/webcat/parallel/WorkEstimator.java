@@ -0,0 +1,120 @@
+package com.byclosure.webcat.parallel;
+
+import cucumber.runtime.model.*;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Expected duration of features and scenarios, from the {@link DurationHistory} when they ran before, from their
+ * number of steps otherwise.
+ * <p>
+ * Steps are valued at the average step duration of the features of the run that have a history, so new and known
+ * work compare on the same scale.
+ * </p>
+ */
+public class WorkEstimator {
+    // only used when nothing of the run has a history, where just the relative sizes matter
+    private static final long DEFAULT_STEP_NANOS = 100000000L;
+
+    private final DurationHistory history;
+    private final Map<CucumberFeature, Integer> featureSteps = new IdentityHashMap<CucumberFeature, Integer>();
+    private final long stepNanos;
+
+    public WorkEstimator(DurationHistory history, List<CucumberFeature> features) {
+        this.history = history;
+
+        long knownNanos = 0;
+        long knownSteps = 0;
+        for (CucumberFeature feature : features) {
+            final Long duration = history.get(key(feature));
+            if (duration != null) {
+                knownNanos += duration;
+                knownSteps += steps(feature);
+            }
+        }
+        this.stepNanos = knownSteps > 0 ? Math.max(1, knownNanos / knownSteps) : DEFAULT_STEP_NANOS;
+    }
+
+    public static String key(CucumberFeature feature) {
+        return feature.getPath();
+    }
+
+    public static String key(CucumberFeature feature, CucumberTagStatement scenario) {
+        return feature.getPath() + ":" + scenario.getGherkinModel().getLine();
+    }
+
+    /**
+     * @return expected duration of the feature in nanoseconds
+     */
+    public long estimate(CucumberFeature feature) {
+        final Long duration = history.get(key(feature));
+        return duration != null ? duration : steps(feature) * stepNanos;
+    }
+
+    /**
+     * @return expected duration of a scenario, or outline example, of the feature in nanoseconds. Without a
+     * history of its own, a scenario takes its share of the feature duration.
+     */
+    public long estimate(CucumberFeature feature, CucumberScenario scenario) {
+        final Long duration = history.get(key(feature, scenario));
+        if (duration != null) {
+            return duration;
+        }
+
+        final Long featureDuration = history.get(key(feature));
+        final int featureSteps = steps(feature);
+        if (featureDuration != null && featureSteps > 0) {
+            return featureDuration * steps(scenario) / featureSteps;
+        }
+        return steps(scenario) * stepNanos;
+    }
+
+    /**
+     * @return expected duration of a scenario or of all the examples of an outline, in nanoseconds
+     */
+    public long estimate(CucumberFeature feature, CucumberTagStatement element) {
+        if (element instanceof CucumberScenario) {
+            return estimate(feature, (CucumberScenario) element);
+        }
+
+        long duration = 0;
+        if (element instanceof CucumberScenarioOutline) {
+            for (CucumberExamples examples : ((CucumberScenarioOutline) element).getCucumberExamplesList()) {
+                for (CucumberScenario example : examples.createExampleScenarios()) {
+                    duration += estimate(feature, example);
+                }
+            }
+        }
+        return duration;
+    }
+
+    /**
+     * @return the number of steps the feature runs, background steps and outline examples included
+     */
+    public synchronized int steps(CucumberFeature feature) {
+        Integer steps = featureSteps.get(feature);
+        if (steps == null) {
+            steps = 0;
+            for (CucumberTagStatement element : feature.getFeatureElements()) {
+                if (element instanceof CucumberScenarioOutline) {
+                    for (CucumberExamples examples : ((CucumberScenarioOutline) element).getCucumberExamplesList()) {
+                        for (CucumberScenario example : examples.createExampleScenarios()) {
+                            steps += steps(example);
+                        }
+                    }
+                } else if (element instanceof CucumberScenario) {
+                    steps += steps((CucumberScenario) element);
+                }
+            }
+            featureSteps.put(feature, steps);
+        }
+        return steps;
+    }
+
+    static int steps(CucumberScenario scenario) {
+        final CucumberBackground background = scenario.getCucumberBackground();
+        return scenario.getSteps().size() + (background == null ? 0 : background.getSteps().size());
+    }
+}
@@ -0,0 +1,82 @@
+package com.byclosure.webcat.reporter;
+
+import com.byclosure.webcat.context.ScreenshotStore;
+import com.byclosure.webcat.metrics.WebcatMetrics;
+import gherkin.deps.com.google.gson.JsonParseException;
+import gherkin.deps.com.google.gson.TypeAdapter;
+import gherkin.deps.com.google.gson.stream.JsonReader;
+import gherkin.deps.com.google.gson.stream.JsonWriter;
+import gherkin.deps.net.iharder.Base64;
+
+import java.io.IOException;
+
+/**
+ * Reference to a screenshot or embedding of the {@link ScreenshotStore} kept in the step maps.
+ * <p>
+ * Inline attachments are only read from disk, and Base64 encoded, when the report is written. Otherwise the
+ * report only holds {@code {"id": ...}} and the attachment is uploaded on its own.
+ * </p>
+ */
+class Attachment {
+    final String id;
+
+    Attachment(String id) {
+        this.id = id;
+    }
+
+    static class Adapter extends TypeAdapter<Attachment> {
+        private final ScreenshotStore store;
+        private final boolean inline;
+        private final WebcatMetrics metrics;
+
+        Adapter(ScreenshotStore store, boolean inline, WebcatMetrics metrics) {
+            this.store = store;
+            this.inline = inline;
+            this.metrics = metrics;
+        }
+
+        @Override
+        public void write(JsonWriter out, Attachment attachment) throws IOException {
+            if (inline) {
+                final byte[] data = store.get(attachment.id);
+                final long start = System.nanoTime();
+                final String encoded = Base64.encodeBytes(data);
+                metrics.encoding(System.nanoTime() - start);
+                out.value(encoded);
+            } else {
+                out.beginObject();
+                out.name("id").value(attachment.id);
+                out.endObject();
+            }
+        }
+
+        /**
+         * Reads an inline attachment into the store, or the id of an attachment uploaded on its own.
+         */
+        @Override
+        public Attachment read(JsonReader in) throws IOException {
+            switch (in.peek()) {
+                case NULL:
+                    in.nextNull();
+                    return null;
+                case STRING:
+                    return new Attachment(store.put(Base64.decode(in.nextString())));
+                default:
+                    String id = null;
+                    in.beginObject();
+                    while (in.hasNext()) {
+                        if ("id".equals(in.nextName())) {
+                            id = in.nextString();
+                        } else {
+                            in.skipValue();
+                        }
+                    }
+                    in.endObject();
+                    if (id == null) {
+                        throw new JsonParseException("Attachment without an id at " + in);
+                    }
+                    return new Attachment(id);
+            }
+        }
+    }
+}
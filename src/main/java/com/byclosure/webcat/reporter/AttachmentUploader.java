@@ -0,0 +1,117 @@
+package com.byclosure.webcat.reporter;
+
+import com.byclosure.webcat.EnvironmentConfig;
+import com.byclosure.webcat.context.ScreenshotStore;
+import com.byclosure.webcat.helpers.LoggerHelper;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.FileEntity;
+
+import java.io.File;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Uploads attachments as binary bodies, next to the report, as soon as they are taken. Attachments are
+ * content addressed, each one is uploaded once per run.
+ * <p>
+ * The body is the attachment alone, so the project, its token and the commit, which a report carries in its
+ * environment, are sent as query parameters named after the same variables. They are part of the url an
+ * attachment is kept in the outbox with.
+ * </p>
+ */
+class AttachmentUploader {
+    private final static Logger logger = LoggerHelper.getLogger(AttachmentUploader.class.getName());
+
+    private static final int THREADS = 2;
+    private static final long AWAIT_TIMEOUT_MINUTES = 5;
+    private static final EnvironmentConfig.Config[] IDENTITY = {
+            EnvironmentConfig.Config.PROJECT, EnvironmentConfig.Config.PROJECT_TOKEN, EnvironmentConfig.Config.COMMIT_ID};
+
+    private final String url;
+    private final String query;
+    private final ScreenshotStore store;
+    private final WebcatClient client;
+    private final Outbox outbox;
+    private final Set<String> uploaded = Collections.synchronizedSet(new HashSet<String>());
+    private final ExecutorService uploader = Executors.newFixedThreadPool(THREADS, new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            final Thread thread = new Thread(runnable, "webcat-attachments-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    AttachmentUploader(String url, Map<EnvironmentConfig.Config, String> environment, ScreenshotStore store,
+                       WebcatClient client, Outbox outbox) {
+        this.url = url;
+        this.query = query(environment);
+        this.store = store;
+        this.client = client;
+        this.outbox = outbox;
+    }
+
+    void upload(final String id) {
+        if (!uploaded.add(id)) {
+            return;
+        }
+
+        uploader.execute(new Runnable() {
+            @Override
+            public void run() {
+                final String attachmentUrl = url + "/" + id + query;
+                final File attachment = store.file(id);
+                if (client.post(attachmentUrl, new FileEntity(attachment, ContentType.APPLICATION_OCTET_STREAM)) ==
+                        WebcatClient.Outcome.RETRY) {
+                    outbox.addAttachment(attachmentUrl, attachment);
+                }
+            }
+        });
+    }
+
+    private static String query(Map<EnvironmentConfig.Config, String> environment) {
+        final StringBuilder query = new StringBuilder();
+        for (EnvironmentConfig.Config config : IDENTITY) {
+            final String value = environment.get(config);
+            if (value != null) {
+                query.append(query.length() == 0 ? '?' : '&').append(config.getVar()).append('=').append(encode(value));
+            }
+        }
+        return query.toString();
+    }
+
+    private static String encode(String value) {
+        try {
+            return URLEncoder.encode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Waits for every attachment taken during the run to be uploaded.
+     */
+    void awaitUploads() {
+        uploader.shutdown();
+        try {
+            if (!uploader.awaitTermination(AWAIT_TIMEOUT_MINUTES, TimeUnit.MINUTES)) {
+                logger.log(Level.SEVERE, "Timed out uploading attachments to Webcat");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
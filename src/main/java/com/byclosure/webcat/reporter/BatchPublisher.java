@@ -0,0 +1,172 @@
+package com.byclosure.webcat.reporter;
+
+import com.byclosure.webcat.EnvironmentConfig;
+import com.byclosure.webcat.helpers.LoggerHelper;
+import com.byclosure.webcat.parallel.Shard;
+import cucumber.runtime.CucumberException;
+import gherkin.deps.com.google.gson.Gson;
+import gherkin.deps.com.google.gson.stream.JsonWriter;
+import org.apache.http.entity.ByteArrayEntity;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Publishes the report in batches while the run is going on, so that the upload is spread over the run and
+ * an aborted run still leaves its finished features on the server.
+ * <p>
+ * Every message carries the run id and a sequence number. Batches hold up to {@code batchSize} features, the
+ * last message is flagged {@code complete} and carries the step definitions and their usage.
+ * </p>
+ */
+class BatchPublisher {
+    private final static Logger logger = LoggerHelper.getLogger(BatchPublisher.class.getName());
+
+    private static final long COMPLETE_TIMEOUT_MINUTES = 5;
+
+    private final String url;
+    private final int batchSize;
+    private final boolean compressed;
+    private final ReportCodec codec;
+    private final Gson gson;
+    private final WebcatClient client;
+    private final Outbox outbox;
+    private final Map<EnvironmentConfig.Config, String> environment;
+    private final Shard shard;
+    private final String runId = UUID.randomUUID().toString();
+    private final ExecutorService sender = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            final Thread thread = new Thread(runnable, "webcat-publisher");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private int sequence = 0;
+    private ByteArrayOutputStream batch;
+    private JsonWriter json;
+    private int batchFeatures = 0;
+
+    BatchPublisher(String url, int batchSize, boolean compressed, ReportCodec codec, Gson gson, WebcatClient client,
+                   Outbox outbox, Map<EnvironmentConfig.Config, String> environment, Shard shard) {
+        this.url = url;
+        this.batchSize = batchSize;
+        this.compressed = compressed;
+        this.codec = codec;
+        this.gson = gson;
+        this.client = client;
+        this.outbox = outbox;
+        this.environment = environment;
+        this.shard = shard;
+    }
+
+    String getRunId() {
+        return runId;
+    }
+
+    void addFeature(ReportModel.FeatureNode feature) {
+        try {
+            if (json == null) {
+                startMessage(false);
+                json.name("features");
+                json.beginArray();
+            }
+
+            FeatureSpill.writeFeature(gson, feature, json);
+            batchFeatures++;
+
+            if (batchFeatures >= batchSize) {
+                flush();
+            }
+        } catch (IOException e) {
+            throw new CucumberException("Could not write feature to the Webcat batch", e);
+        }
+    }
+
+    /**
+     * Sends the remaining features and the final message, and waits for every message to be sent.
+     */
+    void complete(List<WebcatReporter.StepDefinitionContainer> stepDefinitions,
+                  Collection<StepDefinitionUsage.Entry> stepDefinitionUsage) {
+        try {
+            flush();
+
+            startMessage(true);
+            json.name("stepDefinitions");
+            gson.toJson(stepDefinitions, List.class, json);
+            json.name("stepDefinitionUsage");
+            gson.toJson(stepDefinitionUsage, Collection.class, json);
+            send();
+        } catch (IOException e) {
+            throw new CucumberException("Could not write the final Webcat batch", e);
+        }
+
+        sender.shutdown();
+        try {
+            if (!sender.awaitTermination(COMPLETE_TIMEOUT_MINUTES, TimeUnit.MINUTES)) {
+                logger.log(Level.SEVERE, "Timed out sending the results of run " + runId + " to Webcat");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void startMessage(boolean complete) throws IOException {
+        // the batch is serialized straight into its, possibly compressed, request body
+        batch = new ByteArrayOutputStream();
+        final OutputStream body = compressed ? new GZIPOutputStream(batch, WebcatClient.BUFFER_SIZE) : batch;
+        json = codec.newWriter(body);
+        json.beginObject();
+        json.name("runId").value(runId);
+        json.name("sequence").value(sequence++);
+        json.name("complete").value(complete);
+        json.name("environment");
+        gson.toJson(environment, Map.class, json);
+        ReportWriter.writeShard(json, shard);
+    }
+
+    private void flush() throws IOException {
+        if (json != null) {
+            json.endArray();
+            send();
+        }
+    }
+
+    private void send() throws IOException {
+        json.endObject();
+        json.close();
+
+        final byte[] body = batch.toByteArray();
+        final ByteArrayEntity message = new ByteArrayEntity(body, ReportCodecs.contentType(codec));
+        if (compressed) {
+            message.setContentEncoding(WebcatClient.GZIP);
+        }
+        final int messageSequence = sequence - 1;
+        json = null;
+        batch = null;
+        batchFeatures = 0;
+
+        sender.execute(new Runnable() {
+            @Override
+            public void run() {
+                logger.log(Level.FINE, "Sending batch " + messageSequence + " of run " + runId + " to " + url);
+                if (client.post(url, message) == WebcatClient.Outcome.RETRY) {
+                    outbox.add(url, body, compressed, codec.isBinary());
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,533 @@
+package com.byclosure.webcat.reporter;
+
+import gherkin.deps.com.google.gson.JsonElement;
+import gherkin.deps.com.google.gson.JsonIOException;
+import gherkin.deps.com.google.gson.JsonParser;
+import gherkin.deps.com.google.gson.stream.JsonReader;
+import gherkin.deps.com.google.gson.stream.JsonToken;
+import gherkin.deps.com.google.gson.stream.JsonWriter;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The report as a compact binary encoding of its JSON.
+ * <p>
+ * Every value starts with a tag byte. Integers are zig-zag varints, doubles their 8 IEEE 754 bytes and strings a
+ * varint length followed by their UTF-8 bytes. Names and short strings are added to a table the first time they
+ * are written and referred to by their index in the table afterwards, so the keys, keywords, statuses and
+ * locations that make up most of a report take one or two bytes each.
+ * </p>
+ */
+class BinaryReportCodec implements ReportCodec {
+    private static final byte[] MAGIC = {'W', 'C', 'R', 1};
+
+    private static final int BEGIN_OBJECT = 1;
+    private static final int END_OBJECT = 2;
+    private static final int BEGIN_ARRAY = 3;
+    private static final int END_ARRAY = 4;
+    private static final int NULL = 5;
+    private static final int TRUE = 6;
+    private static final int FALSE = 7;
+    private static final int LONG = 8;
+    private static final int DOUBLE = 9;
+    private static final int STRING = 10;
+    private static final int STRING_REF = 11;
+    private static final int NAME = 12;
+    private static final int NAME_REF = 13;
+
+    // longer strings, e.g. attachments and error messages, rarely repeat and are always written in full
+    private static final int MAX_SHARED_LENGTH = 256;
+    private static final int MAX_SHARED_STRINGS = 1 << 16;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    @Override
+    public String getName() {
+        return "binary";
+    }
+
+    @Override
+    public boolean isBinary() {
+        return true;
+    }
+
+    @Override
+    public String getExtension() {
+        return ".wcr";
+    }
+
+    @Override
+    public JsonWriter newWriter(OutputStream out) throws IOException {
+        return new Encoder(new BufferedOutputStream(out, BUFFER_SIZE));
+    }
+
+    @Override
+    public JsonReader newReader(InputStream in) {
+        return new Decoder(new BufferedInputStream(in, BUFFER_SIZE));
+    }
+
+    @Override
+    public JsonElement read(InputStream in) throws IOException {
+        try {
+            return new JsonParser().parse(newReader(in));
+        } catch (JsonIOException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private static boolean isShared(String string, int tableSize) {
+        return string.length() <= MAX_SHARED_LENGTH && tableSize < MAX_SHARED_STRINGS;
+    }
+
+    /**
+     * Encodes what gson writes instead of printing it. Like the JSON writer, it drops the names of null values
+     * unless nulls are serialized.
+     */
+    private static class Encoder extends JsonWriter {
+        // every method writing to it is overridden
+        private static final Writer UNUSED = new StringWriter(0);
+
+        private final OutputStream out;
+        private final Map<String, Integer> strings = new HashMap<String, Integer>();
+        private String deferredName;
+
+        Encoder(OutputStream out) throws IOException {
+            super(UNUSED);
+            this.out = out;
+            out.write(MAGIC);
+        }
+
+        @Override
+        public JsonWriter beginArray() throws IOException {
+            writeDeferredName();
+            out.write(BEGIN_ARRAY);
+            return this;
+        }
+
+        @Override
+        public JsonWriter endArray() throws IOException {
+            out.write(END_ARRAY);
+            return this;
+        }
+
+        @Override
+        public JsonWriter beginObject() throws IOException {
+            writeDeferredName();
+            out.write(BEGIN_OBJECT);
+            return this;
+        }
+
+        @Override
+        public JsonWriter endObject() throws IOException {
+            out.write(END_OBJECT);
+            return this;
+        }
+
+        @Override
+        public JsonWriter name(String name) throws IOException {
+            if (name == null) {
+                throw new NullPointerException("name == null");
+            }
+            if (deferredName != null) {
+                throw new IllegalStateException("Name " + name + " follows name " + deferredName);
+            }
+            deferredName = name;
+            return this;
+        }
+
+        @Override
+        public JsonWriter value(String value) throws IOException {
+            if (value == null) {
+                return nullValue();
+            }
+            writeDeferredName();
+            writeString(value, STRING, STRING_REF);
+            return this;
+        }
+
+        @Override
+        public JsonWriter nullValue() throws IOException {
+            if (deferredName != null && !getSerializeNulls()) {
+                deferredName = null;
+                return this;
+            }
+            writeDeferredName();
+            out.write(NULL);
+            return this;
+        }
+
+        @Override
+        public JsonWriter value(boolean value) throws IOException {
+            writeDeferredName();
+            out.write(value ? TRUE : FALSE);
+            return this;
+        }
+
+        @Override
+        public JsonWriter value(double value) throws IOException {
+            if (!isLenient() && (Double.isNaN(value) || Double.isInfinite(value))) {
+                throw new IllegalArgumentException("Numeric values must be finite, but was " + value);
+            }
+            writeDeferredName();
+            out.write(DOUBLE);
+            final long bits = Double.doubleToLongBits(value);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                out.write((int) (bits >>> shift));
+            }
+            return this;
+        }
+
+        @Override
+        public JsonWriter value(long value) throws IOException {
+            writeDeferredName();
+            out.write(LONG);
+            writeVarLong((value << 1) ^ (value >> 63));
+            return this;
+        }
+
+        @Override
+        public JsonWriter value(Number value) throws IOException {
+            if (value == null) {
+                return nullValue();
+            }
+            if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+                return value(value.longValue());
+            }
+            if (value instanceof Double || value instanceof Float) {
+                return value(value.doubleValue());
+            }
+
+            // numbers parsed from JSON, big integers and decimals
+            final String string = value.toString();
+            try {
+                return value(Long.parseLong(string));
+            } catch (NumberFormatException e) {
+                return value(Double.parseDouble(string));
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+
+        private void writeDeferredName() throws IOException {
+            if (deferredName != null) {
+                writeString(deferredName, NAME, NAME_REF);
+                deferredName = null;
+            }
+        }
+
+        private void writeString(String string, int tag, int refTag) throws IOException {
+            final Integer index = strings.get(string);
+            if (index != null) {
+                out.write(refTag);
+                writeVarLong(index);
+                return;
+            }
+
+            if (isShared(string, strings.size())) {
+                strings.put(string, strings.size());
+            }
+            final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            out.write(tag);
+            writeVarLong(bytes.length);
+            out.write(bytes);
+        }
+
+        private void writeVarLong(long value) throws IOException {
+            while ((value & ~0x7FL) != 0) {
+                out.write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            out.write((int) value);
+        }
+    }
+
+    /**
+     * Reads the values one at a time, like the JSON reader, so reports are streamed rather than loaded whole.
+     */
+    private static class Decoder extends JsonReader {
+        // every method reading from it is overridden
+        private static final Reader UNUSED = new StringReader("");
+
+        private final InputStream in;
+        private final List<String> strings = new ArrayList<String>();
+        private boolean started = false;
+        private int depth = 0;
+        private int peeked = -1;
+
+        Decoder(InputStream in) {
+            super(UNUSED);
+            this.in = in;
+        }
+
+        @Override
+        public JsonToken peek() throws IOException {
+            if (peeked < 0) {
+                if (started && depth == 0) {
+                    return JsonToken.END_DOCUMENT;
+                }
+                if (!started) {
+                    readMagic();
+                }
+                peeked = readByte();
+            }
+
+            switch (peeked) {
+                case BEGIN_OBJECT:
+                    return JsonToken.BEGIN_OBJECT;
+                case END_OBJECT:
+                    return JsonToken.END_OBJECT;
+                case BEGIN_ARRAY:
+                    return JsonToken.BEGIN_ARRAY;
+                case END_ARRAY:
+                    return JsonToken.END_ARRAY;
+                case NULL:
+                    return JsonToken.NULL;
+                case TRUE:
+                case FALSE:
+                    return JsonToken.BOOLEAN;
+                case LONG:
+                case DOUBLE:
+                    return JsonToken.NUMBER;
+                case STRING:
+                case STRING_REF:
+                    return JsonToken.STRING;
+                case NAME:
+                case NAME_REF:
+                    return JsonToken.NAME;
+                default:
+                    throw new IOException("Unexpected tag " + peeked + " in the binary Webcat report");
+            }
+        }
+
+        @Override
+        public void beginArray() throws IOException {
+            expect(JsonToken.BEGIN_ARRAY);
+            depth++;
+        }
+
+        @Override
+        public void endArray() throws IOException {
+            expect(JsonToken.END_ARRAY);
+            depth--;
+        }
+
+        @Override
+        public void beginObject() throws IOException {
+            expect(JsonToken.BEGIN_OBJECT);
+            depth++;
+        }
+
+        @Override
+        public void endObject() throws IOException {
+            expect(JsonToken.END_OBJECT);
+            depth--;
+        }
+
+        @Override
+        public boolean hasNext() throws IOException {
+            final JsonToken token = peek();
+            return token != JsonToken.END_OBJECT && token != JsonToken.END_ARRAY && token != JsonToken.END_DOCUMENT;
+        }
+
+        @Override
+        public String nextName() throws IOException {
+            final int tag = peeked;
+            expect(JsonToken.NAME);
+            return readString(tag, NAME, NAME_REF);
+        }
+
+        @Override
+        public String nextString() throws IOException {
+            final JsonToken token = peek();
+            if (token == JsonToken.NUMBER) {
+                return peeked == LONG ? Long.toString(nextLong()) : Double.toString(nextDouble());
+            }
+            final int tag = peeked;
+            expect(JsonToken.STRING);
+            return readString(tag, STRING, STRING_REF);
+        }
+
+        @Override
+        public boolean nextBoolean() throws IOException {
+            final boolean value = peek() == JsonToken.BOOLEAN && peeked == TRUE;
+            expect(JsonToken.BOOLEAN);
+            return value;
+        }
+
+        @Override
+        public void nextNull() throws IOException {
+            expect(JsonToken.NULL);
+        }
+
+        @Override
+        public double nextDouble() throws IOException {
+            if (peek() == JsonToken.STRING) {
+                return Double.parseDouble(nextString());
+            }
+            if (peeked == LONG) {
+                return nextLong();
+            }
+            expect(JsonToken.NUMBER);
+            long bits = 0;
+            for (int i = 0; i < 8; i++) {
+                bits = (bits << 8) | readByte();
+            }
+            return Double.longBitsToDouble(bits);
+        }
+
+        @Override
+        public long nextLong() throws IOException {
+            if (peek() == JsonToken.STRING) {
+                return Long.parseLong(nextString());
+            }
+            if (peeked == DOUBLE) {
+                final double value = nextDouble();
+                if (value != (long) value) {
+                    throw new NumberFormatException("Expected a long but was " + value);
+                }
+                return (long) value;
+            }
+            expect(JsonToken.NUMBER);
+            final long zigZag = readVarLong();
+            return (zigZag >>> 1) ^ -(zigZag & 1);
+        }
+
+        @Override
+        public int nextInt() throws IOException {
+            final long value = nextLong();
+            if (value != (int) value) {
+                throw new NumberFormatException("Expected an int but was " + value);
+            }
+            return (int) value;
+        }
+
+        @Override
+        public void skipValue() throws IOException {
+            int level = 0;
+            do {
+                switch (peek()) {
+                    case BEGIN_OBJECT:
+                        beginObject();
+                        level++;
+                        break;
+                    case BEGIN_ARRAY:
+                        beginArray();
+                        level++;
+                        break;
+                    case END_OBJECT:
+                        endObject();
+                        level--;
+                        break;
+                    case END_ARRAY:
+                        endArray();
+                        level--;
+                        break;
+                    case NAME:
+                        nextName();
+                        break;
+                    case BOOLEAN:
+                        nextBoolean();
+                        break;
+                    case NULL:
+                        nextNull();
+                        break;
+                    case END_DOCUMENT:
+                        throw new EOFException("Truncated binary Webcat report");
+                    default:
+                        // numbers are read as strings too
+                        nextString();
+                }
+            } while (level > 0);
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        @Override
+        public String toString() {
+            return getClass().getSimpleName();
+        }
+
+        private void readMagic() throws IOException {
+            for (byte expected : MAGIC) {
+                if (readByte() != (expected & 0xFF)) {
+                    throw new IOException("Not a binary Webcat report");
+                }
+            }
+            started = true;
+        }
+
+        private void expect(JsonToken expected) throws IOException {
+            final JsonToken token = peek();
+            if (token != expected) {
+                throw new IllegalStateException("Expected " + expected + " but was " + token + " in the binary Webcat report");
+            }
+            peeked = -1;
+        }
+
+        private String readString(int tag, int stringTag, int refTag) throws IOException {
+            if (tag == refTag) {
+                final long index = readVarLong();
+                if (index >= strings.size()) {
+                    throw new IOException("Unknown string " + index + " in the binary Webcat report");
+                }
+                return strings.get((int) index);
+            }
+            if (tag != stringTag) {
+                throw new IOException("Unexpected tag " + tag + " in the binary Webcat report");
+            }
+
+            final byte[] bytes = new byte[(int) readVarLong()];
+            for (int read = 0; read < bytes.length; ) {
+                final int count = in.read(bytes, read, bytes.length - read);
+                if (count < 0) {
+                    throw new EOFException("Truncated binary Webcat report");
+                }
+                read += count;
+            }
+            final String string = new String(bytes, StandardCharsets.UTF_8);
+            if (isShared(string, strings.size())) {
+                strings.add(string);
+            }
+            return string;
+        }
+
+        private long readVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                final int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed varint in the binary Webcat report");
+        }
+
+        private int readByte() throws IOException {
+            final int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Truncated binary Webcat report");
+            }
+            return b;
+        }
+    }
+}
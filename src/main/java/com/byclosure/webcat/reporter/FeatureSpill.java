@@ -0,0 +1,115 @@
+package com.byclosure.webcat.reporter;
+
+import cucumber.runtime.CucumberException;
+import gherkin.deps.com.google.gson.Gson;
+import gherkin.deps.com.google.gson.JsonElement;
+import gherkin.deps.com.google.gson.JsonObject;
+import gherkin.deps.com.google.gson.JsonParser;
+import gherkin.deps.com.google.gson.stream.JsonReader;
+import gherkin.deps.com.google.gson.stream.JsonWriter;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The finished elements of a feature that were written to a temporary file to keep the reporter within its heap
+ * budget. They are streamed back, one element at a time, when the feature is written.
+ */
+class FeatureSpill {
+    private final Gson gson;
+    private final File file;
+    private final JsonWriter json;
+    private boolean closed = false;
+
+    FeatureSpill(Gson gson) {
+        this.gson = gson;
+        try {
+            this.file = File.createTempFile("webcat-spill", ".json");
+            this.file.deleteOnExit();
+            this.json = new JsonWriter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)));
+            this.json.beginArray();
+        } catch (IOException e) {
+            throw new CucumberException("Could not create the Webcat spill file", e);
+        }
+    }
+
+    void add(ReportModel.ElementNode element) {
+        try {
+            gson.toJson(element, ReportModel.ElementNode.class, json);
+        } catch (Exception e) {
+            throw new CucumberException("Could not spill feature element to " + file, e);
+        }
+    }
+
+    /**
+     * Writes the feature with its spilled elements first, followed by the ones still in memory.
+     */
+    static void writeFeature(Gson gson, ReportModel.FeatureNode feature, JsonWriter out) throws IOException {
+        if (feature.spill == null) {
+            gson.toJson(feature, ReportModel.FeatureNode.class, out);
+            return;
+        }
+
+        final List<ReportModel.ElementNode> elements = feature.elements;
+        final JsonObject header;
+        feature.elements = null;
+        try {
+            header = gson.toJsonTree(feature, ReportModel.FeatureNode.class).getAsJsonObject();
+        } finally {
+            feature.elements = elements;
+        }
+
+        out.beginObject();
+        for (Map.Entry<String, JsonElement> field : header.entrySet()) {
+            out.name(field.getKey());
+            gson.toJson(field.getValue(), out);
+        }
+        out.name("elements");
+        out.beginArray();
+        feature.spill.copyTo(out);
+        if (elements != null) {
+            for (ReportModel.ElementNode element : elements) {
+                gson.toJson(element, ReportModel.ElementNode.class, out);
+            }
+        }
+        out.endArray();
+        out.endObject();
+    }
+
+    private void copyTo(JsonWriter out) throws IOException {
+        close();
+
+        final JsonReader reader = new JsonReader(new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)));
+        try {
+            reader.beginArray();
+            final JsonParser parser = new JsonParser();
+            while (reader.hasNext()) {
+                gson.toJson(parser.parse(reader), out);
+            }
+            reader.endArray();
+        } finally {
+            reader.close();
+        }
+    }
+
+    private void close() throws IOException {
+        if (!closed) {
+            json.endArray();
+            json.close();
+            closed = true;
+        }
+    }
+
+    void delete() {
+        try {
+            close();
+        } catch (IOException e) {
+            // the file is deleted anyway
+        }
+        if (!file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+}
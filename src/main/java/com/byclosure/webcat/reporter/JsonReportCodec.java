@@ -0,0 +1,58 @@
+package com.byclosure.webcat.reporter;
+
+import gherkin.deps.com.google.gson.JsonElement;
+import gherkin.deps.com.google.gson.JsonParser;
+import gherkin.deps.com.google.gson.stream.JsonReader;
+import gherkin.deps.com.google.gson.stream.JsonWriter;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The report as JSON, indented or on a single line.
+ */
+class JsonReportCodec implements ReportCodec {
+    private final String name;
+    private final String indent;
+
+    JsonReportCodec(String name, String indent) {
+        this.name = name;
+        this.indent = indent;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public boolean isBinary() {
+        return false;
+    }
+
+    @Override
+    public String getExtension() {
+        return ".json";
+    }
+
+    @Override
+    public JsonWriter newWriter(OutputStream out) {
+        return newWriter(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)));
+    }
+
+    JsonWriter newWriter(Writer out) {
+        final JsonWriter json = new JsonWriter(out);
+        json.setIndent(indent);
+        return json;
+    }
+
+    @Override
+    public JsonReader newReader(InputStream in) {
+        return new JsonReader(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)));
+    }
+
+    @Override
+    public JsonElement read(InputStream in) {
+        return new JsonParser().parse(newReader(in));
+    }
+}
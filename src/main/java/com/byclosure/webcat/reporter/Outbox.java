@@ -0,0 +1,453 @@
+package com.byclosure.webcat.reporter;
+
+import com.byclosure.webcat.EnvironmentConfig;
+import com.byclosure.webcat.helpers.LoggerHelper;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+import org.junit.runners.model.InitializationError;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps the reports that could not be sent to Webcat so they can be sent again by a later run, or with
+ * {@link #main(String[])}.
+ * <p>
+ * Reports are appended to segment files in the outbox directory. Each record holds the url, the report and a
+ * CRC32 checksum, so a record torn by a killed JVM is detected and dropped instead of being sent.
+ * </p>
+ * <p>
+ * A run holds a lock on the segment it writes until the segment is full or the outbox is closed, and replays only
+ * the segments it can lock itself, so the segment of a run still going on is never taken for a leftover.
+ * </p>
+ */
+public class Outbox {
+    private final static Logger logger = LoggerHelper.getLogger(Outbox.class.getName());
+
+    private static final int MAGIC = 0x57434154;
+    private static final byte FLAG_GZIP = 1;
+    private static final byte FLAG_BINARY = 2;
+    private static final long SEGMENT_SIZE = 64L * 1024 * 1024;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final File directory;
+    private final Set<File> ownSegments = new HashSet<File>();
+    private File segment;
+    private FileChannel segmentChannel;
+    private FileLock segmentLock;
+
+    Outbox(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Sends the reports kept by previous runs.
+     */
+    public static void main(String[] args) throws InitializationError {
+        final EnvironmentConfig config = new EnvironmentConfig();
+        final Outbox outbox = new Outbox(args.length > 0 ? new File(args[0]) : config.getOutboxDirectory());
+        final WebcatClient client = new WebcatClient(config.getConnectTimeout(), config.getSocketTimeout(), config.getRetries());
+
+        try {
+            final int sent = outbox.replay(client);
+            logger.log(Level.INFO, "Sent " + sent + " reports from " + outbox.directory);
+        } finally {
+            outbox.close();
+            client.close();
+        }
+    }
+
+    synchronized void add(String url, File report, boolean gzip, boolean binary) {
+        add(url, report, flags(gzip, binary));
+    }
+
+    synchronized void addAttachment(String url, File attachment) {
+        add(url, attachment, FLAG_BINARY);
+    }
+
+    private void add(String url, File report, byte flags) {
+        try {
+            final FileInputStream input = new FileInputStream(report);
+            try {
+                append(url, flags, input.getChannel(), report.length());
+            } finally {
+                input.close();
+            }
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Could not keep the report in the outbox: " + e.getMessage());
+        }
+    }
+
+    synchronized void add(String url, byte[] report, boolean gzip, boolean binary) {
+        try {
+            append(url, flags(gzip, binary), Channels.newChannel(new ByteArrayInputStream(report)), report.length);
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Could not keep the report in the outbox: " + e.getMessage());
+        }
+    }
+
+    private static byte flags(boolean gzip, boolean binary) {
+        return (byte) ((gzip ? FLAG_GZIP : 0) | (binary ? FLAG_BINARY : 0));
+    }
+
+    /**
+     * Releases the segment this outbox writes, so later runs can replay it.
+     */
+    synchronized void close() {
+        closeSegment();
+    }
+
+    /**
+     * Sends the reports of the segments left by previous runs, skipping the segments other runs are still writing.
+     * Segments are deleted once replayed to the end, the reports that still could not be sent are kept in a new
+     * segment.
+     *
+     * @return the number of reports sent
+     */
+    int replay(WebcatClient client) {
+        int sent = 0;
+
+        for (File previous : previousSegments()) {
+            try {
+                final RandomAccessFile file = new RandomAccessFile(previous, "rw");
+                try {
+                    final FileLock lock = tryLock(file.getChannel());
+                    if (lock == null) {
+                        logger.log(Level.FINE, "Skipping outbox segment " + previous + ", another run is writing it");
+                        continue;
+                    }
+                    sent += replaySegment(previous, file.getChannel(), client);
+                    // emptied while locked, so a run that opens it before it is deleted has nothing to send again
+                    file.getChannel().truncate(0);
+                } finally {
+                    file.close();
+                }
+                if (!previous.delete() && previous.exists()) {
+                    logger.log(Level.WARNING, "Could not delete outbox segment " + previous);
+                }
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "Could not replay outbox segment " + previous + ": " + e.getMessage());
+            }
+        }
+
+        return sent;
+    }
+
+    /**
+     * @return the lock, null if another run, or another outbox of this one, holds it
+     */
+    private static FileLock tryLock(FileChannel channel) throws IOException {
+        try {
+            return channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            return null;
+        }
+    }
+
+    private synchronized List<File> previousSegments() {
+        final File[] files = directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+            }
+        });
+
+        final List<File> segments = new ArrayList<File>();
+        if (files != null) {
+            for (File file : files) {
+                if (!ownSegments.contains(file)) {
+                    segments.add(file);
+                }
+            }
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+
+    private int replaySegment(File file, FileChannel channel, WebcatClient client) throws IOException {
+        int sent = 0;
+        Record record;
+        while ((record = Record.read(channel)) != null) {
+            if (!record.isValid(channel)) {
+                logger.log(Level.WARNING, "Dropping corrupted record at " + record.payloadOffset + " of " + file);
+                break;
+            }
+
+            final WebcatClient.Outcome outcome = client.post(record.url, record.entity(channel));
+            if (outcome == WebcatClient.Outcome.ACCEPTED) {
+                sent++;
+            } else if (outcome == WebcatClient.Outcome.RETRY) {
+                synchronized (this) {
+                    append(record.url, record.flags, record.payload(channel), record.payloadLength);
+                }
+            }
+        }
+        return sent;
+    }
+
+    private void append(String url, byte flags, ReadableByteChannel payload, long length) throws IOException {
+        final FileChannel channel = currentSegment();
+        final long start = channel.size();
+        channel.position(start);
+
+        try {
+            final byte[] urlBytes = url.getBytes(StandardCharsets.UTF_8);
+            final CRC32 crc = new CRC32();
+            crc.update(flags);
+            crc.update(urlBytes);
+
+            final ByteBuffer header = ByteBuffer.allocate(4 + 1 + 4 + urlBytes.length + 8);
+            header.putInt(MAGIC).put(flags).putInt(urlBytes.length).put(urlBytes).putLong(length);
+            header.flip();
+            writeFully(channel, header);
+
+            final ByteBuffer buffer = ByteBuffer.allocate(WebcatClient.BUFFER_SIZE);
+            long remaining = length;
+            while (remaining > 0) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), remaining));
+                final int read = payload.read(buffer);
+                if (read < 0) {
+                    throw new EOFException("Report is shorter than " + length + " bytes");
+                }
+                crc.update(buffer.array(), 0, read);
+                buffer.flip();
+                writeFully(channel, buffer);
+                remaining -= read;
+            }
+
+            final ByteBuffer trailer = ByteBuffer.allocate(8);
+            trailer.putLong(crc.getValue());
+            trailer.flip();
+            writeFully(channel, trailer);
+            channel.force(false);
+        } catch (IOException e) {
+            // a torn record would hide the records appended after it
+            channel.truncate(start);
+            throw e;
+        }
+    }
+
+    /**
+     * @return the channel of the segment this outbox writes, locked, a new segment once the current one is full
+     */
+    private FileChannel currentSegment() throws IOException {
+        if (segmentChannel != null && segmentChannel.size() < SEGMENT_SIZE) {
+            return segmentChannel;
+        }
+        closeSegment();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create outbox directory " + directory);
+        }
+
+        while (true) {
+            final File file = File.createTempFile(String.format("%s%013d-", SEGMENT_PREFIX, System.currentTimeMillis()),
+                    SEGMENT_SUFFIX, directory);
+            final RandomAccessFile output = new RandomAccessFile(file, "rw");
+            final FileLock lock = tryLock(output.getChannel());
+            // a replaying run may have taken the empty segment before it was locked
+            if (lock != null && file.exists()) {
+                segment = file;
+                segmentChannel = output.getChannel();
+                segmentLock = lock;
+                ownSegments.add(file);
+                return segmentChannel;
+            }
+            output.close();
+        }
+    }
+
+    private void closeSegment() {
+        if (segmentChannel == null) {
+            return;
+        }
+        try {
+            segmentLock.release();
+            segmentChannel.close();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not close outbox segment " + segment + ": " + e.getMessage());
+        }
+        segmentChannel = null;
+        segmentLock = null;
+    }
+
+    private static void writeFully(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        buffer.flip();
+    }
+
+    /**
+     * A report or attachment kept in a segment: {@code magic, flags, url length, url, payload length, payload, crc32}.
+     */
+    private static class Record {
+        final String url;
+        final byte flags;
+        final long payloadOffset;
+        final long payloadLength;
+        final long crc;
+
+        private Record(String url, byte flags, long payloadOffset, long payloadLength, long crc) {
+            this.url = url;
+            this.flags = flags;
+            this.payloadOffset = payloadOffset;
+            this.payloadLength = payloadLength;
+            this.crc = crc;
+        }
+
+        /**
+         * Reads the record at the position of the channel and moves the channel past it.
+         *
+         * @return null at the end of the segment or if the record is incomplete
+         */
+        static Record read(FileChannel channel) throws IOException {
+            final long start = channel.position();
+            try {
+                final ByteBuffer head = ByteBuffer.allocate(4 + 1 + 4);
+                readFully(channel, head, start);
+                if (head.getInt() != MAGIC) {
+                    return null;
+                }
+                final byte flags = head.get();
+                final int urlLength = head.getInt();
+
+                final ByteBuffer urlAndLength = ByteBuffer.allocate(urlLength + 8);
+                readFully(channel, urlAndLength, start + head.capacity());
+                final byte[] urlBytes = new byte[urlLength];
+                urlAndLength.get(urlBytes);
+                final long payloadLength = urlAndLength.getLong();
+
+                final long payloadOffset = start + head.capacity() + urlAndLength.capacity();
+                final ByteBuffer trailer = ByteBuffer.allocate(8);
+                readFully(channel, trailer, payloadOffset + payloadLength);
+
+                channel.position(payloadOffset + payloadLength + 8);
+                return new Record(new String(urlBytes, StandardCharsets.UTF_8), flags, payloadOffset, payloadLength, trailer.getLong());
+            } catch (EOFException e) {
+                return null;
+            }
+        }
+
+        boolean isValid(FileChannel channel) throws IOException {
+            final CRC32 actual = new CRC32();
+            actual.update(flags);
+            actual.update(url.getBytes(StandardCharsets.UTF_8));
+
+            final ByteBuffer buffer = ByteBuffer.allocate(WebcatClient.BUFFER_SIZE);
+            long position = payloadOffset;
+            final long end = payloadOffset + payloadLength;
+            while (position < end) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), end - position));
+                final int read = channel.read(buffer, position);
+                if (read < 0) {
+                    return false;
+                }
+                actual.update(buffer.array(), 0, read);
+                position += read;
+            }
+
+            return actual.getValue() == crc;
+        }
+
+        ReadableByteChannel payload(FileChannel channel) throws IOException {
+            return Channels.newChannel(new SegmentEntity(channel, this).getContent());
+        }
+
+        AbstractHttpEntity entity(FileChannel channel) {
+            final SegmentEntity entity = new SegmentEntity(channel, this);
+            final boolean binary = (flags & FLAG_BINARY) != 0;
+            entity.setContentType((binary ? ContentType.APPLICATION_OCTET_STREAM : ContentType.APPLICATION_JSON).toString());
+            if ((flags & FLAG_GZIP) != 0) {
+                entity.setContentEncoding(WebcatClient.GZIP);
+            }
+            return entity;
+        }
+    }
+
+    /**
+     * Streams the payload of a record straight from the segment file.
+     */
+    private static class SegmentEntity extends AbstractHttpEntity {
+        private final FileChannel channel;
+        private final Record record;
+
+        SegmentEntity(FileChannel channel, Record record) {
+            this.channel = channel;
+            this.record = record;
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return true;
+        }
+
+        @Override
+        public long getContentLength() {
+            return record.payloadLength;
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            return new InputStream() {
+                private long position = record.payloadOffset;
+                private final long end = record.payloadOffset + record.payloadLength;
+
+                @Override
+                public int read() throws IOException {
+                    final byte[] single = new byte[1];
+                    return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+                }
+
+                @Override
+                public int read(byte[] bytes, int offset, int length) throws IOException {
+                    if (position >= end) {
+                        return -1;
+                    }
+                    final ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, (int) Math.min(length, end - position));
+                    final int read = channel.read(buffer, position);
+                    if (read > 0) {
+                        position += read;
+                    }
+                    return read;
+                }
+            };
+        }
+
+        @Override
+        public void writeTo(OutputStream output) throws IOException {
+            final WritableByteChannel target = Channels.newChannel(output);
+            long position = record.payloadOffset;
+            final long end = record.payloadOffset + record.payloadLength;
+            while (position < end) {
+                position += channel.transferTo(position, end - position, target);
+            }
+        }
+
+        @Override
+        public boolean isStreaming() {
+            return false;
+        }
+    }
+}
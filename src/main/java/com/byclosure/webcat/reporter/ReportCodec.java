@@ -0,0 +1,50 @@
+package com.byclosure.webcat.reporter;
+
+import gherkin.deps.com.google.gson.JsonElement;
+import gherkin.deps.com.google.gson.stream.JsonReader;
+import gherkin.deps.com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Encoding of the Webcat report, chosen with {@code WEBCAT_CODEC}.
+ * <p>
+ * The report is serialized by gson into the {@link JsonWriter} of the codec, so a codec only decides how the
+ * values are written. Codecs are shared by every report of the run and must be stateless, see
+ * {@link ReportCodecs} for the built in ones and how others are registered.
+ * </p>
+ */
+public interface ReportCodec {
+    /**
+     * @return the value of {@code WEBCAT_CODEC} that selects this codec
+     */
+    String getName();
+
+    /**
+     * @return whether the report is not text, so it is sent as {@code application/octet-stream} rather than JSON
+     */
+    boolean isBinary();
+
+    /**
+     * @return suffix of the report files, e.g. {@code .json}
+     */
+    String getExtension();
+
+    /**
+     * @return a writer encoding a single report to {@code out}, which is closed with the writer
+     */
+    JsonWriter newWriter(OutputStream out) throws IOException;
+
+    /**
+     * @return a reader streaming the values of a report written by {@link #newWriter(OutputStream)}, which closes
+     * {@code in} with the reader
+     */
+    JsonReader newReader(InputStream in) throws IOException;
+
+    /**
+     * Decodes a whole report written by {@link #newWriter(OutputStream)}.
+     */
+    JsonElement read(InputStream in) throws IOException;
+}
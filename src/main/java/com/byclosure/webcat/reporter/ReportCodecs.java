@@ -0,0 +1,60 @@
+package com.byclosure.webcat.reporter;
+
+import com.byclosure.webcat.helpers.LoggerHelper;
+import org.apache.http.entity.ContentType;
+
+import java.util.ServiceLoader;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The report codecs: {@code pretty}, indented JSON and the default, {@code json}, JSON on a single line, and
+ * {@code binary}, see {@link BinaryReportCodec}. Other codecs are registered as {@link ServiceLoader} services of
+ * {@link ReportCodec}.
+ */
+public final class ReportCodecs {
+    private final static Logger logger = LoggerHelper.getLogger(ReportCodecs.class.getName());
+
+    public static final ReportCodec PRETTY_JSON = new JsonReportCodec("pretty", "  ");
+    public static final ReportCodec COMPACT_JSON = new JsonReportCodec("json", "");
+    public static final ReportCodec BINARY = new BinaryReportCodec();
+
+    private static final ReportCodec[] BUILT_IN = {PRETTY_JSON, COMPACT_JSON, BINARY};
+
+    private ReportCodecs() {
+    }
+
+    /**
+     * @return the codec called {@code name}, or the pretty JSON one if there is none
+     */
+    public static ReportCodec forName(String name) {
+        if (name == null || name.trim().isEmpty()) {
+            return PRETTY_JSON;
+        }
+
+        for (ReportCodec codec : BUILT_IN) {
+            if (codec.getName().equalsIgnoreCase(name.trim())) {
+                return codec;
+            }
+        }
+        for (ReportCodec codec : ServiceLoader.load(ReportCodec.class)) {
+            if (codec.getName().equalsIgnoreCase(name.trim())) {
+                return codec;
+            }
+        }
+
+        logger.log(Level.WARNING, "Unknown report codec " + name + ", writing the report as pretty JSON");
+        return PRETTY_JSON;
+    }
+
+    static ContentType contentType(ReportCodec codec) {
+        return codec.isBinary() ? ContentType.APPLICATION_OCTET_STREAM : ContentType.APPLICATION_JSON;
+    }
+
+    /**
+     * The debug output is text, it is JSON, indented unless the report is compact JSON.
+     */
+    static JsonReportCodec debugCodec(ReportCodec codec) {
+        return (JsonReportCodec) (codec instanceof JsonReportCodec ? codec : PRETTY_JSON);
+    }
+}
@@ -0,0 +1,252 @@
+package com.byclosure.webcat.reporter;
+
+import com.byclosure.webcat.EnvironmentConfig;
+import com.byclosure.webcat.helpers.LoggerHelper;
+import gherkin.deps.com.google.gson.*;
+import gherkin.deps.com.google.gson.internal.LazilyParsedNumber;
+import gherkin.deps.com.google.gson.stream.JsonReader;
+import gherkin.deps.com.google.gson.stream.JsonWriter;
+import org.junit.runners.model.InitializationError;
+
+import java.io.*;
+import java.util.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Merges the reports of a run split across processes or nodes, e.g. of its shards, into a single report, with
+ * the API or with {@link #main(String[])}.
+ * <p>
+ * Features are copied value by value from each report to the merged one as they are read, so the reports can be
+ * far larger than the heap. Only the step definitions, kept once each, their usage, added up, and the environment
+ * of the first report are held in memory. Reports are read whether they are JSON or binary and compressed or not.
+ * A feature split by scenario across shards appears once for each shard.
+ * </p>
+ */
+public class ReportMerger {
+    private final static Logger logger = LoggerHelper.getLogger(ReportMerger.class.getName());
+
+    private static final int GZIP_MAGIC = 0x8b1f;
+
+    private final ReportCodec codec;
+    private final Gson gson = new GsonBuilder().create();
+
+    /**
+     * @param codec encoding of the merged report
+     */
+    public ReportMerger(ReportCodec codec) {
+        this.codec = codec;
+    }
+
+    /**
+     * Merges the reports given after the merged report file, encoded with {@code WEBCAT_CODEC} and compressed
+     * unless {@code WEBCAT_COMPRESS} is false, and sends it to Webcat when the results are published.
+     */
+    public static void main(String[] args) throws InitializationError, IOException {
+        if (args.length < 2) {
+            logger.log(Level.SEVERE, "Usage: ReportMerger <merged report> <report>...");
+            return;
+        }
+
+        final EnvironmentConfig config = new EnvironmentConfig();
+        final ReportCodec codec = ReportCodecs.forName(config.getCodec());
+        final File merged = new File(args[0]);
+        final List<File> reports = new ArrayList<File>();
+        for (int i = 1; i < args.length; i++) {
+            reports.add(new File(args[i]));
+        }
+
+        final OutputStream out = config.isCompressed() ?
+                new GZIPOutputStream(new FileOutputStream(merged), WebcatClient.BUFFER_SIZE) :
+                new FileOutputStream(merged);
+        new ReportMerger(codec).merge(reports, out);
+        logger.log(Level.INFO, "Merged " + reports.size() + " reports into " + merged);
+
+        if (config.shouldPublishResults()) {
+            final WebcatClient client = new WebcatClient(config.getConnectTimeout(), config.getSocketTimeout(), config.getRetries());
+            final Outbox outbox = new Outbox(config.getOutboxDirectory());
+            try {
+                WebcatReporter.sendReport(merged, codec, config, client, outbox);
+            } finally {
+                outbox.close();
+                client.close();
+            }
+        }
+    }
+
+    /**
+     * Writes the merged report to {@code out}, which is closed once it is written.
+     */
+    public void merge(List<File> reports, OutputStream out) throws IOException {
+        final Map<String, JsonElement> stepDefinitions = new LinkedHashMap<String, JsonElement>();
+        final StepDefinitionUsage stepDefinitionUsage = new StepDefinitionUsage();
+        final Map<String, JsonElement> fields = new LinkedHashMap<String, JsonElement>();
+        final Set<Integer> shards = new TreeSet<Integer>();
+        int shardCount = 1;
+
+        final JsonWriter json = codec.newWriter(out);
+        try {
+            json.beginObject();
+            json.name("features");
+            json.beginArray();
+
+            for (File report : reports) {
+                final JsonReader in = open(report);
+                try {
+                    in.beginObject();
+                    while (in.hasNext()) {
+                        final String name = in.nextName();
+                        if ("features".equals(name)) {
+                            in.beginArray();
+                            while (in.hasNext()) {
+                                copy(in, json);
+                            }
+                            in.endArray();
+                        } else if ("stepDefinitions".equals(name)) {
+                            for (JsonElement stepDefinition : parse(in).getAsJsonArray()) {
+                                final String key = string(stepDefinition, "pattern") + '\n' + string(stepDefinition, "location");
+                                if (!stepDefinitions.containsKey(key)) {
+                                    stepDefinitions.put(key, stepDefinition);
+                                }
+                            }
+                        } else if ("stepDefinitionUsage".equals(name)) {
+                            for (JsonElement entry : parse(in).getAsJsonArray()) {
+                                addUsage(stepDefinitionUsage, entry.getAsJsonObject());
+                            }
+                        } else if ("shard".equals(name)) {
+                            final JsonObject shard = parse(in).getAsJsonObject();
+                            shards.add(shard.get("index").getAsInt());
+                            shardCount = Math.max(shardCount, shard.get("count").getAsInt());
+                        } else if (!fields.containsKey(name)) {
+                            fields.put(name, parse(in));
+                        } else {
+                            in.skipValue();
+                        }
+                    }
+                    in.endObject();
+                } catch (RuntimeException e) {
+                    throw new IOException("Invalid Webcat report " + report + ": " + e.getMessage(), e);
+                } finally {
+                    in.close();
+                }
+            }
+
+            json.endArray();
+            json.name("stepDefinitions");
+            json.beginArray();
+            for (JsonElement stepDefinition : stepDefinitions.values()) {
+                gson.toJson(stepDefinition, json);
+            }
+            json.endArray();
+            json.name("stepDefinitionUsage");
+            gson.toJson(stepDefinitionUsage.entries(), Collection.class, json);
+            for (Map.Entry<String, JsonElement> field : fields.entrySet()) {
+                json.name(field.getKey());
+                gson.toJson(field.getValue(), json);
+            }
+            json.endObject();
+        } finally {
+            json.close();
+        }
+
+        if (!shards.isEmpty() && shards.size() < shardCount) {
+            logger.log(Level.WARNING, "Merged " + shards.size() + " of the " + shardCount + " shards of the run: " + shards);
+        }
+    }
+
+    /**
+     * Opens a report written by any of the built in codecs, binary reports start with their magic bytes.
+     */
+    private static JsonReader open(File report) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(report), WebcatClient.BUFFER_SIZE);
+        try {
+            in.mark(2);
+            final int magic = in.read() | (in.read() << 8);
+            in.reset();
+            if (magic == GZIP_MAGIC) {
+                in = new BufferedInputStream(new GZIPInputStream(in, WebcatClient.BUFFER_SIZE), WebcatClient.BUFFER_SIZE);
+            }
+
+            in.mark(1);
+            final int first = in.read();
+            in.reset();
+            return (first == 'W' ? ReportCodecs.BINARY : ReportCodecs.COMPACT_JSON).newReader(in);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    private static JsonElement parse(JsonReader in) {
+        return new JsonParser().parse(in);
+    }
+
+    private static String string(JsonElement object, String name) {
+        final JsonElement value = object.getAsJsonObject().get(name);
+        return value == null || value.isJsonNull() ? null : value.getAsString();
+    }
+
+    private static void addUsage(StepDefinitionUsage usage, JsonObject entry) {
+        final List<String> steps = new ArrayList<String>();
+        if (entry.has("steps")) {
+            for (JsonElement step : entry.getAsJsonArray("steps")) {
+                steps.add(step.getAsString());
+            }
+        }
+        usage.add(string(entry, "pattern"), string(entry, "location"),
+                entry.has("count") ? entry.get("count").getAsInt() : 0, steps,
+                entry.has("totalDuration") ? entry.get("totalDuration").getAsLong() : 0,
+                entry.has("maxDuration") ? entry.get("maxDuration").getAsLong() : 0);
+    }
+
+    /**
+     * Copies the next value of {@code in}, token by token, so a feature is never held in memory whole.
+     */
+    static void copy(JsonReader in, JsonWriter out) throws IOException {
+        int depth = 0;
+        do {
+            switch (in.peek()) {
+                case BEGIN_OBJECT:
+                    in.beginObject();
+                    out.beginObject();
+                    depth++;
+                    break;
+                case END_OBJECT:
+                    in.endObject();
+                    out.endObject();
+                    depth--;
+                    break;
+                case BEGIN_ARRAY:
+                    in.beginArray();
+                    out.beginArray();
+                    depth++;
+                    break;
+                case END_ARRAY:
+                    in.endArray();
+                    out.endArray();
+                    depth--;
+                    break;
+                case NAME:
+                    out.name(in.nextName());
+                    break;
+                case STRING:
+                    out.value(in.nextString());
+                    break;
+                case NUMBER:
+                    out.value(new LazilyParsedNumber(in.nextString()));
+                    break;
+                case BOOLEAN:
+                    out.value(in.nextBoolean());
+                    break;
+                case NULL:
+                    in.nextNull();
+                    out.nullValue();
+                    break;
+                default:
+                    throw new EOFException("Truncated Webcat report");
+            }
+        } while (depth > 0);
+    }
+}
@@ -0,0 +1,389 @@
+package com.byclosure.webcat.reporter;
+
+import gherkin.deps.com.google.gson.annotations.SerializedName;
+import gherkin.formatter.Argument;
+import gherkin.formatter.model.*;
+
+import java.util.*;
+
+/**
+ * The nodes of the Webcat report, built from the gherkin model.
+ * <p>
+ * The nodes have a field for each key the gherkin {@code toMap()} would produce, so the report serializes to the same
+ * JSON, but take a fraction of the memory of a map per node. Keywords, statuses, tag names, uris, locations and
+ * mime types, the few strings that repeat all over a run, are stored once, in a string table shared by the run.
+ * Names, descriptions, cells and other text that is mostly distinct is kept as it is, so the table stays as small
+ * as the vocabulary of the suite.
+ * </p>
+ */
+class ReportModel {
+    private static final Integer NO_LINE = -1;
+
+    private final Map<String, String> strings = new HashMap<String, String>();
+    // the steps of the outline being reported, by line, and the header of its current examples, which tell the
+    // columns each step of an example was filled in from
+    private final Map<Integer, Step> outlineSteps = new HashMap<Integer, Step>();
+    private boolean readingOutline = false;
+    private List<String> examplesHeader;
+
+    /**
+     * @return the copy of {@code string} already in the table, or {@code string} once added to it
+     */
+    String intern(String string) {
+        if (string == null) {
+            return null;
+        }
+        final String interned = strings.get(string);
+        if (interned != null) {
+            return interned;
+        }
+        strings.put(string, string);
+        return string;
+    }
+
+    int size() {
+        return strings.size();
+    }
+
+    FeatureNode feature(Feature feature, String uri) {
+        final FeatureNode node = new FeatureNode();
+        describe(node, feature);
+        node.tags = tags(feature.getTags());
+        node.id = feature.getId();
+        node.uri = intern(uri);
+        outlineSteps.clear();
+        readingOutline = false;
+        examplesHeader = null;
+        return node;
+    }
+
+    ElementNode background(Background background) {
+        final ElementNode node = new ElementNode("background");
+        describe(node, background);
+        return node;
+    }
+
+    ElementNode scenario(Scenario scenario) {
+        final ElementNode node = new ElementNode("scenario");
+        describe(node, scenario);
+        node.tags = tags(scenario.getTags());
+        node.id = scenario.getId();
+        return node;
+    }
+
+    ElementNode scenarioOutline(ScenarioOutline scenarioOutline) {
+        final ElementNode node = new ElementNode("scenario_outline");
+        describe(node, scenarioOutline);
+        node.tags = tags(scenarioOutline.getTags());
+        node.id = scenarioOutline.getId();
+        outlineSteps.clear();
+        readingOutline = true;
+        examplesHeader = null;
+        return node;
+    }
+
+    ExamplesNode examples(Examples examples) {
+        final ExamplesNode node = new ExamplesNode();
+        describe(node, examples);
+        node.tags = tags(examples.getTags());
+        node.id = examples.getId();
+        readingOutline = false;
+        examplesHeader = null;
+        if (examples.getRows() != null && !examples.getRows().isEmpty()) {
+            examplesHeader = examples.getRows().get(0).getCells();
+            node.rows = new ArrayList<RowNode>(examples.getRows().size());
+            for (ExamplesTableRow row : examples.getRows()) {
+                final RowNode rowNode = row(row);
+                rowNode.id = row.getId();
+                node.rows.add(rowNode);
+            }
+        }
+        return node;
+    }
+
+    StepNode step(Step step) {
+        final StepNode node = new StepNode();
+        node.keyword = intern(step.getKeyword());
+        node.name = step.getName();
+        node.line = line(step.getLine());
+        node.comments = comments(step.getComments());
+        if (step.getRows() != null && !step.getRows().isEmpty()) {
+            node.rows = new ArrayList<RowNode>(step.getRows().size());
+            for (DataTableRow row : step.getRows()) {
+                node.rows.add(row(row));
+            }
+        }
+        if (step.getDocString() != null) {
+            final DocString docString = step.getDocString();
+            node.docString = new DocStringNode(intern(docString.getContentType()), docString.getValue(), line(docString.getLine()));
+        }
+        if (readingOutline) {
+            outlineSteps.put(step.getLine(), step);
+        } else {
+            node.matchedColumns = matchedColumns(step);
+        }
+        return node;
+    }
+
+    MatchNode match(Match match) {
+        final MatchNode node = new MatchNode();
+        node.location = intern(match.getLocation());
+        if (match.getArguments() != null && !match.getArguments().isEmpty()) {
+            node.arguments = new ArrayList<ArgumentNode>(match.getArguments().size());
+            for (Argument argument : match.getArguments()) {
+                node.arguments.add(new ArgumentNode(argument.getVal(), argument.getOffset()));
+            }
+        }
+        return node;
+    }
+
+    ResultNode result(Result result) {
+        return new ResultNode(intern(result.getStatus()), result.getDuration(), result.getErrorMessage());
+    }
+
+    HookNode hook(Match match, Result result) {
+        return new HookNode(match(match), result(result));
+    }
+
+    EmbeddingNode embedding(String mimeType, Attachment data) {
+        return new EmbeddingNode(intern(mimeType), data);
+    }
+
+    private void describe(DescribedNode node, DescribedStatement statement) {
+        node.keyword = intern(statement.getKeyword());
+        node.name = statement.getName();
+        node.description = statement.getDescription();
+        node.line = line(statement.getLine());
+        node.comments = comments(statement.getComments());
+    }
+
+    private RowNode row(Row row) {
+        final RowNode node = new RowNode();
+        node.comments = comments(row.getComments());
+        if (row.getCells() != null && !row.getCells().isEmpty()) {
+            node.cells = new ArrayList<String>(row.getCells());
+        }
+        node.line = line(row.getLine());
+        return node;
+    }
+
+    private List<TagNode> tags(List<Tag> tags) {
+        if (tags == null || tags.isEmpty()) {
+            return null;
+        }
+        final List<TagNode> nodes = new ArrayList<TagNode>(tags.size());
+        for (Tag tag : tags) {
+            nodes.add(new TagNode(intern(tag.getName()), line(tag.getLine())));
+        }
+        return nodes;
+    }
+
+    private List<CommentNode> comments(List<Comment> comments) {
+        if (comments == null || comments.isEmpty()) {
+            return null;
+        }
+        final List<CommentNode> nodes = new ArrayList<CommentNode>(comments.size());
+        for (Comment comment : comments) {
+            nodes.add(new CommentNode(comment.getValue(), line(comment.getLine())));
+        }
+        return nodes;
+    }
+
+    private static Integer line(Integer line) {
+        return NO_LINE.equals(line) ? null : line;
+    }
+
+    /**
+     * The steps of an example are the steps of the outline with the {@code <column>} tokens replaced by the cells of
+     * the example. As Cucumber does when it creates them, the columns are those whose token the outline step has in
+     * its name, table or doc string.
+     *
+     * @return the columns of the examples the step was filled in from, null if it is not the step of an example
+     */
+    private List<Integer> matchedColumns(Step step) {
+        final Step outlineStep = outlineSteps.get(step.getLine());
+        if (outlineStep == null || examplesHeader == null) {
+            return null;
+        }
+
+        final StringBuilder text = new StringBuilder(outlineStep.getName());
+        if (outlineStep.getRows() != null) {
+            for (DataTableRow row : outlineStep.getRows()) {
+                for (String cell : row.getCells()) {
+                    text.append('\n').append(cell);
+                }
+            }
+        }
+        if (outlineStep.getDocString() != null) {
+            text.append('\n').append(outlineStep.getDocString().getValue());
+        }
+
+        final List<Integer> columns = new ArrayList<Integer>();
+        for (int i = 0; i < examplesHeader.size(); i++) {
+            if (text.indexOf("<" + examplesHeader.get(i) + ">") >= 0) {
+                columns.add(i);
+            }
+        }
+        return columns.isEmpty() ? null : columns;
+    }
+
+    abstract static class DescribedNode {
+        String keyword;
+        String name;
+        String description;
+        Integer line;
+        List<CommentNode> comments;
+    }
+
+    static class FeatureNode extends DescribedNode {
+        List<TagNode> tags;
+        String id;
+        String uri;
+        // when the first scenario started, in milliseconds since the epoch, and until the last one ended, in
+        // nanoseconds, and how long the feature waited for a worker in a run with parallel features
+        @SerializedName("start_timestamp")
+        Long startTimestamp;
+        Long duration;
+        @SerializedName("queue_wait")
+        Long queueWait;
+        List<ElementNode> elements;
+        // the elements written to disk to stay within the heap budget, not part of the report itself
+        transient FeatureSpill spill;
+    }
+
+    static class ElementNode extends DescribedNode {
+        final String type;
+        List<TagNode> tags;
+        String id;
+        List<StepNode> steps;
+        List<ExamplesNode> examples;
+        List<HookNode> before;
+        List<HookNode> after;
+        // from the second attempt of a scenario that is run again after failing
+        Integer attempt;
+        // scenarios only, when they started, in milliseconds since the epoch, how long they took, with their hooks,
+        // and how long they waited for a worker in a run with parallel scenarios, in nanoseconds
+        @SerializedName("start_timestamp")
+        Long startTimestamp;
+        Long duration;
+        @SerializedName("queue_wait")
+        Long queueWait;
+
+        ElementNode(String type) {
+            this.type = type;
+        }
+    }
+
+    static class ExamplesNode extends DescribedNode {
+        List<TagNode> tags;
+        String id;
+        List<RowNode> rows;
+    }
+
+    static class StepNode {
+        String keyword;
+        String name;
+        Integer line;
+        List<CommentNode> comments;
+        List<RowNode> rows;
+        @SerializedName("doc_string")
+        DocStringNode docString;
+        List<Integer> matchedColumns;
+        MatchNode match;
+        ResultNode result;
+        List<EmbeddingNode> embeddings;
+        List<String> output;
+        List<Attachment> screenshots;
+    }
+
+    static class RowNode {
+        List<CommentNode> comments;
+        List<String> cells;
+        Integer line;
+        String id;
+    }
+
+    static class MatchNode {
+        List<ArgumentNode> arguments;
+        String location;
+    }
+
+    static class ResultNode {
+        final String status;
+        Long duration;
+        @SerializedName("error_message")
+        final String errorMessage;
+
+        ResultNode(String status, Long duration, String errorMessage) {
+            this.status = status;
+            this.duration = duration;
+            this.errorMessage = errorMessage;
+        }
+    }
+
+    static class HookNode {
+        final MatchNode match;
+        final ResultNode result;
+        // only set for after hooks that took screenshots
+        List<Attachment> screenshots;
+
+        HookNode(MatchNode match, ResultNode result) {
+            this.match = match;
+            this.result = result;
+        }
+    }
+
+    static class EmbeddingNode {
+        @SerializedName("mime_type")
+        final String mimeType;
+        final Attachment data;
+
+        EmbeddingNode(String mimeType, Attachment data) {
+            this.mimeType = mimeType;
+            this.data = data;
+        }
+    }
+
+    static class TagNode {
+        final String name;
+        final Integer line;
+
+        TagNode(String name, Integer line) {
+            this.name = name;
+            this.line = line;
+        }
+    }
+
+    static class CommentNode {
+        final String value;
+        final Integer line;
+
+        CommentNode(String value, Integer line) {
+            this.value = value;
+            this.line = line;
+        }
+    }
+
+    static class DocStringNode {
+        @SerializedName("content_type")
+        final String contentType;
+        final String value;
+        final Integer line;
+
+        DocStringNode(String contentType, String value, Integer line) {
+            this.contentType = contentType;
+            this.value = value;
+            this.line = line;
+        }
+    }
+
+    static class ArgumentNode {
+        final String val;
+        final Integer offset;
+
+        ArgumentNode(String val, Integer offset) {
+            this.val = val;
+            this.offset = offset;
+        }
+    }
+}
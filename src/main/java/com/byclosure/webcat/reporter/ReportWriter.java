@@ -0,0 +1,241 @@
+package com.byclosure.webcat.reporter;
+
+import com.byclosure.webcat.EnvironmentConfig;
+import com.byclosure.webcat.parallel.Shard;
+import cucumber.runtime.CucumberException;
+import gherkin.deps.com.google.gson.Gson;
+import gherkin.deps.com.google.gson.stream.JsonWriter;
+
+import java.io.*;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the Webcat report incrementally. Features are written as soon as they are finished, the step
+ * definitions, their usage and the environment when the run is done, so only the feature being run is kept in
+ * memory.
+ */
+class ReportWriter implements Closeable {
+    private final Gson gson;
+    private final JsonWriter json;
+    private boolean started = false;
+
+    ReportWriter(List<JsonWriter> writers, Gson gson) {
+        this.gson = gson;
+        this.json = writers.size() == 1 ? writers.get(0) : new TeeJsonWriter(writers);
+    }
+
+    void writeFeature(ReportModel.FeatureNode feature) {
+        try {
+            start();
+            FeatureSpill.writeFeature(gson, feature, json);
+        } catch (IOException e) {
+            throw new CucumberException("Could not write feature to the Webcat report", e);
+        }
+    }
+
+    void finish(List<WebcatReporter.StepDefinitionContainer> stepDefinitions,
+                Collection<StepDefinitionUsage.Entry> stepDefinitionUsage,
+                Map<EnvironmentConfig.Config, String> environment, Shard shard) {
+        try {
+            start();
+            json.endArray();
+            json.name("stepDefinitions");
+            gson.toJson(stepDefinitions, List.class, json);
+            json.name("stepDefinitionUsage");
+            gson.toJson(stepDefinitionUsage, Collection.class, json);
+            json.name("environment");
+            gson.toJson(environment, Map.class, json);
+            writeShard(json, shard);
+            json.endObject();
+            json.flush();
+        } catch (IOException e) {
+            throw new CucumberException("Could not finish the Webcat report", e);
+        }
+    }
+
+    /**
+     * Tags the report of a shard with its {@code index} and {@code count}, nothing for a run that is not sharded.
+     */
+    static void writeShard(JsonWriter json, Shard shard) throws IOException {
+        if (shard.isSharded()) {
+            json.name("shard");
+            json.beginObject();
+            json.name("index").value(shard.getIndex());
+            json.name("count").value(shard.getCount());
+            json.endObject();
+        }
+    }
+
+    private void start() throws IOException {
+        if (!started) {
+            json.beginObject();
+            json.name("features");
+            json.beginArray();
+            started = true;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        json.close();
+    }
+
+    static Writer writerFor(final Appendable out) {
+        if (out instanceof Writer) {
+            return (Writer) out;
+        }
+
+        return new Writer() {
+            @Override
+            public void write(char[] buffer, int offset, int length) throws IOException {
+                out.append(new String(buffer, offset, length));
+            }
+
+            @Override
+            public void flush() throws IOException {
+                if (out instanceof Flushable) {
+                    ((Flushable) out).flush();
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (out instanceof Closeable) {
+                    ((Closeable) out).close();
+                }
+            }
+        };
+    }
+
+    /**
+     * Writes the same report to several sinks, e.g. the debug output and the file to publish, each in its own
+     * encoding. The report is serialized once and every value handed to each sink.
+     */
+    private static class TeeJsonWriter extends JsonWriter {
+        // every method writing to it is overridden
+        private static final Writer UNUSED = new StringWriter(0);
+
+        private final List<JsonWriter> writers;
+
+        TeeJsonWriter(List<JsonWriter> writers) {
+            super(UNUSED);
+            this.writers = writers;
+        }
+
+        @Override
+        public JsonWriter beginArray() throws IOException {
+            for (JsonWriter writer : configured()) {
+                writer.beginArray();
+            }
+            return this;
+        }
+
+        @Override
+        public JsonWriter endArray() throws IOException {
+            for (JsonWriter writer : configured()) {
+                writer.endArray();
+            }
+            return this;
+        }
+
+        @Override
+        public JsonWriter beginObject() throws IOException {
+            for (JsonWriter writer : configured()) {
+                writer.beginObject();
+            }
+            return this;
+        }
+
+        @Override
+        public JsonWriter endObject() throws IOException {
+            for (JsonWriter writer : configured()) {
+                writer.endObject();
+            }
+            return this;
+        }
+
+        @Override
+        public JsonWriter name(String name) throws IOException {
+            for (JsonWriter writer : configured()) {
+                writer.name(name);
+            }
+            return this;
+        }
+
+        @Override
+        public JsonWriter value(String value) throws IOException {
+            for (JsonWriter writer : configured()) {
+                writer.value(value);
+            }
+            return this;
+        }
+
+        @Override
+        public JsonWriter nullValue() throws IOException {
+            for (JsonWriter writer : configured()) {
+                writer.nullValue();
+            }
+            return this;
+        }
+
+        @Override
+        public JsonWriter value(boolean value) throws IOException {
+            for (JsonWriter writer : configured()) {
+                writer.value(value);
+            }
+            return this;
+        }
+
+        @Override
+        public JsonWriter value(double value) throws IOException {
+            for (JsonWriter writer : configured()) {
+                writer.value(value);
+            }
+            return this;
+        }
+
+        @Override
+        public JsonWriter value(long value) throws IOException {
+            for (JsonWriter writer : configured()) {
+                writer.value(value);
+            }
+            return this;
+        }
+
+        @Override
+        public JsonWriter value(Number value) throws IOException {
+            for (JsonWriter writer : configured()) {
+                writer.value(value);
+            }
+            return this;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            for (JsonWriter writer : writers) {
+                writer.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (JsonWriter writer : writers) {
+                writer.close();
+            }
+        }
+
+        /**
+         * Gson sets up the writer it serializes to, e.g. to leave out nulls, the sinks have to follow.
+         */
+        private List<JsonWriter> configured() {
+            for (JsonWriter writer : writers) {
+                writer.setLenient(isLenient());
+                writer.setHtmlSafe(isHtmlSafe());
+                writer.setSerializeNulls(getSerializeNulls());
+            }
+            return writers;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.byclosure.webcat.reporter;
+
+import cucumber.runtime.StepDefinitionMatch;
+
+import java.util.*;
+
+/**
+ * How often each step definition was used in the run, updated as matches and results come in.
+ * <p>
+ * There is one entry per step definition (pattern and location) with the number of steps it ran, the distinct
+ * step names it matched and the total and longest durations, so the report grows with the number of distinct
+ * steps rather than with the number of steps run.
+ * </p>
+ */
+class StepDefinitionUsage {
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+
+    /**
+     * Counts a step matched by a step definition.
+     *
+     * @return the entry of the step definition, to add the duration of the step to once its result is known
+     */
+    Entry match(StepDefinitionMatch match) {
+        final Entry entry = entry(match.getPattern(), match.getLocation());
+        entry.count++;
+        entry.steps.add(match.getStepName());
+        return entry;
+    }
+
+    /**
+     * Adds the usage of a step definition in another run, e.g. in the report of another shard.
+     */
+    void add(String pattern, String location, int count, Collection<String> steps, long totalDuration, long maxDuration) {
+        final Entry entry = entry(pattern, location);
+        entry.count += count;
+        entry.steps.addAll(steps);
+        entry.totalDuration += totalDuration;
+        entry.maxDuration = Math.max(entry.maxDuration, maxDuration);
+    }
+
+    private Entry entry(String pattern, String location) {
+        final String key = pattern + '\n' + location;
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            entry = new Entry(pattern, location);
+            entries.put(key, entry);
+        }
+        return entry;
+    }
+
+    Collection<Entry> entries() {
+        return entries.values();
+    }
+
+    static class Entry {
+        public final String pattern;
+        public final String location;
+        public int count;
+        public final Set<String> steps = new LinkedHashSet<String>();
+        public long totalDuration;
+        public long maxDuration;
+
+        Entry(String pattern, String location) {
+            this.pattern = pattern;
+            this.location = location;
+        }
+
+        /**
+         * @param duration in nanoseconds, null if the step did not run
+         */
+        void addDuration(Long duration) {
+            if (duration != null) {
+                totalDuration += duration;
+                maxDuration = Math.max(maxDuration, duration);
+            }
+        }
+    }
+}
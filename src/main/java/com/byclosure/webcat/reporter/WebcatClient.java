@@ -0,0 +1,180 @@
+package com.byclosure.webcat.reporter;
+
+import com.byclosure.webcat.helpers.LoggerHelper;
+import com.byclosure.webcat.metrics.WebcatMetrics;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Sends reports to the Webcat server.
+ * <p>
+ * A single pooled client, keeping connections alive, is shared by every report and batch of the run. Requests
+ * that fail with an IO error or a 5xx response are retried with a jittered exponential backoff.
+ * </p>
+ */
+class WebcatClient implements Closeable {
+    private final static Logger logger = LoggerHelper.getLogger(WebcatClient.class.getName());
+
+    static final String GZIP = "gzip";
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final int MAX_CONNECTIONS = 4;
+    private static final long DEFAULT_BACKOFF_MILLIS = 500;
+    private static final long MAX_BACKOFF_MILLIS = 30000;
+
+    private final CloseableHttpClient httpclient;
+    private final int retries;
+    private final long backoffMillis;
+    private final WebcatMetrics metrics;
+
+    WebcatClient(int connectTimeout, int socketTimeout, int retries) {
+        this(connectTimeout, socketTimeout, retries, new WebcatMetrics());
+    }
+
+    WebcatClient(int connectTimeout, int socketTimeout, int retries, WebcatMetrics metrics) {
+        this(connectTimeout, socketTimeout, retries, DEFAULT_BACKOFF_MILLIS, metrics);
+    }
+
+    WebcatClient(int connectTimeout, int socketTimeout, int retries, long backoffMillis) {
+        this(connectTimeout, socketTimeout, retries, backoffMillis, new WebcatMetrics());
+    }
+
+    WebcatClient(int connectTimeout, int socketTimeout, int retries, long backoffMillis, WebcatMetrics metrics) {
+        this.retries = retries;
+        this.backoffMillis = backoffMillis;
+        this.metrics = metrics;
+
+        final PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(MAX_CONNECTIONS);
+        connectionManager.setDefaultMaxPerRoute(MAX_CONNECTIONS);
+
+        final RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(connectTimeout)
+                .setConnectionRequestTimeout(connectTimeout)
+                .setSocketTimeout(socketTimeout)
+                .build();
+
+        this.httpclient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .disableAutomaticRetries()
+                .build();
+    }
+
+    /**
+     * @return {@link Outcome#ACCEPTED} if the server accepted the report, {@link Outcome#RETRY} if it may accept it
+     * later and {@link Outcome#REJECTED} if it never will
+     */
+    Outcome post(String url, HttpEntity entity) {
+        final long start = System.nanoTime();
+        final int maxAttempts = entity.isRepeatable() ? retries + 1 : 1;
+
+        int attempt = 0;
+        try {
+            while (attempt < maxAttempts) {
+                attempt++;
+                final Outcome outcome = execute(url, entity);
+
+                if (outcome == Outcome.ACCEPTED) {
+                    logger.log(Level.INFO, "Sent report to Webcat in " + describe(attempt, start));
+                    return outcome;
+                }
+
+                if (outcome == Outcome.REJECTED) {
+                    logger.log(Level.SEVERE, "Webcat rejected the report, dropping it");
+                    return outcome;
+                }
+
+                if (attempt == maxAttempts || !backoff(attempt)) {
+                    break;
+                }
+            }
+
+            logger.log(Level.SEVERE, "Could not send report to Webcat, gave up after " + describe(attempt, start));
+            return Outcome.RETRY;
+        } finally {
+            // the body is sent again by every attempt
+            metrics.upload(System.nanoTime() - start, attempt * entity.getContentLength());
+        }
+    }
+
+    enum Outcome {ACCEPTED, REJECTED, RETRY}
+
+    private Outcome execute(String url, HttpEntity entity) {
+        final HttpPost httppost = new HttpPost(url);
+        httppost.setHeader("Accept-Charset", "utf-8");
+        httppost.setEntity(entity);
+
+        //Execute
+        final CloseableHttpResponse response;
+        try {
+            response = httpclient.execute(httppost);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not send report to Webcat: " + e.getMessage());
+            return Outcome.RETRY;
+        }
+
+        try {
+            final int statusCode = response.getStatusLine().getStatusCode();
+
+            if (statusCode == 200) {
+                return Outcome.ACCEPTED;
+            }
+
+            logger.log(Level.WARNING, "Could not send report to Webcat. Server responded with error: " + response.getStatusLine());
+            return statusCode >= 500 ? Outcome.RETRY : Outcome.REJECTED;
+        } finally {
+            // release the connection back to the pool
+            try {
+                EntityUtils.consume(response.getEntity());
+                response.close();
+            } catch (IOException e) {
+                logger.log(Level.FINE, "Could not close Webcat response: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Waits a random time up to an exponentially growing limit ("full jitter").
+     *
+     * @return false if the thread was interrupted while waiting
+     */
+    private boolean backoff(int attempt) {
+        final long limit = Math.min(MAX_BACKOFF_MILLIS, backoffMillis << Math.min(attempt - 1, 16));
+        final long delay = ThreadLocalRandom.current().nextLong(limit + 1);
+
+        try {
+            Thread.sleep(delay);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static String describe(int attempts, long start) {
+        final long millis = (System.nanoTime() - start) / 1000000L;
+        return attempts + (attempts == 1 ? " attempt" : " attempts") + " (" + millis + " ms)";
+    }
+
+    @Override
+    public void close() {
+        try {
+            httpclient.close();
+        } catch (IOException e) {
+            logger.log(Level.FINE, "Could not close Webcat client: " + e.getMessage());
+        }
+    }
+}
@@ -2,181 +2,377 @@ package com.byclosure.webcat.reporter;
 
 import com.byclosure.webcat.EnvironmentConfig;
 import com.byclosure.webcat.context.Context;
+import com.byclosure.webcat.context.ScreenshotStore;
 import com.byclosure.webcat.helpers.LoggerHelper;
+import com.byclosure.webcat.metrics.WebcatMetrics;
+import cucumber.runtime.CucumberException;
 import cucumber.runtime.ParameterInfo;
 import cucumber.runtime.StepDefinition;
 import cucumber.runtime.StepDefinitionMatch;
 import gherkin.deps.com.google.gson.Gson;
 import gherkin.deps.com.google.gson.GsonBuilder;
-import gherkin.deps.net.iharder.Base64;
+import gherkin.deps.com.google.gson.stream.JsonWriter;
 import gherkin.formatter.Formatter;
-import gherkin.formatter.NiceAppendable;
 import gherkin.formatter.Reporter;
 import gherkin.formatter.model.*;
-import org.apache.http.HttpResponse;
-import org.apache.http.client.HttpClient;
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.entity.ContentType;
-import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.HttpClients;
-
-import java.io.IOException;
-import java.io.UnsupportedEncodingException;
-import java.nio.charset.Charset;
-import java.nio.charset.StandardCharsets;
+import org.apache.http.entity.FileEntity;
+
+import java.io.*;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
 
 public class WebcatReporter implements Reporter, Formatter {
     private final static Logger logger = LoggerHelper.getLogger(WebcatReporter.class.getName());
 
-    private final List<Map<String, Object>> featureMaps = new ArrayList<Map<String, Object>>();
-    private final NiceAppendable out;
+    private final Appendable out;
     private final EnvironmentConfig config;
+    private final ReportCodec codec;
+    private final Gson gson;
+    private final File reportFile;
+    private final ReportWriter reportWriter;
+    private final WebcatClient client;
+    private final Outbox outbox;
+    private final BatchPublisher batchPublisher;
+    private final AttachmentUploader attachmentUploader;
     private final List<StepDefinition> stepDefinitions;
-    private final ArrayList<StepDefinitionMatch> stepMatches;
+    private final StepDefinitionUsage stepDefinitionUsage = new StepDefinitionUsage();
+    private final long heapBudget;
+    private final WebcatMetrics metrics;
+
+    private final ReportModel model = new ReportModel();
 
-    private Map<String, Object> featureMap;
+    private ReportModel.FeatureNode featureNode;
     private String uri;
-    private List<Map> beforeHooks = new ArrayList<Map>();
+    private List<ReportModel.HookNode> beforeHooks = new ArrayList<ReportModel.HookNode>();
+
+    // cursor on the element being reported, so that every event is handled without searching the feature
+    private ReportModel.ElementNode featureElement;
+    private List<ReportModel.StepNode> steps;
+    private int matchedSteps;
+    private int reportedSteps;
+    private StepDefinitionUsage.Entry matchedUsage;
+
+    // the clocks when the reporter was created, to turn the monotonic times of the events into timestamps
+    private final long originNanos = System.nanoTime();
+    private final long originMillis = System.currentTimeMillis();
+    private long scenarioStart;
+    // the span of the scenarios of the feature, which may have run on several workers
+    private boolean featureTimed;
+    private long featureStart;
+    private long featureEnd;
+
+    // rough retained sizes of the report nodes, only used to decide when to spill finished elements to disk
+    private static final int ELEMENT_BYTES = 512;
+    private static final int STEP_BYTES = 256;
+    private static final int EVENT_BYTES = 96;
+    private long featureBytes;
 
     private enum Phase {step, match, embedding, output, result};
 
-    private Map getCurrentStep(Phase phase) {
-        String target = phase.ordinal() <= Phase.match.ordinal()?Phase.match.name():Phase.result.name();
-        Map lastWithValue = null;
-        for (Map stepOrHook : getSteps()) {
-            if (stepOrHook.get(target) == null) {
-                return stepOrHook;
-            } else {
-                lastWithValue = stepOrHook;
-            }
+    /**
+     * Matches and results arrive in step order, so the step of an event is the first one without a match, or
+     * without a result, i.e. the number of matches, or results, already reported. Once every step has one, it is
+     * the last step.
+     */
+    private ReportModel.StepNode getCurrentStep(Phase phase) {
+        final int reported = phase.ordinal() <= Phase.match.ordinal() ? matchedSteps : reportedSteps;
+        final List<ReportModel.StepNode> steps = getSteps();
+        if (steps.isEmpty()) {
+            return null;
         }
-        return lastWithValue;
+        return steps.get(Math.min(reported, steps.size() - 1));
     }
 
 
     public WebcatReporter(Appendable out, EnvironmentConfig envConfiguration, List<StepDefinition> stepDefinitions) {
+        this(out, envConfiguration, stepDefinitions, new WebcatMetrics());
+    }
+
+    /**
+     * @param metrics where the durations of the steps and hooks, and the time spent reporting them, are recorded
+     */
+    public WebcatReporter(Appendable out, EnvironmentConfig envConfiguration, List<StepDefinition> stepDefinitions,
+                          WebcatMetrics metrics) {
         this.stepDefinitions = stepDefinitions;
         this.config = envConfiguration;
+        this.metrics = metrics;
+
+
+        this.out = out;
+        this.codec = ReportCodecs.forName(config.getCodec());
+        this.gson = new GsonBuilder()
+                .registerTypeAdapter(Attachment.class, new Attachment.Adapter(ScreenshotStore.getInstance(), !config.isUploadingAttachments(), metrics))
+                .create();
+        this.heapBudget = config.getHeapBudget();
+        this.client = new WebcatClient(config.getConnectTimeout(), config.getSocketTimeout(), config.getRetries(), metrics);
+        this.outbox = new Outbox(config.getOutboxDirectory());
+        this.attachmentUploader = config.shouldPublishResults() && config.isUploadingAttachments() ?
+                new AttachmentUploader(config.getAttachmentHost(), config.getRaw(), ScreenshotStore.getInstance(), client, outbox) : null;
+        this.batchPublisher = config.shouldPublishResults() && config.getBatchSize() > 0 ?
+                new BatchPublisher(config.getBatchHost(), config.getBatchSize(), config.isCompressed(), codec, gson, client, outbox, config.getRaw(), config.getShard()) : null;
+        this.reportFile = config.shouldPublishResults() && batchPublisher == null ? createReportFile(codec, config.isCompressed()) : null;
+        this.reportWriter = openReportWriter();
+    }
+
+    private static File createReportFile(ReportCodec codec, boolean compressed) {
+        try {
+            final File file = File.createTempFile("webcat-report", compressed ? codec.getExtension() + ".gz" : codec.getExtension());
+            file.deleteOnExit();
+            return file;
+        } catch (IOException e) {
+            throw new CucumberException("Could not create the Webcat report file", e);
+        }
+    }
+
+    /**
+     * The report is written to the debug output and to the file that is published at the end of the run,
+     * features are streamed as soon as they are finished. The file to publish is encoded with the codec and
+     * compressed as it is written, so it can be uploaded as is.
+     */
+    private ReportWriter openReportWriter() {
+        final List<JsonWriter> writers = new ArrayList<JsonWriter>();
+
+        if(config.isDebug() && out != null) {
+            writers.add(ReportCodecs.debugCodec(codec).newWriter(ReportWriter.writerFor(out)));
+        }
+
+        if(reportFile != null) {
+            try {
+                final OutputStream stream = config.isCompressed() ?
+                        new GZIPOutputStream(new FileOutputStream(reportFile), WebcatClient.BUFFER_SIZE) :
+                        new FileOutputStream(reportFile);
+                writers.add(codec.newWriter(stream));
+            } catch (IOException e) {
+                throw new CucumberException("Could not open the Webcat report file", e);
+            }
+        }
 
-        this.stepMatches =  new ArrayList<StepDefinitionMatch>();
+        if(writers.isEmpty()) {
+            return null;
+        }
 
-        this.out = new NiceAppendable(out);
+        return new ReportWriter(writers, gson);
     }
 
     @Override
     public void uri(String uri) {
+        final long start = System.nanoTime();
         this.uri = uri;
+        metrics.event(start);
     }
 
     @Override
     public void feature(Feature feature) {
-        featureMap = feature.toMap();
-        featureMap.put("uri", uri);
-        featureMaps.add(featureMap);
+        final long start = System.nanoTime();
+        writeFeature();
+        featureNode = model.feature(feature, uri);
+        featureNode.queueWait = Context.getInstance().drainQueueWait();
+        featureTimed = false;
+        featureStart = Context.getInstance().nanoTime();
+        featureEnd = featureStart;
+        metrics.event(start);
+    }
+
+    private void writeFeature() {
+        if (featureNode != null) {
+            timeFeature();
+        }
+
+        final long start = System.nanoTime();
+        if (featureNode != null && reportWriter != null) {
+            reportWriter.writeFeature(featureNode);
+        }
+        if (featureNode != null && batchPublisher != null) {
+            batchPublisher.addFeature(featureNode);
+        }
+        if (featureNode != null) {
+            metrics.serialization(System.nanoTime() - start);
+        }
+        if (featureNode != null && featureNode.spill != null) {
+            featureNode.spill.delete();
+        }
+        featureNode = null;
+        featureElement = null;
+        steps = null;
+        featureBytes = 0;
     }
 
     @Override
     public void background(Background background) {
-        getFeatureElements().add(background.toMap());
+        final long start = System.nanoTime();
+        addFeatureElement(model.background(background));
+        metrics.event(start);
     }
 
     @Override
     public void scenario(Scenario scenario) {
-        getFeatureElements().add(scenario.toMap());
+        final long start = System.nanoTime();
+        addFeatureElement(model.scenario(scenario));
         if (beforeHooks.size() > 0) {
-            getFeatureElement().put("before", beforeHooks);
-            beforeHooks = new ArrayList<Map>();
+            featureElement.before = beforeHooks;
+            beforeHooks = new ArrayList<ReportModel.HookNode>();
         }
+
+        // each attempt of a scenario run again after failing is reported as an element of its own
+        final Integer attempt = Context.getInstance().drainAttempt();
+        if (attempt != null && attempt > 1) {
+            featureElement.attempt = attempt;
+        }
+        featureElement.queueWait = Context.getInstance().drainQueueWait();
+        metrics.event(start);
     }
 
     @Override
     public void scenarioOutline(ScenarioOutline scenarioOutline) {
-        getFeatureElements().add(scenarioOutline.toMap());
+        final long start = System.nanoTime();
+        addFeatureElement(model.scenarioOutline(scenarioOutline));
+        metrics.event(start);
     }
 
     @Override
     public void examples(Examples examples) {
-        getAllExamples().add(examples.toMap());
+        final long start = System.nanoTime();
+        getAllExamples().add(model.examples(examples));
+        featureBytes += ELEMENT_BYTES + (examples.getRows() == null ? 0 : examples.getRows().size() * EVENT_BYTES);
+        metrics.event(start);
     }
 
     @Override
     public void step(Step step) {
-        getSteps().add(step.toMap());
+        final long start = System.nanoTime();
+        getSteps().add(model.step(step));
+        featureBytes += STEP_BYTES;
+        metrics.event(start);
     }
 
     @Override
     public void match(Match match) {
-        getCurrentStep(Phase.match).put("match", match.toMap());
+        final long start = System.nanoTime();
+        getCurrentStep(Phase.match).match = model.match(match);
+        matchedSteps++;
+        featureBytes += EVENT_BYTES;
 
         if (match instanceof StepDefinitionMatch) {
-            final StepDefinitionMatch stepMatch = (StepDefinitionMatch)match;
-            stepMatches.add(stepMatch);
+            matchedUsage = stepDefinitionUsage.match((StepDefinitionMatch) match);
+        } else {
+            matchedUsage = null;
         }
+        metrics.event(start);
     }
 
     @Override
     public void embedding(String mimeType, byte[] data) {
-        final Map<String, String> embedding = new HashMap<String, String>();
-        embedding.put("mime_type", mimeType);
-        embedding.put("data", Base64.encodeBytes(data));
-        getEmbeddings().add(embedding);
+        final long start = System.nanoTime();
+        getEmbeddings().add(model.embedding(mimeType, attach(ScreenshotStore.getInstance().put(data))));
+        featureBytes += EVENT_BYTES;
+        metrics.screenshots(1);
+        metrics.event(start);
     }
 
     @Override
     public void write(String text) {
+        final long start = System.nanoTime();
         getOutput().add(text);
+        featureBytes += EVENT_BYTES + 2L * text.length();
+        metrics.event(start);
     }
 
     @Override
     public void result(Result result) {
-        final Map currentStep = getCurrentStep(Phase.result);
-        currentStep.put("result", result.toMap());
+        final long start = System.nanoTime();
+        final ReportModel.StepNode currentStep = getCurrentStep(Phase.result);
+        currentStep.result = model.result(result);
+        featureBytes += EVENT_BYTES + (result.getErrorMessage() == null ? 0 : 2L * result.getErrorMessage().length());
+        if (result.getDuration() != null) {
+            metrics.step(matchedUsage == null ? null : matchedUsage.pattern, result.getDuration());
+        }
+        if (matchedUsage != null) {
+            matchedUsage.addDuration(result.getDuration());
+            matchedUsage = null;
+        }
+
+        currentStep.screenshots = drainScreenshots();
+        reportedSteps++;
+        metrics.event(start);
+    }
+
+    /**
+     * @return the screenshots taken since the last step or hook
+     */
+    private List<Attachment> drainScreenshots() {
+        final List<String> ids = Context.getInstance().drainScreenshots();
+        final List<Attachment> screenshots = ids.isEmpty() ?
+                Collections.<Attachment>emptyList() : new ArrayList<Attachment>(ids.size());
+        for (String id : ids) {
+            screenshots.add(attach(id));
+        }
+        metrics.screenshots(ids.size());
+        return screenshots;
+    }
 
-        final Context context = Context.getInstance();
-        currentStep.put("screenshots", new ArrayList<String>(context.getScreenshots()));
-        context.clearScreenshots();
+    private Attachment attach(String id) {
+        if (attachmentUploader != null) {
+            attachmentUploader.upload(id);
+        }
+        return new Attachment(id);
     }
 
     @Override
     public void before(Match match, Result result) {
-        beforeHooks.add(buildHookMap(match,result));
+        final long start = System.nanoTime();
+        beforeHooks.add(model.hook(match, result));
+        featureBytes += EVENT_BYTES;
+        hook(result);
+        metrics.event(start);
     }
 
     @Override
     public void after(Match match, Result result) {
-        List<Map> hooks = getFeatureElement().get("after");
-        if (hooks == null) {
-            hooks = new ArrayList<Map>();
-            getFeatureElement().put("after", hooks);
+        final long start = System.nanoTime();
+        if (featureElement.after == null) {
+            featureElement.after = new ArrayList<ReportModel.HookNode>();
+        }
+        final ReportModel.HookNode hook = model.hook(match, result);
+        final List<Attachment> screenshots = drainScreenshots();
+        if (!screenshots.isEmpty()) {
+            hook.screenshots = screenshots;
         }
-        hooks.add(buildHookMap(match,result));
+        featureElement.after.add(hook);
+        featureBytes += EVENT_BYTES;
+        hook(result);
+        metrics.event(start);
     }
 
-    private Map buildHookMap(final Match match, final Result result) {
-        final Map hookMap = new HashMap();
-        hookMap.put("match", match.toMap());
-        hookMap.put("result", result.toMap());
-        return hookMap;
+    private void hook(Result result) {
+        if (result.getDuration() != null) {
+            metrics.hook(result.getDuration());
+        }
     }
 
+    /**
+     * @deprecated the durations of the steps come from Cucumber, in nanoseconds, and the reporter times the
+     * scenarios and features itself
+     */
+    @Deprecated
     public void appendDuration(final int timestamp) {
-        final Map result = (Map) getCurrentStep(Phase.result).get("result");
+        final ReportModel.ResultNode result = getCurrentStep(Phase.result).result;
         // check to make sure result exists (scenario outlines do not have results yet)
         if (result != null) {
             //convert to nanoseconds
             final long nanos = timestamp * 1000000000L;
-            result.put("duration", nanos);
+            result.duration = nanos;
         }
     }
 
     @Override
     public void eof() {
+        final long start = System.nanoTime();
+        writeFeature();
+        metrics.event(start);
     }
 
     @Override
@@ -187,57 +383,72 @@ public class WebcatReporter implements Reporter, Formatter {
             stepDefinitionContainers.add(stepDefinitionContainer);
         }
 
-        final List<StepDefinitionMatchContainer> stepMatchContainers = new ArrayList<StepDefinitionMatchContainer>();
-        for(StepDefinitionMatch stepMatch : stepMatches) {
-            final StepDefinitionMatchContainer stepMatchContainer = new StepDefinitionMatchContainer(stepMatch);
-            stepMatchContainers.add(stepMatchContainer);
+        writeFeature();
+
+        if(reportWriter != null) {
+            final long start = System.nanoTime();
+            reportWriter.finish(stepDefinitionContainers, stepDefinitionUsage.entries(), config.getRaw(), config.getShard());
+            metrics.serialization(System.nanoTime() - start);
+            try {
+                reportWriter.close();
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Could not close the Webcat report: " + e.getMessage());
+            }
         }
 
-        final Report output = new Report();
+        if(attachmentUploader != null) {
+            attachmentUploader.awaitUploads();
+        }
 
-        output.stepDefinitions = stepDefinitionContainers;
-        output.stepDefinitionMatches = stepMatchContainers;
-        output.features = featureMaps;
-        output.environment = config.getRaw();
+        if(reportFile != null) {
+            sendResult(reportFile);
+            reportFile.delete();
+        }
 
-        if(config.isDebug()) {
-            out.append(gson().toJson(output));
+        if(batchPublisher != null) {
+            logger.log(Level.INFO, "Completing run " + batchPublisher.getRunId() + " on " + config.getBatchHost());
+            batchPublisher.complete(stepDefinitionContainers, stepDefinitionUsage.entries());
         }
 
         if(config.shouldPublishResults()) {
-            sendResult(output);
+            // reports kept by previous runs that could not reach the server
+            outbox.replay(client);
         }
     }
 
     @Override
     public void close() {
-        out.close();
+        client.close();
+        outbox.close();
+
+        if(out instanceof Closeable) {
+            try {
+                ((Closeable) out).close();
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Could not close the Webcat report: " + e.getMessage());
+            }
+        }
     }
 
-    private void sendResult(Report output) {
-        logger.log(Level.INFO, "Sending results to " + config.getHost());
-
-        final HttpClient httpclient = HttpClients.createDefault();
-        final HttpPost httppost = new HttpPost(config.getHost());
-        httppost.setHeader("Content-Type", "application/json");
-        httppost.setHeader("Accept-Charset", "utf-8");
-
-        final String reportJSON = gson().toJson(output);
-        final StringEntity reportStringEntity = new StringEntity(reportJSON, StandardCharsets.UTF_8);
-        httppost.setEntity(reportStringEntity);
+    private void sendResult(File report) {
+        sendReport(report, codec, config, client, outbox);
+    }
 
-        final HttpResponse response;
+    /**
+     * Sends a whole report, encoded with {@code codec} and compressed if the configuration says so, and keeps it in
+     * the outbox if it can not be sent yet.
+     */
+    static void sendReport(File report, ReportCodec codec, EnvironmentConfig config, WebcatClient client, Outbox outbox) {
+        logger.log(Level.INFO, "Sending results to " + config.getHost());
 
-        //Execute
-        try {
-            response = httpclient.execute(httppost);
-        } catch (IOException e) {
-            logger.log(Level.SEVERE, "Could not send report to Webcat: " + e.getMessage());
-            return;
+        final FileEntity entity = new FileEntity(report, ReportCodecs.contentType(codec));
+        if(config.isCompressed()) {
+            entity.setContentEncoding(WebcatClient.GZIP);
         }
 
-        if (response.getStatusLine().getStatusCode() != 200) {
-            logger.log(Level.SEVERE, "Could not send report to Webcat. Server responded with error: " + response.getStatusLine());
+        if(client.post(config.getHost(), entity) == WebcatClient.Outcome.RETRY) {
+            logger.log(Level.WARNING, "Keeping the report in " + config.getOutboxDirectory() + " to send it later");
+            outbox.add(config.getHost(), report, config.isCompressed(), codec.isBinary());
         }
     }
 
@@ -248,76 +459,113 @@ public class WebcatReporter implements Reporter, Formatter {
 
     @Override
     public void startOfScenarioLifeCycle(Scenario scenario) {
-        // NoOp
+        // screenshots taken after the last step of the previous scenario do not belong to this one
+        Context.getInstance().clearScreenshots();
+        scenarioStart = Context.getInstance().nanoTime();
     }
 
     @Override
     public void endOfScenarioLifeCycle(Scenario scenario) {
-        // NoOp
+        final long end = Context.getInstance().nanoTime();
+        if (featureElement != null) {
+            featureElement.startTimestamp = timestamp(scenarioStart);
+            featureElement.duration = end - scenarioStart;
+        }
+
+        // with parallel scenarios the feature is only known to start with its first scenario and end with its last
+        if (!featureTimed || scenarioStart - featureStart < 0) {
+            featureStart = scenarioStart;
+        }
+        if (!featureTimed || end - featureEnd > 0) {
+            featureEnd = end;
+        }
+        featureTimed = true;
     }
 
-    private List<Map<String, Object>> getFeatureElements() {
-        List<Map<String, Object>> featureElements = (List) featureMap.get("elements");
-        if (featureElements == null) {
-            featureElements = new ArrayList<Map<String, Object>>();
-            featureMap.put("elements", featureElements);
+    private void timeFeature() {
+        final long end = Context.getInstance().nanoTime();
+        if (!featureTimed || end - featureEnd > 0) {
+            featureEnd = end;
         }
-        return featureElements;
+        featureNode.startTimestamp = timestamp(featureStart);
+        featureNode.duration = featureEnd - featureStart;
     }
 
-    private Map<Object, List<Map>> getFeatureElement() {
-        if (getFeatureElements().size() > 0) {
-            return (Map) getFeatureElements().get(getFeatureElements().size() - 1);
-        } else {
-            return null;
+    /**
+     * @return the time since the epoch, in milliseconds, of a {@link System#nanoTime()}
+     */
+    private long timestamp(long nanos) {
+        return originMillis + (nanos - originNanos) / 1000000L;
+    }
+
+    private void addFeatureElement(ReportModel.ElementNode element) {
+        if (featureBytes > heapBudget && featureNode.elements != null) {
+            spillFeatureElements();
         }
+        featureBytes += ELEMENT_BYTES;
+
+        if (featureNode.elements == null) {
+            featureNode.elements = new ArrayList<ReportModel.ElementNode>();
+        }
+        featureNode.elements.add(element);
+        featureElement = element;
+        steps = null;
+        matchedSteps = 0;
+        reportedSteps = 0;
+    }
+
+    /**
+     * Moves the elements of the feature, which are all finished once a new one starts, to disk.
+     */
+    private void spillFeatureElements() {
+        if (featureNode.spill == null) {
+            logger.log(Level.FINE, "Feature " + featureNode.uri + " exceeds the heap budget, writing its finished scenarios to disk");
+            featureNode.spill = new FeatureSpill(gson);
+        }
+        for (ReportModel.ElementNode finished : featureNode.elements) {
+            featureNode.spill.add(finished);
+        }
+        featureNode.elements = null;
+        featureBytes = 0;
     }
 
-    private List<Map> getAllExamples() {
-        List<Map> allExamples = getFeatureElement().get("examples");
-        if (allExamples == null) {
-            allExamples = new ArrayList<Map>();
-            getFeatureElement().put("examples", allExamples);
+    private List<ReportModel.ExamplesNode> getAllExamples() {
+        if (featureElement.examples == null) {
+            featureElement.examples = new ArrayList<ReportModel.ExamplesNode>();
         }
-        return allExamples;
+        return featureElement.examples;
     }
 
-    private List<Map> getSteps() {
-        List<Map> steps = getFeatureElement().get("steps");
+    private List<ReportModel.StepNode> getSteps() {
         if (steps == null) {
-            steps = new ArrayList<Map>();
-            getFeatureElement().put("steps", steps);
+            steps = new ArrayList<ReportModel.StepNode>();
+            featureElement.steps = steps;
         }
         return steps;
     }
 
-    private List<Map<String, String>> getEmbeddings() {
-        List<Map<String, String>> embeddings = (List<Map<String, String>>) getCurrentStep(Phase.embedding).get("embeddings");
-        if (embeddings == null) {
-            embeddings = new ArrayList<Map<String, String>>();
-            getCurrentStep(Phase.embedding).put("embeddings", embeddings);
+    private List<ReportModel.EmbeddingNode> getEmbeddings() {
+        final ReportModel.StepNode currentStep = getCurrentStep(Phase.embedding);
+        if (currentStep.embeddings == null) {
+            currentStep.embeddings = new ArrayList<ReportModel.EmbeddingNode>();
         }
-        return embeddings;
+        return currentStep.embeddings;
     }
 
     private List<String> getOutput() {
-        List<String> output = (List<String>) getCurrentStep(Phase.output).get("output");
-        if (output == null) {
-            output = new ArrayList<String>();
-            getCurrentStep(Phase.output).put("output", output);
+        final ReportModel.StepNode currentStep = getCurrentStep(Phase.output);
+        if (currentStep.output == null) {
+            currentStep.output = new ArrayList<String>();
         }
-        return output;
+        return currentStep.output;
     }
 
+    /**
+     * @return the serializer of the report, shared by the report writer, the batches and the spill files. How the
+     * report is laid out is up to the {@link ReportCodec}.
+     */
     protected Gson gson() {
-        return new GsonBuilder().setPrettyPrinting().create();
-    }
-
-    static class Report {
-        public List<StepDefinitionContainer> stepDefinitions;
-        public List<StepDefinitionMatchContainer> stepDefinitionMatches;
-        public List<Map<String, Object>> features;
-        public Map<EnvironmentConfig.Config, String> environment;
+        return gson;
     }
 
     /**
@@ -369,37 +617,4 @@ public class WebcatReporter implements Reporter, Formatter {
             this.isTransposed = paramInfo.isTransposed();
         }
     }
-
-    static class StackTraceElementContainer {
-        public final String className;
-        public final String fileName;
-        public final int lineNumber;
-        public final String methodName;
-        public final boolean isNativeMethod;
-
-        public StackTraceElementContainer(StackTraceElement location) {
-            this.className = location.getClassName();
-            this.fileName = location.getFileName();
-            this.lineNumber = location.getLineNumber();
-            this.methodName = location.getMethodName();
-            this.isNativeMethod = location.isNativeMethod();
-        }
-    }
-
-    /**
-     * Contains for usage-entries of steps
-     */
-    static class StepDefinitionMatchContainer {
-        public final String location;
-        public final String pattern;
-        public final String stepName;
-        public final StackTraceElementContainer stepLocation;
-
-        public StepDefinitionMatchContainer(StepDefinitionMatch stepMatch) {
-            this.location = stepMatch.getLocation();
-            this.pattern = stepMatch.getPattern();
-            this.stepName = stepMatch.getStepName();
-            this.stepLocation = new StackTraceElementContainer(stepMatch.getStepLocation());
-        }
-    }
 }
\ No newline at end of file
@@ -0,0 +1,112 @@
+package com.byclosure.webcat;
+
+import cucumber.runtime.io.MultiLoader;
+import cucumber.runtime.io.Resource;
+import cucumber.runtime.io.ResourceLoader;
+import cucumber.runtime.io.ResourceLoaderClassFinder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.*;
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ClasspathIndexTest {
+    private static final String FEATURES = "classpath:com/byclosure/webcat";
+    private static final List<String> GLUE = Collections.singletonList("classpath:com/byclosure/webcat");
+
+    private final ClassLoader classLoader = getClass().getClassLoader();
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void findsTheGlueAndFeaturesOfThePreviousScanWithoutScanning() throws Exception {
+        final File file = new File(temporaryFolder.getRoot(), "index.properties");
+        final ClasspathIndex scanned = new ClasspathIndex(file, classLoader);
+        final ResourceLoader scanningLoader = scanned.resourceLoader(new MultiLoader(classLoader), GLUE);
+        final List<String> paths = paths(scanningLoader.resources(FEATURES, ".feature"));
+        assertTrue(new ResourceLoaderClassFinder(scanningLoader, classLoader)
+                .getDescendants(Object.class, "com.byclosure.webcat").size() > 1);
+        scanned.save();
+
+        final ResourceLoader indexed = new ClasspathIndex(file, classLoader).resourceLoader(new FailingScanner(), GLUE);
+
+        final Collection<Class<?>> glue = new ResourceLoaderClassFinder(indexed, classLoader).getDescendants(Object.class, "com.byclosure.webcat");
+        assertEquals(Collections.<Class<?>>singletonList(Stepdefs.class), new ArrayList<Class<?>>(glue));
+
+        final Iterable<Resource> features = indexed.resources(FEATURES, ".feature");
+        assertEquals(paths, paths(features));
+        assertEquals(3, paths.size());
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(features.iterator().next().getInputStream(), "UTF-8"));
+        try {
+            assertTrue(reader.readLine().startsWith("Feature:"));
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void scansAgainWhenTheClasspathChanged() throws Exception {
+        final File file = new File(temporaryFolder.getRoot(), "index.properties");
+        final ClasspathIndex scanned = new ClasspathIndex(file, classLoader);
+        scanned.resourceLoader(new MultiLoader(classLoader), GLUE).resources(FEATURES, ".feature");
+        scanned.save();
+
+        final Properties properties = new Properties();
+        final InputStream input = new FileInputStream(file);
+        properties.load(input);
+        input.close();
+        properties.setProperty("fingerprint", "0");
+        final OutputStream output = new FileOutputStream(file);
+        properties.store(output, null);
+        output.close();
+
+        final ClasspathIndex stale = new ClasspathIndex(file, classLoader);
+        final CountingScanner scanner = new CountingScanner(new MultiLoader(classLoader));
+        assertEquals(3, paths(stale.resourceLoader(scanner, GLUE).resources(FEATURES, ".feature")).size());
+        assertEquals(1, scanner.scans);
+    }
+
+    @Test
+    public void fingerprintsJarsByTheirContent() throws Exception {
+        final List<File> classpath = ClasspathIndex.classpath(classLoader);
+
+        assertEquals(ClasspathIndex.fingerprint(classpath, null), ClasspathIndex.fingerprint(classpath, null));
+        assertTrue(!ClasspathIndex.fingerprint(classpath, null).equals(
+                ClasspathIndex.fingerprint(classpath.subList(0, classpath.size() - 1), null)));
+    }
+
+    private static List<String> paths(Iterable<Resource> resources) {
+        final List<String> paths = new ArrayList<String>();
+        for (Resource resource : resources) {
+            paths.add(resource.getPath());
+        }
+        return paths;
+    }
+
+    private static class FailingScanner implements ResourceLoader {
+        @Override
+        public Iterable<Resource> resources(String path, String suffix) {
+            throw new AssertionError("Scanned " + path);
+        }
+    }
+
+    private static class CountingScanner implements ResourceLoader {
+        private final ResourceLoader loader;
+        private int scans = 0;
+
+        CountingScanner(ResourceLoader loader) {
+            this.loader = loader;
+        }
+
+        @Override
+        public Iterable<Resource> resources(String path, String suffix) {
+            scans++;
+            return loader.resources(path, suffix);
+        }
+    }
+}
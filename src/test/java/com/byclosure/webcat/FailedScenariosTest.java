@@ -0,0 +1,73 @@
+package com.byclosure.webcat;
+
+import gherkin.formatter.model.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+public class FailedScenariosTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void writesTheFailedScenariosAsARerunFile() throws Exception {
+        final File file = new File(temporaryFolder.getRoot(), "rerun/suite.txt");
+        final FailedScenarios failedScenarios = new FailedScenarios(file);
+
+        failedScenarios.uri("com/example/a.feature");
+        run(failedScenarios, 7, Result.FAILED);
+        run(failedScenarios, 3, Result.FAILED);
+        run(failedScenarios, 12, Result.PASSED);
+        failedScenarios.uri("com/example/b.feature");
+        run(failedScenarios, 4, Result.SKIPPED.getStatus());
+        failedScenarios.uri("com/example/c.feature");
+        failedScenarios.startOfScenarioLifeCycle(scenario(9));
+        failedScenarios.after(null, new Result(Result.FAILED, 1L, null));
+        failedScenarios.endOfScenarioLifeCycle(scenario(9));
+        failedScenarios.done();
+
+        assertEquals(Arrays.asList("com/example/a.feature:3:7", "com/example/c.feature:9"), failedScenarios.getFeaturePaths());
+        assertEquals("com/example/a.feature:3:7 com/example/c.feature:9", read(file));
+    }
+
+    @Test
+    public void leavesOutScenariosThatPassedOnALaterAttempt() throws Exception {
+        final File file = new File(temporaryFolder.getRoot(), "suite.txt");
+        final FailedScenarios failedScenarios = new FailedScenarios(file);
+
+        failedScenarios.uri("com/example/flaky.feature");
+        run(failedScenarios, 5, Result.FAILED);
+        run(failedScenarios, 5, Result.PASSED);
+        failedScenarios.done();
+
+        assertEquals(Collections.<String>emptyList(), failedScenarios.getFeaturePaths());
+        assertEquals("", read(file));
+    }
+
+    private static void run(FailedScenarios failedScenarios, int line, String status) {
+        failedScenarios.startOfScenarioLifeCycle(scenario(line));
+        failedScenarios.scenario(scenario(line));
+        failedScenarios.result(new Result(status, 1L, null));
+        failedScenarios.endOfScenarioLifeCycle(scenario(line));
+    }
+
+    private static Scenario scenario(int line) {
+        return new Scenario(Collections.<Comment>emptyList(), Collections.<Tag>emptyList(), "Scenario", "Line " + line, "", line, "scenario-" + line);
+    }
+
+    private static String read(File file) throws IOException {
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            final String line = reader.readLine();
+            return line == null ? "" : line;
+        } finally {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.byclosure.webcat;
+
+import cucumber.runtime.io.MultiLoader;
+import cucumber.runtime.io.ResourceLoader;
+import cucumber.runtime.model.*;
+import gherkin.deps.com.google.gson.Gson;
+import gherkin.formatter.model.Step;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.*;
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+
+public class FeatureCacheTest {
+    private static final List<String> FEATURES = Collections.singletonList("classpath:com/byclosure/webcat");
+
+    private final ResourceLoader resourceLoader = new MultiLoader(getClass().getClassLoader());
+    private final PrintStream out = new PrintStream(new ByteArrayOutputStream());
+    private final Gson gson = new Gson();
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void loadsTheSameFeaturesAsCucumberFromTheCache() throws Exception {
+        final File directory = temporaryFolder.newFolder("features");
+        final List<Object> filters = Collections.emptyList();
+        final String expected = describe(CucumberFeature.load(resourceLoader, FEATURES, filters, out));
+
+        assertEquals(expected, describe(new FeatureCache(directory).load(resourceLoader, FEATURES, filters, out)));
+        assertEquals(3, directory.listFiles().length);
+        assertEquals(expected, describe(new FeatureCache(directory).load(resourceLoader, FEATURES, filters, out)));
+    }
+
+    @Test
+    public void filtersTheCachedFeatures() throws Exception {
+        final File directory = temporaryFolder.newFolder("features");
+        new FeatureCache(directory).load(resourceLoader, FEATURES, Collections.emptyList(), out);
+
+        final List<Object> tags = Collections.<Object>singletonList("~@foo");
+        assertEquals(describe(CucumberFeature.load(resourceLoader, FEATURES, tags, out)),
+                describe(new FeatureCache(directory).load(resourceLoader, FEATURES, tags, out)));
+
+        final List<String> line = Collections.singletonList("classpath:com/byclosure/webcat/basic_arithmetic.feature:12:30");
+        final List<Object> none = Collections.emptyList();
+        assertEquals(describe(CucumberFeature.load(resourceLoader, line, none, out)),
+                describe(new FeatureCache(directory).load(resourceLoader, line, none, out)));
+    }
+
+    @Test
+    public void parsesTheFeaturesThatChanged() throws Exception {
+        final File directory = temporaryFolder.newFolder("features");
+        final File feature = new File(temporaryFolder.newFolder("src"), "changing.feature");
+        final List<String> featurePaths = Collections.singletonList(feature.getPath());
+        final List<Object> filters = Collections.emptyList();
+
+        write(feature, "Feature: Changing\n  Scenario: First\n    Given a step\n");
+        assertEquals("First", new FeatureCache(directory).load(resourceLoader, featurePaths, filters, out)
+                .get(0).getFeatureElements().get(0).getGherkinModel().getName());
+
+        write(feature, "# language: pt\nFuncionalidade: Mudando\n  Cen\u00e1rio: Segundo\n    Dado um passo\n");
+        final CucumberFeature changed = new FeatureCache(directory).load(resourceLoader, featurePaths, filters, out).get(0);
+        assertEquals("Segundo", changed.getFeatureElements().get(0).getGherkinModel().getName());
+        assertEquals("pt", changed.getI18n().getIsoCode());
+        assertEquals(1, directory.listFiles().length);
+    }
+
+    @Test
+    public void reportsTheUriOfTheFeaturePathTheFeatureIsLoadedThrough() throws Exception {
+        final File directory = temporaryFolder.newFolder("features");
+        final File root = temporaryFolder.newFolder("src");
+        final File feature = new File(new File(root, "checkout"), "paying.feature");
+        feature.getParentFile().mkdirs();
+        write(feature, "Feature: Paying\n  Scenario: Card\n    Given a step\n");
+        final List<Object> filters = Collections.emptyList();
+
+        assertEquals("checkout/paying.feature", new FeatureCache(directory).load(resourceLoader,
+                Collections.singletonList(root.getPath()), filters, out).get(0).getPath());
+        assertEquals("paying.feature", new FeatureCache(directory).load(resourceLoader,
+                Collections.singletonList(feature.getParent()), filters, out).get(0).getPath());
+        assertEquals(feature.getPath(), new FeatureCache(directory).load(resourceLoader,
+                Collections.singletonList(feature.getPath()), filters, out).get(0).getPath());
+        assertEquals(1, directory.listFiles().length);
+    }
+
+    private static void write(File file, String text) throws IOException {
+        final Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write(text);
+        } finally {
+            writer.close();
+        }
+    }
+
+    private String describe(List<CucumberFeature> features) {
+        final StringBuilder description = new StringBuilder();
+        for (CucumberFeature feature : features) {
+            description.append(feature.getPath()).append(' ').append(feature.getI18n().getIsoCode()).append('\n');
+            description.append(gson.toJson(feature.getGherkinFeature())).append('\n');
+            for (CucumberTagStatement element : feature.getFeatureElements()) {
+                description.append(gson.toJson(element.getGherkinModel())).append('\n');
+                if (element instanceof CucumberScenario) {
+                    final CucumberBackground background = ((CucumberScenario) element).getCucumberBackground();
+                    if (background != null) {
+                        describe(description, background.getSteps());
+                    }
+                    describe(description, ((CucumberScenario) element).getSteps());
+                } else if (element instanceof CucumberScenarioOutline) {
+                    describe(description, ((CucumberScenarioOutline) element).getSteps());
+                    for (CucumberExamples examples : ((CucumberScenarioOutline) element).getCucumberExamplesList()) {
+                        description.append(gson.toJson(examples.getExamples())).append('\n');
+                    }
+                }
+            }
+        }
+        return description.toString();
+    }
+
+    private void describe(StringBuilder description, List<Step> steps) {
+        for (Step step : steps) {
+            description.append(gson.toJson(step)).append('\n');
+        }
+    }
+}
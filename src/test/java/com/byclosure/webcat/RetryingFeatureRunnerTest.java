@@ -0,0 +1,167 @@
+package com.byclosure.webcat;
+
+import com.byclosure.webcat.context.Context;
+import com.byclosure.webcat.parallel.EventBuffer;
+import cucumber.runtime.Runtime;
+import cucumber.runtime.RuntimeOptions;
+import cucumber.runtime.io.MultiLoader;
+import cucumber.runtime.io.ResourceLoader;
+import cucumber.runtime.io.ResourceLoaderClassFinder;
+import cucumber.runtime.junit.JUnitReporter;
+import cucumber.runtime.model.CucumberFeature;
+import org.junit.Test;
+import org.junit.runner.Description;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunListener;
+import org.junit.runner.notification.RunNotifier;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RetryingFeatureRunnerTest {
+    @Test
+    public void runsAFailingScenarioAgainUntilItPasses() {
+        final FlakyAttempt attempt = new FlakyAttempt(2);
+        final RecordingListener listener = new RecordingListener();
+
+        RetryingFeatureRunner.run(attempt, notifier(listener), 3);
+
+        assertEquals(3, attempt.runs);
+        assertEquals(Arrays.asList(1, 2, 3), attempt.numbers);
+        assertNull(Context.getInstance().drainAttempt());
+        assertEquals(1, listener.started.size());
+        assertEquals(0, listener.failures.size());
+        assertEquals(1, listener.finished.size());
+    }
+
+    @Test
+    public void reportsTheLastAttemptOfAScenarioThatKeepsFailing() {
+        final FlakyAttempt attempt = new FlakyAttempt(5);
+        final RecordingListener listener = new RecordingListener();
+
+        RetryingFeatureRunner.run(attempt, notifier(listener), 3);
+
+        assertEquals(3, attempt.runs);
+        assertEquals(1, listener.started.size());
+        assertEquals(1, listener.failures.size());
+        assertEquals("attempt 3", listener.failures.get(0).getMessage());
+    }
+
+    @Test
+    public void runsEveryScenarioOnceWithASingleAttempt() {
+        final FlakyAttempt attempt = new FlakyAttempt(1);
+        final RecordingListener listener = new RecordingListener();
+
+        RetryingFeatureRunner.run(attempt, notifier(listener), 1);
+
+        assertEquals(1, attempt.runs);
+        assertEquals(Collections.singletonList(null), attempt.numbers);
+        assertEquals(1, listener.failures.size());
+    }
+
+    @Test
+    public void notifiesEveryAttemptOfTheScenariosAndExamplesOnTheirDescriptions() throws Exception {
+        final ClassLoader classLoader = getClass().getClassLoader();
+        final ResourceLoader resourceLoader = new MultiLoader(classLoader);
+        // without glue every step is undefined, which fails every attempt of a strict run
+        final RuntimeOptions runtimeOptions = new RuntimeOptions(Arrays.asList("--strict", "--glue", "classpath:none"));
+        final CucumberFeature feature = CucumberFeature.load(resourceLoader,
+                Collections.singletonList("classpath:com/byclosure/webcat/basic_arithmetic.feature"),
+                Collections.emptyList(), new PrintStream(new ByteArrayOutputStream())).get(0);
+        final EventBuffer buffer = new EventBuffer();
+        final RetryingFeatureRunner runner = new RetryingFeatureRunner(feature,
+                runtime(resourceLoader, classLoader, runtimeOptions), new JUnitReporter(buffer, buffer, true), 2);
+        final List<Description> descriptions = descendants(runner.getDescription());
+
+        final RecordingListener listener = new RecordingListener();
+        runner.run(notifier(listener));
+        // as a worker runs it, with a runtime and reporter of its own
+        runner.run(runtime(resourceLoader, classLoader, runtimeOptions), new JUnitReporter(buffer, buffer, true),
+                notifier(listener));
+
+        // two scenarios of three steps and four examples of six, with the step of the background
+        assertEquals(2 * (2 * 4 + 4 * 7), listener.started.size());
+        for (Description description : listener.started) {
+            assertTrue(description.toString(), descriptions.contains(description));
+        }
+    }
+
+    private static Runtime runtime(ResourceLoader resourceLoader, ClassLoader classLoader, RuntimeOptions runtimeOptions) {
+        return new Runtime(resourceLoader, new ResourceLoaderClassFinder(resourceLoader, classLoader), classLoader,
+                runtimeOptions);
+    }
+
+    private static List<Description> descendants(Description description) {
+        final List<Description> descendants = new ArrayList<Description>();
+        for (Description child : description.getChildren()) {
+            descendants.add(child);
+            descendants.addAll(descendants(child));
+        }
+        return descendants;
+    }
+
+    private static RunNotifier notifier(RunListener listener) {
+        final RunNotifier notifier = new RunNotifier();
+        notifier.addListener(listener);
+        return notifier;
+    }
+
+    /**
+     * Fails its first runs.
+     */
+    private static class FlakyAttempt implements RetryingFeatureRunner.Attempt {
+        private final Description description = Description.createTestDescription(RetryingFeatureRunnerTest.class, "flaky");
+        private final int failures;
+        int runs = 0;
+        final List<Integer> numbers = new ArrayList<Integer>();
+
+        FlakyAttempt(int failures) {
+            this.failures = failures;
+        }
+
+        @Override
+        public String getName() {
+            return "Scenario: Flaky";
+        }
+
+        @Override
+        public void run(RunNotifier notifier) {
+            runs++;
+            numbers.add(Context.getInstance().drainAttempt());
+            notifier.fireTestStarted(description);
+            if (runs <= failures) {
+                notifier.fireTestFailure(new Failure(description, new AssertionError("attempt " + runs)));
+            }
+            notifier.fireTestFinished(description);
+        }
+    }
+
+    private static class RecordingListener extends RunListener {
+        final List<Description> started = new ArrayList<Description>();
+        final List<Failure> failures = new ArrayList<Failure>();
+        final List<Description> finished = new ArrayList<Description>();
+
+        @Override
+        public void testStarted(Description description) {
+            started.add(description);
+        }
+
+        @Override
+        public void testFailure(Failure failure) {
+            failures.add(failure);
+        }
+
+        @Override
+        public void testFinished(Description description) {
+            finished.add(description);
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.byclosure.webcat;
+
+import cucumber.api.CucumberOptions;
+import org.junit.runner.RunWith;
+
+@RunWith(WebcatRunner.class)
+@WebcatOptions(threads = 4, parallelScenarios = true)
+@CucumberOptions(
+		dryRun = false)
+public class RunCukesParallelScenariosTest {
+}
@@ -0,0 +1,88 @@
+package com.byclosure.webcat;
+
+import cucumber.api.CucumberOptions;
+import cucumber.runtime.RuntimeOptions;
+import cucumber.runtime.io.MultiLoader;
+import cucumber.runtime.model.CucumberFeature;
+import cucumber.runtime.model.CucumberTagStatement;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+
+public class WebcatRuntimeOptionsFactoryTest {
+    private static final String ARITHMETIC = "com/byclosure/webcat/basic_arithmetic.feature";
+    private static final String SHOPPING = "com/byclosure/webcat/shopping.feature";
+
+    @Test
+    public void runsTheScenariosAtTheGivenLines() {
+        final Intent intent = Intent.parse("{\"type\": \"scenarios\", \"value\": [\"" + ARITHMETIC + ":12\", \"" +
+                ARITHMETIC + ":17\", \"" + SHOPPING + ":3\"]}");
+
+        final RuntimeOptions options = new WebcatRuntimeOptionsFactory(RunCukesTest.class).create(intent);
+
+        assertEquals(Arrays.asList("classpath:" + ARITHMETIC + ":12:17", "classpath:" + SHOPPING + ":3"), options.getFeaturePaths());
+        assertEquals(Arrays.asList("Another Addition", "Many additions", "Give correct change"), scenarioNames(options));
+    }
+
+    @Test
+    public void runsAWholeFeatureNamedWithoutALine() {
+        assertEquals(Collections.singletonList("classpath:" + ARITHMETIC),
+                WebcatRuntimeOptionsFactory.scenarioPaths(Arrays.asList(ARITHMETIC + ":7", ARITHMETIC)));
+    }
+
+    @Test
+    public void leavesOutTheOptionFiltersThatConflictWithTheLines() {
+        final Intent intent = new Intent(Intent.Type.SCENARIOS, Collections.singletonList(ARITHMETIC + ":7"));
+
+        final RuntimeOptions options = new WebcatRuntimeOptionsFactory(Filtered.class).create(intent);
+
+        assertEquals(Collections.emptyList(), options.getFilters());
+        assertEquals(Collections.singletonList("Addition"), scenarioNames(options));
+    }
+
+    @Test
+    public void addsTheTagsToTheOptionTags() {
+        final Intent intent = Intent.parse("{\"type\": \"tags\", \"value\": [\"~@bar\"]}");
+
+        final RuntimeOptions options = new WebcatRuntimeOptionsFactory(Filtered.class).create(intent);
+
+        assertEquals(Arrays.<Object>asList("@foo", "~@bar"), options.getFilters());
+        assertEquals(Arrays.asList("Addition", "Another Addition", "Many additions"), scenarioNames(options));
+    }
+
+    @Test
+    public void runsTheScenariosWithTheGivenNames() {
+        final Intent intent = Intent.parse("{\"type\": \"names\", \"value\": [\"Addition\", \"Give correct change\"]}");
+
+        final RuntimeOptions options = new WebcatRuntimeOptionsFactory(RunCukesTest.class).create(intent);
+
+        assertEquals(Arrays.asList("Addition", "Give correct change"), scenarioNames(options));
+    }
+
+    @Test
+    public void runsWhatTheRunnerIsConfiguredWithoutAnIntent() {
+        final RuntimeOptions options = new WebcatRuntimeOptionsFactory(Filtered.class)
+                .create(Intent.parse(EnvironmentConfig.DEFAULT_INTENT));
+
+        assertEquals(Collections.<Object>singletonList("@foo"), options.getFilters());
+        assertEquals(Intent.Type.FEATURES, Intent.parse("{\"type\": \"unknown\", \"value\": [\"x\"]}").getType());
+        assertEquals(Collections.emptyList(), Intent.parse("{\"type\": \"unknown\", \"value\": [\"x\"]}").getValues());
+    }
+
+    private static List<String> scenarioNames(RuntimeOptions options) {
+        final List<String> names = new ArrayList<String>();
+        final List<CucumberFeature> features = options.cucumberFeatures(new MultiLoader(WebcatRuntimeOptionsFactoryTest.class.getClassLoader()));
+        for (CucumberFeature feature : features) {
+            for (CucumberTagStatement element : feature.getFeatureElements()) {
+                names.add(element.getGherkinModel().getName());
+            }
+        }
+        return names;
+    }
+
+    @CucumberOptions(tags = "@foo")
+    private static class Filtered {
+    }
+}
@@ -0,0 +1,175 @@
+package com.byclosure.webcat.context;
+
+import com.byclosure.webcat.parallel.EventBuffer;
+import com.byclosure.webcat.parallel.OrderedReplay;
+import gherkin.formatter.Formatter;
+import gherkin.formatter.Reporter;
+import gherkin.formatter.model.Comment;
+import gherkin.formatter.model.Match;
+import gherkin.formatter.model.Result;
+import gherkin.formatter.model.Scenario;
+import gherkin.formatter.model.Tag;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ContextTest {
+    private static final int THREADS = 8;
+    private static final int SCENARIOS = 64;
+    private static final int STEPS = 5;
+    private static final int SCREENSHOTS = 3;
+
+    @Test
+    public void drainingHandsOverTheScreenshotsOfTheStep() {
+        final Context context = new Context();
+        context.getScreenshots().add("a");
+
+        final List<String> drained = context.drainScreenshots();
+        context.getScreenshots().add("b");
+
+        assertEquals(Collections.singletonList("a"), drained);
+        assertEquals(Collections.singletonList("b"), context.getScreenshots());
+    }
+
+    @Test
+    public void replayedEventsKeepTheTimeTheyHappenedAt() {
+        final EventBuffer buffer = new EventBuffer();
+        final long before = System.nanoTime();
+        buffer.result(new Result(Result.PASSED, 0L, null));
+        final long after = System.nanoTime();
+        buffer.setQueueWait(42L);
+
+        final RecordingReporter reporter = new RecordingReporter();
+        buffer.replay(nullFormatter(), reporter);
+
+        final long time = reporter.times.get(0);
+        assertTrue(time - before >= 0 && after - time >= 0);
+        assertEquals(Long.valueOf(42L), reporter.queueWaits.get(0));
+        assertTrue(System.nanoTime() - Context.getInstance().nanoTime() <= 0);
+        assertNull(Context.getInstance().drainQueueWait());
+    }
+
+    @Test
+    public void screenshotsNeverLandOnAnotherStep() throws Exception {
+        final RecordingReporter reporter = new RecordingReporter();
+        final OrderedReplay replay = new OrderedReplay(nullFormatter(), reporter);
+        final ExecutorService workers = Executors.newFixedThreadPool(THREADS);
+        final CountDownLatch start = new CountDownLatch(1);
+
+        final List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (int i = 0; i < SCENARIOS; i++) {
+            final int scenario = i;
+            final int index = replay.nextIndex();
+            futures.add(workers.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    start.await();
+                    final EventBuffer buffer = new EventBuffer();
+                    try {
+                        runScenario(scenario, buffer);
+                    } finally {
+                        // replayed on whichever worker completes the prefix, while the others keep running
+                        replay.complete(index, buffer);
+                    }
+                    return null;
+                }
+            }));
+        }
+
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(1, TimeUnit.MINUTES);
+        }
+        workers.shutdown();
+
+        assertEquals(SCENARIOS * STEPS, reporter.results.size());
+        for (int i = 0; i < reporter.results.size(); i++) {
+            assertEquals("step " + i, expectedScreenshots(i / STEPS, i % STEPS), reporter.results.get(i));
+        }
+    }
+
+    private static void runScenario(int scenario, EventBuffer buffer) {
+        buffer.startOfScenarioLifeCycle(new Scenario(Collections.<Comment>emptyList(), Collections.<Tag>emptyList(),
+                "Scenario", "scenario " + scenario, "", scenario, "scenario-" + scenario));
+
+        for (int step = 0; step < STEPS; step++) {
+            for (int shot = 0; shot < SCREENSHOTS; shot++) {
+                Context.getInstance().addScreenshot(screenshot(scenario, step, shot));
+                Thread.yield();
+            }
+            buffer.result(new Result(Result.PASSED, 0L, null));
+        }
+
+        // taken by an after hook, once the last step has been reported
+        Context.getInstance().addScreenshot(screenshot(scenario, STEPS, 0));
+    }
+
+    private static List<String> expectedScreenshots(int scenario, int step) {
+        final List<String> ids = new ArrayList<String>();
+        for (int shot = 0; shot < SCREENSHOTS; shot++) {
+            ids.add(ScreenshotStore.getInstance().put(screenshot(scenario, step, shot)));
+        }
+        return ids;
+    }
+
+    private static byte[] screenshot(int scenario, int step, int shot) {
+        return ("scenario " + scenario + " step " + step + " shot " + shot).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static Formatter nullFormatter() {
+        return (Formatter) Proxy.newProxyInstance(Formatter.class.getClassLoader(), new Class[]{Formatter.class},
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        return null;
+                    }
+                });
+    }
+
+    /**
+     * Takes the screenshots out of the context on each result, like the WebcatReporter does.
+     */
+    private static class RecordingReporter implements Reporter {
+        final List<List<String>> results = new ArrayList<List<String>>();
+        final List<Long> times = new ArrayList<Long>();
+        final List<Long> queueWaits = new ArrayList<Long>();
+
+        @Override
+        public void result(Result result) {
+            results.add(Context.getInstance().drainScreenshots());
+            times.add(Context.getInstance().nanoTime());
+            queueWaits.add(Context.getInstance().drainQueueWait());
+        }
+
+        @Override
+        public void before(Match match, Result result) {
+        }
+
+        @Override
+        public void after(Match match, Result result) {
+        }
+
+        @Override
+        public void match(Match match) {
+        }
+
+        @Override
+        public void embedding(String mimeType, byte[] data) {
+        }
+
+        @Override
+        public void write(String text) {
+        }
+    }
+}
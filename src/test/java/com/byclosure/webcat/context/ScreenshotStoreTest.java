@@ -0,0 +1,31 @@
+package com.byclosure.webcat.context;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class ScreenshotStoreTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void storesIdenticalScreenshotsOnce() {
+        final ScreenshotStore store = new ScreenshotStore(temporaryFolder.getRoot());
+        final byte[] errorPage = "error page".getBytes(StandardCharsets.UTF_8);
+
+        final String first = store.put(errorPage);
+        final String second = store.put(errorPage.clone());
+        final String other = store.put("home page".getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(first, second);
+        assertNotEquals(first, other);
+        assertEquals(2, temporaryFolder.getRoot().listFiles().length);
+        assertArrayEquals(errorPage, store.get(first));
+    }
+}
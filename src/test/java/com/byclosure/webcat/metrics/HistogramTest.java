@@ -0,0 +1,56 @@
+package com.byclosure.webcat.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HistogramTest {
+    @Test
+    public void keepsTheCountTotalAndMaximum() {
+        final Histogram histogram = new Histogram();
+        histogram.record(10);
+        histogram.record(30);
+        histogram.record(-5);
+
+        assertEquals(3, histogram.getCount());
+        assertEquals(40, histogram.getTotal());
+        assertEquals(30, histogram.getMax());
+        assertEquals(13, histogram.getMean());
+    }
+
+    @Test
+    public void percentilesAreCloseToTheRecordedValues() {
+        final Histogram histogram = new Histogram();
+        for (long millis = 1; millis <= 1000; millis++) {
+            histogram.record(millis * 1000000L);
+        }
+
+        assertClose(500000000L, histogram.getPercentile(50));
+        assertClose(990000000L, histogram.getPercentile(99));
+        assertEquals(1000000000L, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void everyValueFallsInTheBucketAroundIt() {
+        for (long value = 0; value < 1 << 16; value++) {
+            assertClose(value, Histogram.middle(Histogram.bucket(value)));
+        }
+        assertClose(Long.MAX_VALUE, Histogram.middle(Histogram.bucket(Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void resetForgetsTheRecordedValues() {
+        final Histogram histogram = new Histogram();
+        histogram.record(1000);
+        histogram.reset();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getPercentile(99));
+    }
+
+    private static void assertClose(long expected, long actual) {
+        assertTrue(expected + " ~ " + actual, Math.abs((double) expected - actual) <= expected * 0.125 + 1);
+    }
+}
@@ -0,0 +1,47 @@
+package com.byclosure.webcat.metrics;
+
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class WebcatMetricsTest {
+    @Test
+    public void keepsTheStepsOfEachStepDefinition() {
+        final WebcatMetrics metrics = new WebcatMetrics();
+        metrics.step("^fast$", 1000000L);
+        metrics.step("^slow$", 50000000L);
+        metrics.step("^slow$", 70000000L);
+        metrics.step(null, 1000L);
+
+        assertEquals(4, metrics.getSteps());
+        assertEquals(2, metrics.getStepHistogram("^slow$").getCount());
+        final String[] stepDurations = metrics.getStepDurations();
+        assertEquals(2, stepDurations.length);
+        assertTrue(stepDurations[0].endsWith("^slow$"));
+        assertTrue(metrics.getSummary().contains("^fast$"));
+    }
+
+    @Test
+    public void isRegisteredAsAnMBeanOfTheSuite() throws Exception {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName name = new ObjectName("com.byclosure.webcat:type=Metrics,suite=" + ObjectName.quote("com.example.Suite"));
+
+        new WebcatMetrics().register("com.example.Suite");
+        final WebcatMetrics metrics = new WebcatMetrics();
+        metrics.register("com.example.Suite");
+        metrics.upload(1000000L, 2048);
+        metrics.screenshots(3);
+
+        try {
+            assertEquals(2048L, server.getAttribute(name, "BytesSent"));
+            assertEquals(3L, server.getAttribute(name, "Screenshots"));
+        } finally {
+            server.unregisterMBean(name);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.byclosure.webcat.parallel;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DurationHistoryTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void averagesTheDurationsOfEachRun() {
+        final File file = new File(temporaryFolder.getRoot(), "history/suite.properties");
+
+        final DurationHistory first = new DurationHistory(file);
+        assertTrue(first.isEmpty());
+        first.record("features/a.feature", 100);
+        first.record("features/a.feature:3", 40);
+        first.record("features/a.feature", 100);
+        first.save();
+
+        final DurationHistory second = new DurationHistory(file);
+        assertEquals(Long.valueOf(200), second.get("features/a.feature"));
+        assertEquals(Long.valueOf(40), second.get("features/a.feature:3"));
+        second.record("features/a.feature", 400);
+        second.save();
+
+        final DurationHistory third = new DurationHistory(file);
+        assertEquals(Long.valueOf(300), third.get("features/a.feature"));
+        assertEquals(Long.valueOf(40), third.get("features/a.feature:3"));
+        assertNull(third.get("features/b.feature"));
+        assertEquals(1, file.getParentFile().listFiles().length);
+    }
+}
@@ -0,0 +1,35 @@
+package com.byclosure.webcat.parallel;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class ParallelSchedulerTest {
+    @Test
+    public void startsTheLongestWorkFirst() {
+        final ParallelScheduler scheduler = new ParallelScheduler(1);
+        final List<String> started = Collections.synchronizedList(new ArrayList<String>());
+
+        scheduler.submit(record(started, "short"), 10);
+        scheduler.submit(record(started, "long"), 300);
+        scheduler.submit(record(started, "other short"), 10);
+        scheduler.submit(record(started, "medium"), 100);
+        scheduler.finished();
+
+        assertEquals(Arrays.asList("long", "medium", "short", "other short"), started);
+    }
+
+    private static Runnable record(final List<String> started, final String name) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                started.add(name);
+            }
+        };
+    }
+}
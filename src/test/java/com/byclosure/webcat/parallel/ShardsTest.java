@@ -0,0 +1,99 @@
+package com.byclosure.webcat.parallel;
+
+import cucumber.runtime.io.MultiLoader;
+import cucumber.runtime.model.CucumberFeature;
+import cucumber.runtime.model.CucumberTagStatement;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ShardsTest {
+    private static final int COUNT = 3;
+
+    @Test
+    public void putsEveryFeatureInExactlyOneShard() {
+        final Set<String> sharded = new HashSet<String>();
+        int features = 0;
+
+        for (int index = 0; index < COUNT; index++) {
+            final List<CucumberFeature> all = load();
+            for (CucumberFeature feature : shards(all).features(all, index)) {
+                assertTrue(sharded.add(WorkEstimator.key(feature)));
+                features++;
+            }
+        }
+
+        assertEquals(load().size(), features);
+    }
+
+    @Test
+    public void putsTheLongestFeatureOnItsOwnShard() {
+        final List<CucumberFeature> all = load();
+        final List<CucumberFeature> first = shards(all).features(all, 0);
+
+        // 30 steps against 3 and 3
+        assertEquals(1, first.size());
+        assertEquals("com/byclosure/webcat/basic_arithmetic.feature", WorkEstimator.key(first.get(0)));
+    }
+
+    @Test
+    public void splitsTheScenariosTheSameWayOnEveryNode() {
+        final Set<String> sharded = new HashSet<String>();
+        final long[] loads = new long[COUNT];
+
+        for (int index = 0; index < COUNT; index++) {
+            final List<String> keys = scenarioKeys(index);
+            assertEquals(keys, scenarioKeys(index));
+
+            final List<CucumberFeature> all = load();
+            final WorkEstimator estimator = new WorkEstimator(new DurationHistory((File) null), all);
+            for (CucumberFeature feature : shards(all).scenarios(all, index)) {
+                assertTrue(!feature.getFeatureElements().isEmpty());
+                for (CucumberTagStatement element : feature.getFeatureElements()) {
+                    assertTrue(sharded.add(WorkEstimator.key(feature, element)));
+                    loads[index] += estimator.estimate(feature, element);
+                }
+            }
+        }
+
+        assertEquals(allScenarioKeys(), sharded);
+        // the outline with 4 examples of 5 steps and background is the largest unit, 24 steps
+        for (int index = 1; index < COUNT; index++) {
+            assertTrue(Math.abs(loads[index] - loads[0]) <= 24 * 100000000L);
+        }
+    }
+
+    private static List<String> scenarioKeys(int index) {
+        final List<CucumberFeature> all = load();
+        final List<String> keys = new ArrayList<String>();
+        for (CucumberFeature feature : shards(all).scenarios(all, index)) {
+            for (CucumberTagStatement element : feature.getFeatureElements()) {
+                keys.add(WorkEstimator.key(feature, element));
+            }
+        }
+        return keys;
+    }
+
+    private static Set<String> allScenarioKeys() {
+        final Set<String> keys = new HashSet<String>();
+        for (CucumberFeature feature : load()) {
+            for (CucumberTagStatement element : feature.getFeatureElements()) {
+                keys.add(WorkEstimator.key(feature, element));
+            }
+        }
+        return keys;
+    }
+
+    private static Shards shards(List<CucumberFeature> features) {
+        return new Shards(COUNT, new WorkEstimator(new DurationHistory((File) null), features));
+    }
+
+    private static List<CucumberFeature> load() {
+        return CucumberFeature.load(new MultiLoader(ShardsTest.class.getClassLoader()),
+                Collections.singletonList("classpath:com/byclosure/webcat"), Collections.emptyList());
+    }
+}
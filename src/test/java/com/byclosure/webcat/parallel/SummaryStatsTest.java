@@ -0,0 +1,58 @@
+package com.byclosure.webcat.parallel;
+
+import gherkin.formatter.Argument;
+import gherkin.formatter.model.*;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SummaryStatsTest {
+    private static final Match HOOK = new Match(Collections.<Argument>emptyList(), "Hooks.after()");
+
+    @Test
+    public void countsTheScenariosAndStepsLikeCucumber() throws Exception {
+        final SummaryStats stats = new SummaryStats(true);
+        scenario(stats, new Result(Result.PASSED, 1000L, null), new Result(Result.PASSED, 2000L, null));
+        scenario(stats, new Result(Result.FAILED, 3000L, null), Result.SKIPPED);
+        scenario(stats, Result.UNDEFINED);
+        // a failing hook fails a scenario whose steps passed
+        stats.startOfScenarioLifeCycle(null);
+        stats.result(new Result(Result.PASSED, 1000L, null));
+        stats.after(HOOK, new Result(Result.FAILED, 60000000000L, null));
+        stats.endOfScenarioLifeCycle(null);
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        stats.printStats(new PrintStream(out, true, "UTF-8"));
+        final String[] lines = out.toString("UTF-8").split("\r?\n");
+
+        assertEquals("4 Scenarios (2 failed, 1 undefined, 1 passed)", lines[0]);
+        assertEquals("6 Steps (1 failed, 1 skipped, 1 undefined, 3 passed)", lines[1]);
+        assertTrue(lines[2], lines[2].startsWith("1m0"));
+    }
+
+    @Test
+    public void printsTheErrorsAndSnippetsOfEveryWorker() throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new SummaryStats(true).print(new PrintStream(out, true, "UTF-8"),
+                Collections.<Throwable>singletonList(new AssertionError("broken")), Collections.singletonList("@Given(\"^a step$\")"));
+
+        final String summary = out.toString("UTF-8");
+        assertTrue(summary, summary.contains("0 Scenarios"));
+        assertTrue(summary, summary.contains("java.lang.AssertionError: broken"));
+        assertTrue(summary, summary.contains("You can implement missing steps with the snippets below:"));
+        assertTrue(summary, summary.contains("@Given(\"^a step$\")"));
+    }
+
+    private static void scenario(SummaryStats stats, Result... results) {
+        stats.startOfScenarioLifeCycle(null);
+        for (Result result : results) {
+            stats.result(result);
+        }
+        stats.endOfScenarioLifeCycle(null);
+    }
+}
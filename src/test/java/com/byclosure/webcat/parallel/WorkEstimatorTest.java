@@ -0,0 +1,46 @@
+package com.byclosure.webcat.parallel;
+
+import cucumber.runtime.io.MultiLoader;
+import cucumber.runtime.model.CucumberFeature;
+import cucumber.runtime.model.CucumberScenario;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class WorkEstimatorTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void valuesNewFeaturesAtTheAverageStepDurationOfKnownOnes() {
+        final List<CucumberFeature> features = CucumberFeature.load(new MultiLoader(getClass().getClassLoader()),
+                Arrays.asList("classpath:com/byclosure/webcat/basic_arithmetic.feature", "classpath:com/byclosure/webcat/shopping.feature"),
+                Collections.emptyList());
+        final CucumberFeature arithmetic = features.get(0);
+        final CucumberFeature shopping = features.get(1);
+
+        final File file = new File(temporaryFolder.getRoot(), "suite.properties");
+        final DurationHistory recorded = new DurationHistory(file);
+        recorded.record(WorkEstimator.key(shopping), 3000);
+        recorded.save();
+
+        final WorkEstimator estimator = new WorkEstimator(new DurationHistory(file), features);
+
+        // background and 2 steps twice, background and 5 steps for each of the 4 example rows
+        assertEquals(30, estimator.steps(arithmetic));
+        assertEquals(3, estimator.steps(shopping));
+        assertEquals(3000, estimator.estimate(shopping));
+        assertEquals(30000, estimator.estimate(arithmetic));
+
+        final CucumberScenario giveChange = (CucumberScenario) shopping.getFeatureElements().get(0);
+        assertEquals("com/byclosure/webcat/shopping.feature:3", WorkEstimator.key(shopping, giveChange));
+        assertEquals(3000, estimator.estimate(shopping, giveChange));
+    }
+}
@@ -0,0 +1,36 @@
+package com.byclosure.webcat.reporter;
+
+import com.byclosure.webcat.context.ScreenshotStore;
+import com.byclosure.webcat.metrics.WebcatMetrics;
+import gherkin.deps.com.google.gson.JsonElement;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class AttachmentTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void readsBackTheAttachmentsItWrites() throws Exception {
+        final ScreenshotStore store = new ScreenshotStore(temporaryFolder.newFolder("written"));
+        final byte[] screenshot = "error page".getBytes(StandardCharsets.UTF_8);
+        final Attachment attachment = new Attachment(store.put(screenshot));
+
+        final ScreenshotStore readStore = new ScreenshotStore(temporaryFolder.newFolder("read"));
+        final Attachment.Adapter inline = new Attachment.Adapter(readStore, true, new WebcatMetrics());
+        final Attachment.Adapter uploaded = new Attachment.Adapter(readStore, false, new WebcatMetrics());
+
+        final JsonElement inlineJson = new Attachment.Adapter(store, true, new WebcatMetrics()).toJsonTree(attachment);
+        assertArrayEquals(screenshot, readStore.get(inline.fromJsonTree(inlineJson).id));
+
+        final JsonElement uploadedJson = new Attachment.Adapter(store, false, new WebcatMetrics()).toJsonTree(attachment);
+        assertEquals(attachment.id, uploadedJson.getAsJsonObject().get("id").getAsString());
+        assertEquals(attachment.id, uploaded.fromJsonTree(uploadedJson).id);
+    }
+}
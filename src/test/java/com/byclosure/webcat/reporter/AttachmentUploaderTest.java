@@ -0,0 +1,76 @@
+package com.byclosure.webcat.reporter;
+
+import com.byclosure.webcat.EnvironmentConfig;
+import com.byclosure.webcat.context.ScreenshotStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class AttachmentUploaderTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private StubWebcatServer server;
+    private WebcatClient client;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubWebcatServer();
+        client = new WebcatClient(1000, 1000, 0);
+    }
+
+    @After
+    public void tearDown() {
+        client.close();
+        server.stop();
+    }
+
+    @Test
+    public void uploadsEachAttachmentOnceAsABinaryBody() throws Exception {
+        final ScreenshotStore store = new ScreenshotStore(temporaryFolder.newFolder("screenshots"));
+        final Outbox outbox = new Outbox(temporaryFolder.newFolder("outbox"));
+        final AttachmentUploader uploader = new AttachmentUploader(server.getUrl() + "/attachments", environment(), store,
+                client, outbox);
+
+        final String id = store.put("error page".getBytes(StandardCharsets.UTF_8));
+        uploader.upload(id);
+        uploader.upload(id);
+        uploader.awaitUploads();
+
+        assertEquals(Collections.singletonList("/projects/run/attachments/" + id), server.getPaths());
+        assertEquals(Collections.singletonList("error page"), server.getBodies());
+    }
+
+    @Test
+    public void sendsTheProjectTokenAndCommitWithEachAttachment() throws Exception {
+        final ScreenshotStore store = new ScreenshotStore(temporaryFolder.newFolder("screenshots"));
+        final Outbox outbox = new Outbox(temporaryFolder.newFolder("outbox"));
+        final AttachmentUploader uploader = new AttachmentUploader(server.getUrl() + "/attachments", environment(), store,
+                client, outbox);
+
+        uploader.upload(store.put("error page".getBytes(StandardCharsets.UTF_8)));
+        uploader.awaitUploads();
+
+        assertEquals(Collections.singletonList("WEBCAT_PROJECT=checkout&WEBCAT_PROJECT_TOKEN=s3cr%2Bt&GIT_COMMIT=4f2a9c1"),
+                server.getQueries());
+    }
+
+    private static Map<EnvironmentConfig.Config, String> environment() {
+        final Map<EnvironmentConfig.Config, String> environment =
+                new EnumMap<EnvironmentConfig.Config, String>(EnvironmentConfig.Config.class);
+        environment.put(EnvironmentConfig.Config.PROJECT, "checkout");
+        environment.put(EnvironmentConfig.Config.PROJECT_TOKEN, "s3cr+t");
+        environment.put(EnvironmentConfig.Config.COMMIT_ID, "4f2a9c1");
+        environment.put(EnvironmentConfig.Config.DEBUG, "true");
+        return environment;
+    }
+}
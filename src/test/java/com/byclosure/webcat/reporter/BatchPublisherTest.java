@@ -0,0 +1,74 @@
+package com.byclosure.webcat.reporter;
+
+import com.byclosure.webcat.EnvironmentConfig;
+import com.byclosure.webcat.parallel.Shard;
+import gherkin.deps.com.google.gson.Gson;
+import gherkin.deps.com.google.gson.GsonBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+
+public class BatchPublisherTest {
+    private final Gson gson = new GsonBuilder().create();
+    private StubWebcatServer server;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Before
+    public void startServer() throws Exception {
+        server = new StubWebcatServer();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop();
+    }
+
+    @Test
+    public void sendsFeaturesInNumberedBatchesAndACompleteMessage() {
+        final Map<EnvironmentConfig.Config, String> environment = new HashMap<EnvironmentConfig.Config, String>();
+        environment.put(EnvironmentConfig.Config.PROJECT, "webcat");
+        final BatchPublisher publisher = new BatchPublisher(server.getUrl(), 2, true, ReportCodecs.COMPACT_JSON, gson, new WebcatClient(1000, 1000, 0),
+                new Outbox(temporaryFolder.getRoot()), environment, new Shard(2, 8));
+
+        publisher.addFeature(feature("a.feature"));
+        publisher.addFeature(feature("b.feature"));
+        publisher.addFeature(feature("c.feature"));
+        publisher.complete(new ArrayList<WebcatReporter.StepDefinitionContainer>(),
+                new ArrayList<StepDefinitionUsage.Entry>());
+
+        final List<String> bodies = server.getBodies();
+        assertEquals(3, bodies.size());
+
+        final Map first = gson.fromJson(bodies.get(0), Map.class);
+        final Map second = gson.fromJson(bodies.get(1), Map.class);
+        final Map last = gson.fromJson(bodies.get(2), Map.class);
+
+        assertEquals(publisher.getRunId(), first.get("runId"));
+        assertEquals(publisher.getRunId(), last.get("runId"));
+        assertEquals(0.0, first.get("sequence"));
+        assertEquals(1.0, second.get("sequence"));
+        assertEquals(2.0, last.get("sequence"));
+        assertEquals(2, ((List) first.get("features")).size());
+        assertEquals(1, ((List) second.get("features")).size());
+        assertEquals(false, second.get("complete"));
+        assertEquals(true, last.get("complete"));
+        assertEquals("webcat", ((Map) last.get("environment")).get("WEBCAT_PROJECT"));
+        assertEquals(2.0, ((Map) first.get("shard")).get("index"));
+        assertEquals(8.0, ((Map) last.get("shard")).get("count"));
+        assertEquals(Arrays.asList("gzip", "gzip", "gzip"), server.getContentEncodings());
+    }
+
+    private static ReportModel.FeatureNode feature(String uri) {
+        final ReportModel.FeatureNode feature = new ReportModel.FeatureNode();
+        feature.uri = uri;
+        return feature;
+    }
+}
@@ -0,0 +1,128 @@
+package com.byclosure.webcat.reporter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+
+public class OutboxTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private StubWebcatServer server;
+    private WebcatClient client;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubWebcatServer();
+        client = new WebcatClient(1000, 1000, 0);
+    }
+
+    @After
+    public void tearDown() {
+        client.close();
+        server.stop();
+    }
+
+    @Test
+    public void sendsKeptReportsOnceTheServerIsBack() {
+        final File directory = temporaryFolder.getRoot();
+        final Outbox previousRun = new Outbox(directory);
+        previousRun.add(server.getUrl(), bytes("{\"sequence\":0}"), false, false);
+        previousRun.add(server.getUrl(), bytes("{\"sequence\":1}"), false, false);
+        previousRun.close();
+
+        server.failNext(2);
+        assertEquals(0, replay(new Outbox(directory)));
+        assertEquals(0, server.getBodies().size());
+
+        assertEquals(2, replay(new Outbox(directory)));
+        assertEquals("{\"sequence\":0}", server.getBodies().get(0));
+        assertEquals("{\"sequence\":1}", server.getBodies().get(1));
+
+        assertEquals(0, replay(new Outbox(directory)));
+        assertEquals(0, directory.listFiles().length);
+    }
+
+    @Test
+    public void dropsTheReportsTheServerRejects() {
+        final File directory = temporaryFolder.getRoot();
+        final Outbox previousRun = new Outbox(directory);
+        previousRun.add(server.getUrl(), bytes("{\"sequence\":0}"), false, false);
+        previousRun.close();
+
+        server.failNext(1, 400);
+        assertEquals(0, replay(new Outbox(directory)));
+        assertEquals(1, server.getRequests());
+        assertEquals(0, directory.listFiles().length);
+
+        assertEquals(0, replay(new Outbox(directory)));
+        assertEquals(1, server.getRequests());
+    }
+
+    @Test
+    public void doesNotReplayTheSegmentOfARunStillWritingIt() {
+        final File directory = temporaryFolder.getRoot();
+        final Outbox running = new Outbox(directory);
+        running.add(server.getUrl(), bytes("{\"sequence\":0}"), false, false);
+
+        assertEquals(0, replay(new Outbox(directory)));
+        assertEquals(0, server.getRequests());
+        assertEquals(1, directory.listFiles().length);
+
+        running.add(server.getUrl(), bytes("{\"sequence\":1}"), false, false);
+        running.close();
+
+        assertEquals(2, replay(new Outbox(directory)));
+        assertEquals("{\"sequence\":0}", server.getBodies().get(0));
+        assertEquals("{\"sequence\":1}", server.getBodies().get(1));
+        assertEquals(0, directory.listFiles().length);
+    }
+
+    @Test
+    public void doesNotReplayTheReportsItKeptItself() {
+        final Outbox outbox = new Outbox(temporaryFolder.getRoot());
+        outbox.add(server.getUrl(), bytes("{}"), false, false);
+
+        assertEquals(0, outbox.replay(client));
+        assertEquals(0, server.getRequests());
+    }
+
+    @Test
+    public void dropsCorruptedRecords() throws Exception {
+        final File directory = temporaryFolder.getRoot();
+        final Outbox previousRun = new Outbox(directory);
+        previousRun.add(server.getUrl(), bytes("{\"sequence\":0}"), false, false);
+        previousRun.close();
+
+        final RandomAccessFile segment = new RandomAccessFile(directory.listFiles()[0], "rw");
+        try {
+            segment.seek(segment.length() - 10);
+            segment.write('X');
+        } finally {
+            segment.close();
+        }
+
+        assertEquals(0, replay(new Outbox(directory)));
+        assertEquals(0, server.getRequests());
+    }
+
+    private int replay(Outbox outbox) {
+        try {
+            return outbox.replay(client);
+        } finally {
+            outbox.close();
+        }
+    }
+
+    private static byte[] bytes(String json) {
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,147 @@
+package com.byclosure.webcat.reporter;
+
+import cucumber.runtime.StepDefinition;
+import gherkin.deps.com.google.gson.*;
+import gherkin.deps.com.google.gson.stream.JsonWriter;
+import gherkin.formatter.Argument;
+import gherkin.formatter.model.*;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ReportCodecTest {
+    private static final List<ReportCodec> CODECS = Arrays.asList(
+            ReportCodecs.PRETTY_JSON, ReportCodecs.COMPACT_JSON, ReportCodecs.BINARY);
+
+    private final Gson gson = new Gson();
+
+    @Test
+    public void roundTripsTheReport() throws Exception {
+        final JsonElement report = report();
+
+        for (ReportCodec codec : CODECS) {
+            assertEquals(codec.getName(), report, codec.read(new ByteArrayInputStream(encode(codec, report))));
+        }
+    }
+
+    @Test
+    public void roundTripsEdgeValues() throws Exception {
+        final JsonObject values = new JsonObject();
+        values.addProperty("min", Long.MIN_VALUE);
+        values.addProperty("max", Long.MAX_VALUE);
+        values.addProperty("negative", -1);
+        values.addProperty("zero", 0);
+        values.addProperty("fraction", 0.25);
+        values.addProperty("empty", "");
+        values.addProperty("unicode", "p\u00e3o de queijo \u2713 \ud83d\udc08");
+        values.addProperty("true", true);
+        values.addProperty("false", false);
+        values.add("emptyObject", new JsonObject());
+        values.add("emptyArray", new JsonArray());
+
+        final char[] chars = new char[1000];
+        Arrays.fill(chars, 'x');
+        final JsonArray repeated = new JsonArray();
+        for (int i = 0; i < 3; i++) {
+            repeated.add(new JsonPrimitive(new String(chars)));
+            repeated.add(new JsonPrimitive("status"));
+            repeated.add(values.get("unicode"));
+            repeated.add(JsonNull.INSTANCE);
+        }
+        values.add("repeated", repeated);
+
+        for (ReportCodec codec : CODECS) {
+            assertEquals(codec.getName(), values, codec.read(new ByteArrayInputStream(encode(codec, values))));
+        }
+    }
+
+    @Test
+    public void leavesOutNullFieldsOfTheReportNodes() throws Exception {
+        final ReportModel model = new ReportModel();
+        final ReportModel.StepNode step = model.step(new Step(Collections.<Comment>emptyList(), "Given ", "a step", 3, null, null));
+        step.result = model.result(new Result(Result.PASSED, 42L, null));
+
+        for (ReportCodec codec : CODECS) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final JsonWriter writer = codec.newWriter(out);
+            gson.toJson(step, ReportModel.StepNode.class, writer);
+            writer.close();
+
+            assertEquals(codec.getName(), gson.toJsonTree(step), codec.read(new ByteArrayInputStream(out.toByteArray())));
+        }
+    }
+
+    @Test
+    public void binaryIsTheSmallestEncoding() throws Exception {
+        final JsonElement report = report();
+
+        final int pretty = encode(ReportCodecs.PRETTY_JSON, report).length;
+        final int compact = encode(ReportCodecs.COMPACT_JSON, report).length;
+        final int binary = encode(ReportCodecs.BINARY, report).length;
+
+        assertTrue(pretty + " > " + compact, pretty > compact);
+        assertTrue(compact + " > " + binary, compact > binary);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsAReportThatIsNotBinary() throws Exception {
+        ReportCodecs.BINARY.read(new ByteArrayInputStream("{}".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void choosesTheCodecByName() {
+        assertSame(ReportCodecs.PRETTY_JSON, ReportCodecs.forName(null));
+        assertSame(ReportCodecs.PRETTY_JSON, ReportCodecs.forName("pretty"));
+        assertSame(ReportCodecs.COMPACT_JSON, ReportCodecs.forName(" JSON "));
+        assertSame(ReportCodecs.BINARY, ReportCodecs.forName("binary"));
+        assertSame(ReportCodecs.PRETTY_JSON, ReportCodecs.forName("yaml"));
+    }
+
+    private byte[] encode(ReportCodec codec, JsonElement report) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final JsonWriter writer = codec.newWriter(out);
+        gson.toJson(report, writer);
+        writer.close();
+        return out.toByteArray();
+    }
+
+    private static JsonElement report() throws Exception {
+        final StringBuilder out = new StringBuilder();
+        final WebcatReporter reporter = new WebcatReporter(out, WebcatReporterTest.debugConfig(), new ArrayList<StepDefinition>());
+
+        for (int f = 0; f < 3; f++) {
+            reporter.uri("features/feature" + f + ".feature");
+            reporter.feature(new Feature(Collections.<Comment>emptyList(), Collections.singletonList(new Tag("@web", 1)),
+                    "Feature", "Feature " + f, "", 2, "feature-" + f));
+            for (int s = 0; s < 10; s++) {
+                reporter.scenario(new Scenario(Collections.<Comment>emptyList(), Collections.<Tag>emptyList(),
+                        "Scenario", "Scenario " + s, "", 3 + s, "feature-" + f + ";scenario-" + s));
+                for (int i = 0; i < 5; i++) {
+                    reporter.step(new Step(Collections.<Comment>emptyList(), "Given ", "step " + i + " of scenario " + s, 4 + i, null, null));
+                }
+                for (int i = 0; i < 5; i++) {
+                    reporter.match(new Match(Collections.singletonList(new Argument(5, String.valueOf(i))), "Steps.step(int)"));
+                    reporter.write("output of step " + i);
+                    reporter.result(i == 4 && s % 3 == 0 ?
+                            new Result(Result.FAILED, 1000L + i, new AssertionError("expected " + i), null) :
+                            new Result(Result.PASSED, 1000L + i, null));
+                }
+            }
+            reporter.eof();
+        }
+        reporter.done();
+
+        return new JsonParser().parse(out.toString());
+    }
+}
@@ -0,0 +1,83 @@
+package com.byclosure.webcat.reporter;
+
+import gherkin.deps.com.google.gson.*;
+import gherkin.deps.com.google.gson.stream.JsonWriter;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class ReportMergerTest {
+    private final Gson gson = new Gson();
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void mergesTheFeaturesAndStepDefinitionsOfTheShards() throws Exception {
+        final File first = write("first.json", ReportCodecs.PRETTY_JSON, false, "{" +
+                "\"features\": [{\"uri\": \"a.feature\", \"elements\": [{\"line\": 3, \"duration\": 12.5, \"tags\": null}]}," +
+                " {\"uri\": \"b.feature\"}]," +
+                "\"stepDefinitions\": [{\"pattern\": \"^I add (\\\\d+)$\", \"location\": \"Steps.add(int)\"}]," +
+                "\"stepDefinitionUsage\": [{\"pattern\": \"^I add (\\\\d+)$\", \"location\": \"Steps.add(int)\", \"count\": 2," +
+                " \"steps\": [\"I add 1\"], \"totalDuration\": 30, \"maxDuration\": 20}]," +
+                "\"environment\": {\"GIT_COMMIT\": \"abc\"}," +
+                "\"shard\": {\"index\": 0, \"count\": 2}}");
+        final File second = write("second.wcr.gz", ReportCodecs.BINARY, true, "{" +
+                "\"features\": [{\"uri\": \"c.feature\", \"elements\": []}]," +
+                "\"stepDefinitions\": [{\"pattern\": \"^I add (\\\\d+)$\", \"location\": \"Steps.add(int)\"}," +
+                " {\"pattern\": \"^the result is (\\\\d+)$\", \"location\": \"Steps.result(int)\"}]," +
+                "\"stepDefinitionUsage\": [{\"pattern\": \"^I add (\\\\d+)$\", \"location\": \"Steps.add(int)\", \"count\": 1," +
+                " \"steps\": [\"I add 1\", \"I add 2\"], \"totalDuration\": 50, \"maxDuration\": 50}]," +
+                "\"environment\": {\"GIT_COMMIT\": \"abc\"}," +
+                "\"shard\": {\"index\": 1, \"count\": 2}}");
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new ReportMerger(ReportCodecs.COMPACT_JSON).merge(Arrays.asList(first, second), out);
+        final JsonObject merged = ReportCodecs.COMPACT_JSON.read(new ByteArrayInputStream(out.toByteArray())).getAsJsonObject();
+
+        final JsonArray features = merged.getAsJsonArray("features");
+        assertEquals(3, features.size());
+        assertEquals("c.feature", features.get(2).getAsJsonObject().get("uri").getAsString());
+        assertEquals(12.5, features.get(0).getAsJsonObject().getAsJsonArray("elements").get(0).getAsJsonObject().get("duration").getAsDouble(), 0);
+        assertEquals(2, merged.getAsJsonArray("stepDefinitions").size());
+
+        final JsonObject usage = merged.getAsJsonArray("stepDefinitionUsage").get(0).getAsJsonObject();
+        assertEquals(1, merged.getAsJsonArray("stepDefinitionUsage").size());
+        assertEquals(3, usage.get("count").getAsInt());
+        assertEquals(gson.toJsonTree(Arrays.asList("I add 1", "I add 2")), usage.get("steps"));
+        assertEquals(80, usage.get("totalDuration").getAsLong());
+        assertEquals(50, usage.get("maxDuration").getAsLong());
+
+        assertEquals("abc", merged.getAsJsonObject("environment").get("GIT_COMMIT").getAsString());
+        assertFalse(merged.has("shard"));
+    }
+
+    @Test
+    public void streamsBinaryReportsIntoABinaryReport() throws Exception {
+        final JsonElement report = new JsonParser().parse("{\"features\": [{\"uri\": \"a.feature\", \"line\": 1," +
+                " \"elements\": [{\"steps\": [{\"name\": \"x\", \"result\": {\"duration\": 9223372036854775807, \"status\": \"passed\"}}]}]}]," +
+                " \"stepDefinitions\": [], \"stepDefinitionUsage\": [], \"environment\": {}}");
+        final File binary = write("report.wcr", ReportCodecs.BINARY, false, report.toString());
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new ReportMerger(ReportCodecs.BINARY).merge(Arrays.asList(binary), out);
+
+        assertEquals(report, ReportCodecs.BINARY.read(new ByteArrayInputStream(out.toByteArray())));
+    }
+
+    private File write(String name, ReportCodec codec, boolean compressed, String report) throws IOException {
+        final File file = temporaryFolder.newFile(name);
+        final OutputStream out = compressed ? new GZIPOutputStream(new FileOutputStream(file)) : new FileOutputStream(file);
+        final JsonWriter json = codec.newWriter(out);
+        gson.toJson(new JsonParser().parse(report), json);
+        json.close();
+        return file;
+    }
+}
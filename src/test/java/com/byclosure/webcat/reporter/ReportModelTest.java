@@ -0,0 +1,99 @@
+package com.byclosure.webcat.reporter;
+
+import gherkin.deps.com.google.gson.Gson;
+import gherkin.formatter.Argument;
+import gherkin.formatter.Mappable;
+import gherkin.formatter.model.*;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class ReportModelTest {
+    private static final List<Comment> COMMENTS = Collections.singletonList(new Comment("# a comment", 1));
+    private static final List<Tag> TAGS = Arrays.asList(new Tag("@smoke", 2), new Tag("@web", 2));
+
+    private final Gson gson = new Gson();
+    private final ReportModel model = new ReportModel();
+
+    @Test
+    public void serializesLikeTheGherkinModel() {
+        final Feature feature = new Feature(COMMENTS, TAGS, "Feature", "Checkout", "Paying for the cart", 3, "checkout");
+        final Map<String, Object> featureMap = feature.toMap();
+        featureMap.put("uri", "features/checkout.feature");
+        assertSameJson(featureMap, model.feature(feature, "features/checkout.feature"));
+
+        final Background background = new Background(Collections.<Comment>emptyList(), "Background", "", "", 5);
+        assertSameJson(background, model.background(background));
+
+        final Scenario scenario = new Scenario(COMMENTS, TAGS, "Scenario", "Pay", "", 8, "checkout;pay");
+        assertSameJson(scenario, model.scenario(scenario));
+
+        final ScenarioOutline outline = new ScenarioOutline(COMMENTS, TAGS, "Scenario Outline", "Pay with", "", 12, "checkout;pay-with");
+        assertSameJson(outline, model.scenarioOutline(outline));
+
+        final Examples examples = new Examples(COMMENTS, TAGS, "Examples", "", "", 15, "checkout;pay-with;examples", Arrays.asList(
+                new ExamplesTableRow(Collections.<Comment>emptyList(), Collections.singletonList("card"), 16, "checkout;pay-with;examples;1"),
+                new ExamplesTableRow(COMMENTS, Collections.singletonList("visa"), 17, "checkout;pay-with;examples;2")));
+        assertSameJson(examples, model.examples(examples));
+
+        final Step step = new Step(COMMENTS, "Given ", "the cart has", 9,
+                Collections.singletonList(new DataTableRow(COMMENTS, Arrays.asList("item", "price"), 10)),
+                new DocString("text/plain", "a receipt", 11));
+        assertSameJson(step, model.step(step));
+
+        final Match match = new Match(Collections.singletonList(new Argument(4, "visa")), "Steps.pay(String)");
+        assertSameJson(match, model.match(match));
+
+        final Result result = new Result(Result.FAILED, 1000L, new IllegalStateException("declined"), null);
+        assertSameJson(result, model.result(result));
+        assertSameJson(Result.UNDEFINED, model.result(Result.UNDEFINED));
+    }
+
+    @Test
+    public void storesOnlyTheStringsThatRepeatAllOverARunOnce() {
+        final Step first = new Step(Collections.<Comment>emptyList(), new String("Given "), new String("a step"), 1, null, null);
+        final Step second = new Step(Collections.<Comment>emptyList(), new String("Given "), new String("a step"), 2, null, null);
+
+        final ReportModel.StepNode firstNode = model.step(first);
+        final ReportModel.StepNode secondNode = model.step(second);
+        model.result(new Result(new String(Result.PASSED), 1L, null));
+        model.result(new Result(new String(Result.PASSED), 1L, null));
+
+        assertSame(firstNode.keyword, secondNode.keyword);
+        assertEquals(2, model.size());
+    }
+
+    @Test
+    public void matchesTheStepsOfAnExampleToTheColumnsTheyUse() {
+        model.feature(new Feature(COMMENTS, TAGS, "Feature", "Checkout", "", 1, "checkout"), "features/checkout.feature");
+        model.scenarioOutline(new ScenarioOutline(COMMENTS, TAGS, "Scenario Outline", "Pay with", "", 2, "checkout;pay-with"));
+        model.step(new Step(COMMENTS, "Given ", "the cart has", 3,
+                Collections.singletonList(new DataTableRow(COMMENTS, Arrays.asList("item", "<amount>"), 4)), null));
+        model.step(new Step(COMMENTS, "When ", "I pay with <card>", 5, null, null));
+        model.step(new Step(COMMENTS, "Then ", "I get a receipt", 6, null, null));
+        model.examples(new Examples(COMMENTS, TAGS, "Examples", "", "", 7, "checkout;pay-with;examples", Arrays.asList(
+                new ExamplesTableRow(Collections.<Comment>emptyList(), Arrays.asList("card", "amount"), 8, "checkout;pay-with;examples;1"),
+                new ExamplesTableRow(Collections.<Comment>emptyList(), Arrays.asList("visa", "10"), 9, "checkout;pay-with;examples;2"))));
+
+        model.scenario(new Scenario(COMMENTS, TAGS, "Scenario Outline", "Pay with", "", 9, "checkout;pay-with;examples;2"));
+        assertEquals(Collections.singletonList(1), model.step(new Step(COMMENTS, "Given ", "the cart has", 3,
+                Collections.singletonList(new DataTableRow(COMMENTS, Arrays.asList("item", "10"), 4)), null)).matchedColumns);
+        assertEquals(Collections.singletonList(0), model.step(new Step(COMMENTS, "When ", "I pay with visa", 5, null, null)).matchedColumns);
+        assertNull(model.step(new Step(COMMENTS, "Then ", "I get a receipt", 6, null, null)).matchedColumns);
+    }
+
+    private void assertSameJson(Mappable expected, Object actual) {
+        assertSameJson(expected.toMap(), actual);
+    }
+
+    private void assertSameJson(Map<String, Object> expected, Object actual) {
+        assertEquals(gson.toJsonTree(expected), gson.toJsonTree(actual));
+    }
+}
@@ -0,0 +1,102 @@
+package com.byclosure.webcat.reporter;
+
+import com.byclosure.webcat.EnvironmentConfig;
+import com.byclosure.webcat.parallel.Shard;
+import gherkin.deps.com.google.gson.Gson;
+import gherkin.deps.com.google.gson.JsonElement;
+import gherkin.deps.com.google.gson.JsonObject;
+import gherkin.deps.com.google.gson.JsonParser;
+import gherkin.deps.com.google.gson.stream.JsonWriter;
+import gherkin.formatter.Argument;
+import gherkin.formatter.model.*;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+
+public class ReportWriterTest {
+    private final Gson gson = new Gson();
+    private final ReportModel model = new ReportModel();
+    private final List<WebcatReporter.StepDefinitionContainer> stepDefinitions = new ArrayList<WebcatReporter.StepDefinitionContainer>();
+    private final StepDefinitionUsage usage = new StepDefinitionUsage();
+    private final Map<EnvironmentConfig.Config, String> environment =
+            new EnumMap<EnvironmentConfig.Config, String>(EnvironmentConfig.Config.class);
+
+    @Test
+    public void streamsTheSameReportAsSerializingItWhole() throws Exception {
+        final List<ReportModel.FeatureNode> features = features();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        write(features, Collections.singletonList(ReportCodecs.COMPACT_JSON.newWriter(out)), new Shard(0, 1));
+
+        assertEquals(wholeReport(features), ReportCodecs.COMPACT_JSON.read(new ByteArrayInputStream(out.toByteArray())));
+    }
+
+    @Test
+    public void writesTheSameReportToTheDebugOutputAndTheFile() throws Exception {
+        final List<ReportModel.FeatureNode> features = features();
+        final StringBuilder debug = new StringBuilder();
+        final ByteArrayOutputStream file = new ByteArrayOutputStream();
+
+        write(features, Arrays.asList(
+                ReportCodecs.debugCodec(ReportCodecs.BINARY).newWriter(ReportWriter.writerFor(debug)),
+                ReportCodecs.BINARY.newWriter(file)), new Shard(1, 3));
+
+        final JsonObject expected = wholeReport(features);
+        final JsonObject shard = new JsonObject();
+        shard.addProperty("index", 1);
+        shard.addProperty("count", 3);
+        expected.add("shard", shard);
+        assertEquals(expected, new JsonParser().parse(debug.toString()));
+        assertEquals(expected, ReportCodecs.BINARY.read(new ByteArrayInputStream(file.toByteArray())));
+    }
+
+    private void write(List<ReportModel.FeatureNode> features, List<JsonWriter> writers, Shard shard) throws Exception {
+        final ReportWriter writer = new ReportWriter(writers, gson);
+        for (ReportModel.FeatureNode feature : features) {
+            writer.writeFeature(feature);
+        }
+        writer.finish(stepDefinitions, usage.entries(), environment, shard);
+        writer.close();
+    }
+
+    /**
+     * @return the report as it was built before it was streamed, a single map serialized at the end of the run
+     */
+    private JsonObject wholeReport(List<ReportModel.FeatureNode> features) {
+        final Map<String, Object> report = new LinkedHashMap<String, Object>();
+        report.put("features", features);
+        report.put("stepDefinitions", stepDefinitions);
+        report.put("stepDefinitionUsage", usage.entries());
+        report.put("environment", environment);
+        return gson.toJsonTree(report).getAsJsonObject();
+    }
+
+    private List<ReportModel.FeatureNode> features() {
+        environment.put(EnvironmentConfig.Config.INTENT, "{\"type\": \"tags\", \"value\": [\"@smoke\"]}");
+        usage.add("^a step$", "Steps.step()", 2, Collections.singleton("a step"), 3000L, 2000L);
+
+        final List<ReportModel.FeatureNode> features = new ArrayList<ReportModel.FeatureNode>();
+        for (int f = 0; f < 2; f++) {
+            final ReportModel.FeatureNode feature = model.feature(new Feature(Collections.<Comment>emptyList(),
+                    Collections.singletonList(new Tag("@smoke", 1)), "Feature", "Feature " + f, "", 2, "feature-" + f),
+                    "feature" + f + ".feature");
+            feature.elements = new ArrayList<ReportModel.ElementNode>();
+            for (int s = 0; s < 2; s++) {
+                final ReportModel.ElementNode scenario = model.scenario(new Scenario(Collections.<Comment>emptyList(),
+                        Collections.<Tag>emptyList(), "Scenario", "Scenario " + s, "", 3 + s, "feature-" + f + ";scenario-" + s));
+                final ReportModel.StepNode step = model.step(new Step(Collections.<Comment>emptyList(), "Given ", "a step", 4 + s, null, null));
+                step.match = model.match(new Match(Collections.<Argument>emptyList(), "Steps.step()"));
+                step.result = model.result(new Result(s == 0 ? Result.PASSED : Result.FAILED, 1000L + s, s == 0 ? null : "broken"));
+                step.output = Collections.singletonList("output \u2713");
+                scenario.steps = Collections.singletonList(step);
+                feature.elements.add(scenario);
+            }
+            features.add(feature);
+        }
+        return features;
+    }
+}
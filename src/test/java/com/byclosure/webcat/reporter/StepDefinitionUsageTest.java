@@ -0,0 +1,99 @@
+package com.byclosure.webcat.reporter;
+
+import cucumber.runtime.ParameterInfo;
+import cucumber.runtime.StepDefinition;
+import cucumber.runtime.StepDefinitionMatch;
+import gherkin.I18n;
+import gherkin.formatter.Argument;
+import gherkin.formatter.model.Comment;
+import gherkin.formatter.model.Step;
+import org.junit.Test;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class StepDefinitionUsageTest {
+    private final StepDefinition add = stepDefinition("^I add (\\d+) and (\\d+)$", "CalculatorSteps.add(int,int)");
+    private final StepDefinition result = stepDefinition("^the result is (\\d+)$", "CalculatorSteps.result(int)");
+
+    @Test
+    public void aggregatesMatchesByStepDefinition() {
+        final StepDefinitionUsage usage = new StepDefinitionUsage();
+
+        for (int i = 0; i < 1000; i++) {
+            usage.match(match(add, "I add 4 and " + (i % 3))).addDuration(10L);
+            usage.match(match(result, "the result is 5")).addDuration((long) i);
+        }
+        usage.match(match(result, "the result is 5")).addDuration(null);
+
+        final List<StepDefinitionUsage.Entry> entries = new ArrayList<StepDefinitionUsage.Entry>(usage.entries());
+        assertEquals(2, entries.size());
+
+        final StepDefinitionUsage.Entry addEntry = entries.get(0);
+        assertEquals("^I add (\\d+) and (\\d+)$", addEntry.pattern);
+        assertEquals("CalculatorSteps.add(int,int)", addEntry.location);
+        assertEquals(1000, addEntry.count);
+        assertEquals(Arrays.asList("I add 4 and 0", "I add 4 and 1", "I add 4 and 2"), new ArrayList<String>(addEntry.steps));
+        assertEquals(10000L, addEntry.totalDuration);
+        assertEquals(10L, addEntry.maxDuration);
+
+        final StepDefinitionUsage.Entry resultEntry = entries.get(1);
+        assertEquals(1001, resultEntry.count);
+        assertEquals(Collections.singleton("the result is 5"), resultEntry.steps);
+        assertEquals(999L * 1000 / 2, resultEntry.totalDuration);
+        assertEquals(999L, resultEntry.maxDuration);
+    }
+
+    private static StepDefinitionMatch match(StepDefinition stepDefinition, String stepName) {
+        final Step step = new Step(Collections.<Comment>emptyList(), "When ", stepName, 1, null, null);
+        return new StepDefinitionMatch(Collections.<Argument>emptyList(), stepDefinition, "calculator.feature", step, null);
+    }
+
+    private static StepDefinition stepDefinition(final String pattern, final String location) {
+        return new StepDefinition() {
+            @Override
+            public List<Argument> matchedArguments(Step step) {
+                return Collections.emptyList();
+            }
+
+            @Override
+            public String getLocation(boolean detail) {
+                return location;
+            }
+
+            @Override
+            public Integer getParameterCount() {
+                return 0;
+            }
+
+            @Override
+            public ParameterInfo getParameterType(int n, Type argumentType) {
+                return null;
+            }
+
+            @Override
+            public void execute(I18n i18n, Object[] args) {
+            }
+
+            @Override
+            public boolean isDefinedAt(StackTraceElement stackTraceElement) {
+                return false;
+            }
+
+            @Override
+            public String getPattern() {
+                return pattern;
+            }
+
+            @Override
+            public boolean isScenarioScoped() {
+                return false;
+            }
+        };
+    }
+}
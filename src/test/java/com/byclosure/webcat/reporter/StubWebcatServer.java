@@ -0,0 +1,111 @@
+package com.byclosure.webcat.reporter;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Local stand-in for the Webcat server, records the bodies it receives.
+ */
+class StubWebcatServer implements HttpHandler {
+    private final HttpServer server;
+    private final List<String> bodies = Collections.synchronizedList(new ArrayList<String>());
+    private final List<String> contentEncodings = Collections.synchronizedList(new ArrayList<String>());
+    private final List<String> paths = Collections.synchronizedList(new ArrayList<String>());
+    private final List<String> queries = Collections.synchronizedList(new ArrayList<String>());
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger failures = new AtomicInteger();
+    private volatile int failureStatus = 503;
+
+    StubWebcatServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", this);
+        server.start();
+    }
+
+    String getUrl() {
+        return "http://localhost:" + server.getAddress().getPort() + "/projects/run";
+    }
+
+    List<String> getBodies() {
+        return bodies;
+    }
+
+    List<String> getContentEncodings() {
+        return contentEncodings;
+    }
+
+    List<String> getPaths() {
+        return paths;
+    }
+
+    List<String> getQueries() {
+        return queries;
+    }
+
+    int getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * Makes the next {@code count} requests fail with 503 Service Unavailable.
+     */
+    void failNext(int count) {
+        failNext(count, 503);
+    }
+
+    /**
+     * Makes the next {@code count} requests fail with the {@code status}.
+     */
+    void failNext(int count, int status) {
+        failureStatus = status;
+        failures.set(count);
+    }
+
+    void stop() {
+        server.stop(0);
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        if (failures.getAndDecrement() > 0) {
+            read(exchange.getRequestBody());
+            exchange.sendResponseHeaders(failureStatus, -1);
+            exchange.close();
+            return;
+        }
+
+        paths.add(exchange.getRequestURI().getPath());
+        queries.add(exchange.getRequestURI().getRawQuery());
+        final String contentEncoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+        contentEncodings.add(contentEncoding);
+
+        final InputStream body = "gzip".equals(contentEncoding) ?
+                new GZIPInputStream(exchange.getRequestBody()) : exchange.getRequestBody();
+        bodies.add(new String(read(body), StandardCharsets.UTF_8));
+        exchange.sendResponseHeaders(200, -1);
+        exchange.close();
+    }
+
+    private static byte[] read(InputStream input) throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[8192];
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            output.write(buffer, 0, read);
+        }
+        return output.toByteArray();
+    }
+}
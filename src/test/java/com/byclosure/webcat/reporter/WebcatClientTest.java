@@ -0,0 +1,59 @@
+package com.byclosure.webcat.reporter;
+
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class WebcatClientTest {
+    private StubWebcatServer server;
+    private WebcatClient client;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubWebcatServer();
+        client = new WebcatClient(1000, 1000, 2, 10);
+    }
+
+    @After
+    public void tearDown() {
+        client.close();
+        server.stop();
+    }
+
+    @Test
+    public void retriesServerErrorsUntilTheReportIsAccepted() {
+        server.failNext(2);
+
+        assertEquals(WebcatClient.Outcome.ACCEPTED, client.post(server.getUrl(), new StringEntity("{}", ContentType.APPLICATION_JSON)));
+        assertEquals(3, server.getRequests());
+        assertEquals(1, server.getBodies().size());
+    }
+
+    @Test
+    public void givesUpAfterTheConfiguredRetries() {
+        server.failNext(5);
+
+        assertEquals(WebcatClient.Outcome.RETRY, client.post(server.getUrl(), new StringEntity("{}", ContentType.APPLICATION_JSON)));
+        assertEquals(3, server.getRequests());
+    }
+
+    @Test
+    public void doesNotRetryARejectedReport() {
+        server.failNext(1, 400);
+
+        assertEquals(WebcatClient.Outcome.REJECTED, client.post(server.getUrl(), new StringEntity("{}", ContentType.APPLICATION_JSON)));
+        assertEquals(1, server.getRequests());
+    }
+
+    @Test
+    public void retriesWhenTheServerIsDown() {
+        final String url = server.getUrl();
+        server.stop();
+
+        assertEquals(WebcatClient.Outcome.RETRY, client.post(url, new StringEntity("{}", ContentType.APPLICATION_JSON)));
+    }
+}
@@ -0,0 +1,291 @@
+package com.byclosure.webcat.reporter;
+
+import com.byclosure.webcat.EnvironmentConfig;
+import com.byclosure.webcat.context.Context;
+import com.byclosure.webcat.metrics.WebcatMetrics;
+import cucumber.runtime.StepDefinition;
+import gherkin.deps.com.google.gson.Gson;
+import gherkin.deps.com.google.gson.JsonElement;
+import gherkin.deps.com.google.gson.JsonParser;
+import gherkin.formatter.Argument;
+import gherkin.formatter.model.*;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class WebcatReporterTest {
+    private static final int STEPS = 50;
+
+    @Test
+    public void reportsEveryEventOnItsOwnStep() throws Exception {
+        final StringBuilder out = new StringBuilder();
+        final WebcatReporter reporter = reporter(out);
+
+        reporter.uri("long.feature");
+        final Feature feature = feature("Long");
+        reporter.feature(feature);
+        reporter.background(new Background(Collections.<Comment>emptyList(), "Background", "", "", 2));
+        reporter.step(step(3, "a background step"));
+        reporter.match(match("background"));
+        reporter.result(result(Result.PASSED));
+        reporter.scenario(scenario(feature, "Many steps", 4));
+        for (int i = 0; i < STEPS; i++) {
+            reporter.step(step(5 + i, "step " + i));
+        }
+        for (int i = 0; i < STEPS; i++) {
+            reporter.match(match("step " + i));
+            reporter.write("output of step " + i);
+            reporter.result(result(i == STEPS - 1 ? Result.FAILED : Result.PASSED));
+        }
+        reporter.eof();
+        reporter.done();
+
+        final Map report = new Gson().fromJson(out.toString(), Map.class);
+        final List<Map> elements = (List<Map>) ((List<Map>) report.get("features")).get(0).get("elements");
+        final List<Map> backgroundSteps = (List<Map>) elements.get(0).get("steps");
+        final List<Map> steps = (List<Map>) elements.get(1).get("steps");
+
+        assertEquals(1, backgroundSteps.size());
+        assertEquals("background", ((Map) backgroundSteps.get(0).get("match")).get("location"));
+        assertNull(backgroundSteps.get(0).get("output"));
+        assertEquals(STEPS, steps.size());
+        for (int i = 0; i < STEPS; i++) {
+            final Map step = steps.get(i);
+            assertEquals("step " + i, ((Map) step.get("match")).get("location"));
+            assertEquals(Collections.singletonList("output of step " + i), step.get("output"));
+            assertEquals(i == STEPS - 1 ? Result.FAILED : Result.PASSED, ((Map) step.get("result")).get("status"));
+        }
+    }
+
+    @Test
+    public void spillsFinishedScenariosWithoutChangingTheReport() throws Exception {
+        final EnvironmentConfig config = debugConfig();
+        final String inMemory = reportScenarios(config);
+
+        config.getRaw().put(EnvironmentConfig.Config.HEAP_BUDGET, "0");
+        final String spilled = reportScenarios(config);
+
+        final JsonParser parser = new JsonParser();
+        assertEquals(withoutTimes(parser.parse(inMemory).getAsJsonObject().get("features")),
+                withoutTimes(parser.parse(spilled).getAsJsonObject().get("features")));
+    }
+
+    @Test
+    public void numbersTheAttemptsOfAScenarioRunAgain() throws Exception {
+        final StringBuilder out = new StringBuilder();
+        final WebcatReporter reporter = reporter(out);
+
+        reporter.uri("flaky.feature");
+        final Feature feature = feature("Flaky");
+        reporter.feature(feature);
+        // the same scenario run twice by the runner, then once more by another run of the feature in the same report
+        final String[] statuses = {Result.FAILED, Result.PASSED, Result.PASSED};
+        final Integer[] attempts = {1, 2, null};
+        final Context previous = Context.bind(new Context());
+        try {
+            for (int i = 0; i < statuses.length; i++) {
+                Context.getInstance().setAttempt(attempts[i]);
+                reporter.scenario(scenario(feature, "Scenario", 2));
+                reporter.step(step(3, "a step"));
+                reporter.match(match("Steps.step()"));
+                reporter.result(result(statuses[i]));
+            }
+        } finally {
+            Context.bind(previous);
+        }
+        reporter.eof();
+        reporter.done();
+
+        final Map report = new Gson().fromJson(out.toString(), Map.class);
+        final List<Map> elements = (List<Map>) ((List<Map>) report.get("features")).get(0).get("elements");
+        assertEquals(3, elements.size());
+        assertNull(elements.get(0).get("attempt"));
+        assertEquals(2.0, elements.get(1).get("attempt"));
+        assertNull(elements.get(2).get("attempt"));
+    }
+
+    @Test
+    public void reportsTheScreenshotsOfAfterHooksOnTheHook() throws Exception {
+        final StringBuilder out = new StringBuilder();
+        final WebcatReporter reporter = reporter(out);
+
+        final Context previous = Context.bind(new Context());
+        try {
+            reporter.uri("screenshots.feature");
+            final Feature feature = feature("Screenshots");
+            reporter.feature(feature);
+            reporter.scenario(scenario(feature, "Failing", 2));
+            reporter.step(step(3, "a failing step"));
+            reporter.match(match("Steps.step()"));
+            reporter.result(result(Result.FAILED));
+            Context.getInstance().addScreenshot("page after the failure".getBytes(StandardCharsets.UTF_8));
+            reporter.after(match("Hooks.screenshot()"), result(Result.PASSED));
+            reporter.after(match("Hooks.quit()"), result(Result.PASSED));
+            reporter.eof();
+            reporter.done();
+        } finally {
+            Context.bind(previous);
+        }
+
+        final Map report = new Gson().fromJson(out.toString(), Map.class);
+        final Map scenario = ((List<Map>) ((List<Map>) report.get("features")).get(0).get("elements")).get(0);
+        final List<Map> after = (List<Map>) scenario.get("after");
+        assertEquals(Collections.emptyList(), ((List<Map>) scenario.get("steps")).get(0).get("screenshots"));
+        assertEquals(1, ((List) after.get(0).get("screenshots")).size());
+        assertNull(after.get(1).get("screenshots"));
+    }
+
+    @Test
+    public void recordsTheStepsHooksAndEventsInTheMetrics() throws Exception {
+        final WebcatMetrics metrics = new WebcatMetrics();
+        final WebcatReporter reporter = new WebcatReporter(new StringBuilder(), debugConfig(), new ArrayList<StepDefinition>(), metrics);
+
+        reporter.uri("timed.feature");
+        final Feature feature = feature("Timed");
+        reporter.feature(feature);
+        reporter.before(match("Hooks.before()"), new Result(Result.PASSED, 3000L, null));
+        reporter.scenario(scenario(feature, "Timed", 2));
+        reporter.step(step(3, "a step"));
+        reporter.step(step(4, "an undefined step"));
+        reporter.match(match("Steps.step()"));
+        reporter.result(new Result(Result.PASSED, 5000L, null));
+        reporter.match(match(null));
+        reporter.result(Result.UNDEFINED);
+        reporter.eof();
+        reporter.done();
+
+        assertEquals(1, metrics.getSteps());
+        assertEquals(5000L, metrics.getStepHistogram().getTotal());
+        assertEquals(1, metrics.getHooks());
+        assertEquals(3000L, metrics.getHookHistogram().getTotal());
+        assertEquals(11, metrics.getEvents());
+        assertEquals(2, metrics.getSerializationHistogram().getCount());
+    }
+
+    @Test
+    public void timesTheScenariosAndFeaturesWithTheTimesOfTheEvents() throws Exception {
+        final StringBuilder out = new StringBuilder();
+        final WebcatReporter reporter = reporter(out);
+
+        // as when the events of parallel scenarios are replayed, the feature and eof events were queued before the
+        // scenarios ran
+        final long origin = System.nanoTime();
+        final Context context = new Context();
+        final Context previous = Context.bind(context);
+        try {
+            context.replayedAt(origin);
+            reporter.uri("timed.feature");
+            final Feature feature = feature("Timed");
+            reporter.feature(feature);
+            for (int i = 0; i < 2; i++) {
+                final Scenario scenario = scenario(feature, "Scenario " + i, 2 + i);
+                context.setQueueWait(1000L * (i + 1));
+                context.replayedAt(origin + 2000000L * (i + 1));
+                reporter.startOfScenarioLifeCycle(scenario);
+                reporter.scenario(scenario);
+                context.replayedAt(origin + 2000000L * (i + 1) + 1500L);
+                reporter.endOfScenarioLifeCycle(scenario);
+            }
+            context.replayedAt(origin);
+            reporter.eof();
+        } finally {
+            Context.bind(previous);
+        }
+        reporter.done();
+
+        final Map feature = ((List<Map>) new Gson().fromJson(out.toString(), Map.class).get("features")).get(0);
+        final List<Map> elements = (List<Map>) feature.get("elements");
+        assertEquals(1500.0, elements.get(0).get("duration"));
+        assertEquals(1000.0, elements.get(0).get("queue_wait"));
+        assertEquals(2000.0, elements.get(1).get("queue_wait"));
+        assertEquals(2.0, (Double) elements.get(1).get("start_timestamp") - (Double) elements.get(0).get("start_timestamp"), 1.0);
+        assertEquals(2001500.0, feature.get("duration"));
+        assertEquals(elements.get(0).get("start_timestamp"), feature.get("start_timestamp"));
+        assertNull(feature.get("queue_wait"));
+    }
+
+    /**
+     * @return the features without their times, which differ from run to run
+     */
+    private static JsonElement withoutTimes(JsonElement features) {
+        for (JsonElement feature : features.getAsJsonArray()) {
+            feature.getAsJsonObject().remove("start_timestamp");
+            feature.getAsJsonObject().remove("duration");
+        }
+        return features;
+    }
+
+    private static String reportScenarios(EnvironmentConfig config) {
+        final StringBuilder out = new StringBuilder();
+        final WebcatReporter reporter = new WebcatReporter(out, config, new ArrayList<StepDefinition>());
+
+        for (int f = 0; f < 2; f++) {
+            reporter.uri("feature" + f + ".feature");
+            final Feature feature = feature("Feature " + f);
+            reporter.feature(feature);
+            for (int s = 0; s < 20; s++) {
+                reporter.before(match("Hooks.before()"), result(Result.PASSED));
+                reporter.scenario(scenario(feature, "Scenario " + s, 2 + s));
+                reporter.step(step(3 + s, "step of scenario " + s));
+                reporter.match(match("Steps.step()"));
+                reporter.write("output of scenario " + s);
+                reporter.result(result(Result.PASSED));
+                reporter.after(match("Hooks.after()"), result(Result.PASSED));
+            }
+            reporter.eof();
+        }
+        reporter.done();
+
+        return out.toString();
+    }
+
+    /**
+     * @return a configuration that writes the report to the debug output, but never publishes it, also on a CI
+     * server
+     */
+    static EnvironmentConfig debugConfig() throws Exception {
+        final EnvironmentConfig config = new EnvironmentConfig();
+        config.getRaw().put(EnvironmentConfig.Config.DEBUG, "true");
+        for (EnvironmentConfig.Config ci : new EnvironmentConfig.Config[]{EnvironmentConfig.Config.CI_BAMBOO,
+                EnvironmentConfig.Config.CI_CIRCLE, EnvironmentConfig.Config.CI_CODESHIP, EnvironmentConfig.Config.CI_JENKINS}) {
+            config.getRaw().remove(ci);
+        }
+        return config;
+    }
+
+    private static WebcatReporter reporter(StringBuilder out) throws Exception {
+        return new WebcatReporter(out, debugConfig(), new ArrayList<StepDefinition>());
+    }
+
+    private static Feature feature(String name) {
+        return new Feature(Collections.<Comment>emptyList(), Collections.<Tag>emptyList(), "Feature", name, "", 1, id(name));
+    }
+
+    private static Scenario scenario(Feature feature, String name, int line) {
+        return new Scenario(Collections.<Comment>emptyList(), Collections.<Tag>emptyList(), "Scenario", name, "", line,
+                feature.getId() + ";" + id(name));
+    }
+
+    private static String id(String name) {
+        return name.toLowerCase().replace(' ', '-');
+    }
+
+    private static Step step(int line, String name) {
+        return new Step(Collections.<Comment>emptyList(), "Given ", name, line, null, null);
+    }
+
+    private static Match match(String location) {
+        return new Match(Collections.<Argument>emptyList(), location);
+    }
+
+    private static Result result(String status) {
+        return new Result(status, 1L, null);
+    }
+}